@@ -1,9 +1,14 @@
 package cn.sliew.milky.cache;
 
+import cn.sliew.milky.log.LoggerFactory;
 import io.micrometer.core.instrument.MeterRegistry;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * todo 异步功能支持
@@ -18,10 +23,47 @@ public interface Cache<K, V> {
 
     V computeIfAbsent(K key, CacheLoader<K, V> loader, Duration expire);
 
+    /**
+     * Returns values of {@code keys} present in cache, absent keys are missing in the result.
+     */
+    Map<K, V> getAll(Iterable<K> keys);
+
+    /**
+     * Returns values of {@code keys}, absent keys are loaded by one {@link CacheLoader#loadAll(Iterable)}
+     * call and put into cache by one {@link #putAll(Map, Duration)} call.
+     */
+    default Map<K, V> computeAllIfAbsent(Iterable<K> keys, CacheLoader<K, V> loader, Duration expire) {
+        Map<K, V> result = new HashMap<>(getAll(keys));
+        List<K> absentKeys = new ArrayList<>();
+        for (K key : keys) {
+            if (!result.containsKey(key)) {
+                absentKeys.add(key);
+            }
+        }
+        if (absentKeys.isEmpty()) {
+            return result;
+        }
+        try {
+            Map<K, V> loaded = new HashMap<>(loader.loadAll(absentKeys));
+            if (!supportNullValue()) {
+                loaded.values().removeIf(value -> value == null);
+            }
+            putAll(loaded, expire);
+            result.putAll(loaded);
+        } catch (Exception e) {
+            LoggerFactory.getLogger(Cache.class).error(e.getMessage(), e);
+        }
+        return result;
+    }
+
     void put(K key, V value);
 
     void put(K key, V value, Duration expire);
 
+    void putAll(Map<? extends K, ? extends V> map);
+
+    void putAll(Map<? extends K, ? extends V> map, Duration expire);
+
     void remove(K key);
 
     void removeAll(Iterable<K> keys);
@@ -1,11 +1,28 @@
 package cn.sliew.milky.cache;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public interface CacheLoader<K, V> {
 
     V load(K key) throws Exception;
 
+    /**
+     * Loads values of {@code keys} in one call, keys without value may be missing in the result.
+     * Override it when the source supports bulk reads, default loads keys one by one.
+     */
+    default Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+        Map<K, V> result = new HashMap<>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
     default CompletableFuture<V> reload(K key, V oldValue) {
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -1,7 +1,10 @@
 package cn.sliew.milky.cache;
 
+import java.time.Duration;
 import java.util.Objects;
 
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
 import static cn.sliew.milky.common.check.Ensures.notBlank;
 
 public class CacheOptions<K, V> {
@@ -32,6 +35,17 @@ public class CacheOptions<K, V> {
 
     private WriteMode writeMode = WriteMode.WRITE_THROUGH;
     private int writeBehindThreads = 1;
+    private int writeBehindBatchSize = 100;
+    private Duration writeBehindDelay = Duration.ofSeconds(1L);
+    private int writeBehindQueueSize = 10000;
+    private int writeBehindRetries = 3;
+    private Duration writeBehindRetryBackoff = Duration.ofMillis(100L);
+
+    private Duration loadTimeout = Duration.ofSeconds(30L);
+    private Duration loadFailureTtl = Duration.ZERO;
+
+    private double hotKeySampleRate = 0.1;
+    private int hotKeyCapacity = 128;
 
     protected CacheOptions() {
 
@@ -81,6 +95,7 @@ public class CacheOptions<K, V> {
      * @return MapOptions instance
      */
     public CacheOptions<K, V> writeBehindThreads(int writeBehindThreads) {
+        checkArgument(writeBehindThreads > 0, () -> "cache writeBehindThreads must be positive: " + writeBehindThreads);
         this.writeBehindThreads = writeBehindThreads;
         return this;
     }
@@ -89,6 +104,100 @@ public class CacheOptions<K, V> {
         return writeBehindThreads;
     }
 
+    /**
+     * Sets max keys handed to {@link CacheWriter} at once in write behind mode.
+     * <p>
+     * Default is <code>100</code>
+     *
+     * @param writeBehindBatchSize - batch size
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> writeBehindBatchSize(int writeBehindBatchSize) {
+        checkArgument(writeBehindBatchSize > 0, () -> "cache writeBehindBatchSize must be positive: " + writeBehindBatchSize);
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        return this;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * Sets max time a write waits before flushed in write behind mode, writes to
+     * the same key meanwhile are coalesced.
+     * <p>
+     * Default is <code>1s</code>
+     *
+     * @param writeBehindDelay - write delay
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> writeBehindDelay(Duration writeBehindDelay) {
+        checkNotNull(writeBehindDelay, () -> "cache writeBehindDelay can't be null");
+        checkArgument(!writeBehindDelay.isNegative(), () -> "cache writeBehindDelay invalid: " + writeBehindDelay);
+        this.writeBehindDelay = writeBehindDelay;
+        return this;
+    }
+
+    public Duration getWriteBehindDelay() {
+        return writeBehindDelay;
+    }
+
+    /**
+     * Sets max keys waiting for flush in write behind mode, writers block once reached.
+     * <p>
+     * Default is <code>10000</code>
+     *
+     * @param writeBehindQueueSize - queue size
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> writeBehindQueueSize(int writeBehindQueueSize) {
+        checkArgument(writeBehindQueueSize > 0, () -> "cache writeBehindQueueSize must be positive: " + writeBehindQueueSize);
+        this.writeBehindQueueSize = writeBehindQueueSize;
+        return this;
+    }
+
+    public int getWriteBehindQueueSize() {
+        return writeBehindQueueSize;
+    }
+
+    /**
+     * Sets retry times of a failed flush in write behind mode.
+     * <p>
+     * Default is <code>3</code>
+     *
+     * @param writeBehindRetries - retry times
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> writeBehindRetries(int writeBehindRetries) {
+        checkArgument(writeBehindRetries >= 0, () -> "cache writeBehindRetries can't be negative: " + writeBehindRetries);
+        this.writeBehindRetries = writeBehindRetries;
+        return this;
+    }
+
+    public int getWriteBehindRetries() {
+        return writeBehindRetries;
+    }
+
+    /**
+     * Sets backoff before the first retry of a failed flush in write behind mode,
+     * doubled on each further retry.
+     * <p>
+     * Default is <code>100ms</code>
+     *
+     * @param writeBehindRetryBackoff - retry backoff
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> writeBehindRetryBackoff(Duration writeBehindRetryBackoff) {
+        checkNotNull(writeBehindRetryBackoff, () -> "cache writeBehindRetryBackoff can't be null");
+        checkArgument(!writeBehindRetryBackoff.isNegative(), () -> "cache writeBehindRetryBackoff invalid: " + writeBehindRetryBackoff);
+        this.writeBehindRetryBackoff = writeBehindRetryBackoff;
+        return this;
+    }
+
+    public Duration getWriteBehindRetryBackoff() {
+        return writeBehindRetryBackoff;
+    }
+
     /**
      * Sets write mode.
      * <p>
@@ -121,20 +230,107 @@ public class CacheOptions<K, V> {
         return loader;
     }
 
+    /**
+     * Sets how long concurrent callers wait for an in-flight load of the same key.
+     * <p>
+     * Default is <code>30s</code>
+     *
+     * @param loadTimeout load timeout
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> loadTimeout(Duration loadTimeout) {
+        checkNotNull(loadTimeout, () -> "cache loadTimeout can't be null");
+        checkArgument(!loadTimeout.isNegative() && !loadTimeout.isZero(), () -> "cache loadTimeout invalid: " + loadTimeout);
+        this.loadTimeout = loadTimeout;
+        return this;
+    }
+
+    public Duration getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    /**
+     * Sets how long a failed load is remembered, loads of the key fail fast meanwhile.
+     * <p>
+     * Default is <code>{@link Duration#ZERO}</code>, failures are not remembered.
+     *
+     * @param loadFailureTtl failure ttl
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> loadFailureTtl(Duration loadFailureTtl) {
+        checkNotNull(loadFailureTtl, () -> "cache loadFailureTtl can't be null");
+        checkArgument(!loadFailureTtl.isNegative(), () -> "cache loadFailureTtl invalid: " + loadFailureTtl);
+        this.loadFailureTtl = loadFailureTtl;
+        return this;
+    }
+
+    public Duration getLoadFailureTtl() {
+        return loadFailureTtl;
+    }
+
+    /**
+     * Sets fraction of reads counted by hot key detection, see {@link Cache#hotKeyIterator(int)}.
+     * <code>0</code> disables hot key detection.
+     * <p>
+     * Default is <code>0.1</code>
+     *
+     * @param hotKeySampleRate sample rate in [0, 1]
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> hotKeySampleRate(double hotKeySampleRate) {
+        checkArgument(hotKeySampleRate >= 0.0 && hotKeySampleRate <= 1.0, () -> "cache hotKeySampleRate invalid: " + hotKeySampleRate);
+        this.hotKeySampleRate = hotKeySampleRate;
+        return this;
+    }
+
+    public double getHotKeySampleRate() {
+        return hotKeySampleRate;
+    }
+
+    /**
+     * Sets max hot keys tracked by hot key detection, bounds {@link Cache#hotKeyIterator(int)}.
+     * <code>0</code> disables hot key detection.
+     * <p>
+     * Default is <code>128</code>
+     *
+     * @param hotKeyCapacity tracked keys
+     * @return MapOptions instance
+     */
+    public CacheOptions<K, V> hotKeyCapacity(int hotKeyCapacity) {
+        checkArgument(hotKeyCapacity >= 0, () -> "cache hotKeyCapacity invalid: " + hotKeyCapacity);
+        this.hotKeyCapacity = hotKeyCapacity;
+        return this;
+    }
+
+    public int getHotKeyCapacity() {
+        return hotKeyCapacity;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         CacheOptions<?, ?> that = (CacheOptions<?, ?>) o;
         return writeBehindThreads == that.writeBehindThreads &&
+                writeBehindBatchSize == that.writeBehindBatchSize &&
+                writeBehindQueueSize == that.writeBehindQueueSize &&
+                writeBehindRetries == that.writeBehindRetries &&
+                Objects.equals(writeBehindDelay, that.writeBehindDelay) &&
+                Objects.equals(writeBehindRetryBackoff, that.writeBehindRetryBackoff) &&
                 Objects.equals(name, that.name) &&
                 Objects.equals(loader, that.loader) &&
                 Objects.equals(writer, that.writer) &&
-                writeMode == that.writeMode;
+                writeMode == that.writeMode &&
+                Objects.equals(loadTimeout, that.loadTimeout) &&
+                Objects.equals(loadFailureTtl, that.loadFailureTtl) &&
+                Double.compare(hotKeySampleRate, that.hotKeySampleRate) == 0 &&
+                hotKeyCapacity == that.hotKeyCapacity;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, loader, writer, writeMode, writeBehindThreads);
+        return Objects.hash(name, loader, writer, writeMode, writeBehindThreads, writeBehindBatchSize, writeBehindDelay,
+                writeBehindQueueSize, writeBehindRetries, writeBehindRetryBackoff, loadTimeout, loadFailureTtl,
+                hotKeySampleRate, hotKeyCapacity);
     }
 }
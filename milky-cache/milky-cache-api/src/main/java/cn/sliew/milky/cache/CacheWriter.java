@@ -1,7 +1,9 @@
 package cn.sliew.milky.cache;
 
+import java.util.Map;
+
 /**
- * Cache writer used for write-through operations.
+ * Cache writer used for write-through and write-behind operations.
  *
  * @param <K> key type
  * @param <V> value type
@@ -11,4 +13,20 @@ public interface CacheWriter<K, V> {
     void write(K key, V value);
 
     void delete(K key);
-}
\ No newline at end of file
+
+    /**
+     * Writes all entries, write-behind hands batched entries over through it.
+     * Default writes entries one by one, override it for bulk writes.
+     */
+    default void writeAll(Map<? extends K, ? extends V> map) {
+        map.forEach(this::write);
+    }
+
+    /**
+     * Deletes all keys, write-behind hands batched keys over through it.
+     * Default deletes keys one by one, override it for bulk deletes.
+     */
+    default void deleteAll(Iterable<? extends K> keys) {
+        keys.forEach(this::delete);
+    }
+}
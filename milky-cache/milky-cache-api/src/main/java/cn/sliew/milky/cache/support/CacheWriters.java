@@ -0,0 +1,44 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.cache.CacheWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Builds the {@link CacheWriter} caches apply their writes to, per {@link CacheOptions.WriteMode}.
+ */
+public final class CacheWriters {
+
+    private CacheWriters() {
+        throw new IllegalStateException("can't do this!");
+    }
+
+    /**
+     * Returns {@code null} without writer, the writer itself in write through mode
+     * or a {@link WriteBehindWriter} of it in write behind mode.
+     */
+    public static <K, V> CacheWriter<K, V> create(CacheOptions<K, V> options) {
+        if (options.getWriter() == null) {
+            return null;
+        }
+        if (options.getWriteMode() == CacheOptions.WriteMode.WRITE_BEHIND) {
+            return new WriteBehindWriter<>(options);
+        }
+        return options.getWriter();
+    }
+
+    public static void stats(CacheWriter<?, ?> writer, MeterRegistry registry, String cacheName) {
+        if (writer instanceof WriteBehindWriter) {
+            WriteBehindMeterBinder.monitor(registry, (WriteBehindWriter<?, ?>) writer, cacheName);
+        }
+    }
+
+    /**
+     * Flushes pending writes of write behind mode.
+     */
+    public static void close(CacheWriter<?, ?> writer) {
+        if (writer instanceof WriteBehindWriter) {
+            ((WriteBehindWriter<?, ?>) writer).close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.common.cache.local.FrequencySketch;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * Finds the most read keys of a cache for {@link Cache#hotKeyIterator(int)}.
+ * <p>
+ * A sampled fraction of reads is counted by a {@link FrequencySketch}. A key whose estimate
+ * beats the estimate of the coldest tracked key replaces it in a candidate set of
+ * {@code hotKeyCapacity} keys, candidates then count their sampled reads exactly. Estimates
+ * saturate at 15, a key tied with the coldest candidate at a warm estimate replaces it at
+ * random, so hot keys still get in once every candidate is saturated. The
+ * sketch is updated under a lock which recording only tries: a sample arriving meanwhile
+ * still counts for a tracked candidate but is dropped otherwise, recording never blocks.
+ * <p>
+ * Once 10 samples per sketch counter were counted candidate reads are halved, so keys
+ * cooling down leave the candidates. The sketch ages its counters on its own.
+ */
+public final class HotKeyDetector<K> {
+
+    private final double sampleRate;
+    private final int capacity;
+
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final int agingPeriod;
+    private int windowSamples;
+
+    private final Map<K, Candidate> candidates = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * The candidate with the fewest reads when last computed, recomputed before it is replaced.
+     */
+    private K coldest;
+
+    final LongAdder samples = new LongAdder();
+
+    public HotKeyDetector(double sampleRate, int capacity) {
+        checkArgument(sampleRate > 0.0 && sampleRate <= 1.0, () -> "hot key sampleRate invalid: " + sampleRate);
+        checkArgument(capacity > 0, () -> "hot key capacity must be positive: " + capacity);
+        this.sampleRate = sampleRate;
+        this.capacity = capacity;
+        this.sketch.ensureCapacity(Math.max(256, capacity * 16L));
+        this.agingPeriod = sketch.capacity() * 10;
+    }
+
+    /**
+     * Returns {@code null} when hot key detection is disabled by {@code options}.
+     */
+    public static <K> HotKeyDetector<K> create(CacheOptions<K, ?> options) {
+        if (options.getHotKeySampleRate() <= 0.0 || options.getHotKeyCapacity() <= 0) {
+            return null;
+        }
+        return new HotKeyDetector<>(options.getHotKeySampleRate(), options.getHotKeyCapacity());
+    }
+
+    /**
+     * Counts a read of {@code key} if sampled.
+     */
+    public void record(K key) {
+        if (key == null) {
+            return;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        samples.increment();
+        Candidate candidate = candidates.get(key);
+        if (candidate != null) {
+            candidate.reads.incrementAndGet();
+        }
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(key);
+            if (candidate == null) {
+                admit(key);
+            }
+            if (++windowSamples >= agingPeriod) {
+                age();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records reads of all {@code keys}.
+     */
+    public void recordAll(Iterable<? extends K> keys) {
+        for (K key : keys) {
+            record(key);
+        }
+    }
+
+    /**
+     * At most {@code n} tracked keys, most read first.
+     */
+    public List<K> hotKeys(int n) {
+        List<Map.Entry<K, Integer>> frequencies = frequencies(n);
+        List<K> keys = new ArrayList<>(frequencies.size());
+        for (Map.Entry<K, Integer> entry : frequencies) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * At most {@code n} tracked keys with their estimated reads since last aging, most
+     * read first.
+     */
+    public List<Map.Entry<K, Integer>> frequencies(int n) {
+        n = Math.min(n, capacity);
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        Comparator<Map.Entry<K, Integer>> comparator = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<K, Integer>> heap = new PriorityQueue<>(n + 1, comparator);
+        for (Map.Entry<K, Candidate> entry : candidates.entrySet()) {
+            int frequency = entry.getValue().reads.get();
+            if (heap.size() < n) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), frequency));
+            } else if (frequency > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), frequency));
+            }
+        }
+        List<Map.Entry<K, Integer>> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            Map.Entry<K, Integer> entry = heap.poll();
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), (int) (entry.getValue() / sampleRate)));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Admits {@code key} if there is room or it is estimated more read than the coldest
+     * candidate, which it replaces. Called under {@link #lock}.
+     */
+    private void admit(K key) {
+        int frequency = sketch.frequency(key);
+        if (candidates.size() >= capacity) {
+            if (!admittable(frequency, sketch.frequency(coldest))) {
+                return;
+            }
+            // the candidate with the fewest exact reads may have changed since
+            K victim = coldest();
+            if (!victim.equals(coldest) && !admittable(frequency, sketch.frequency(victim))) {
+                coldest = victim;
+                return;
+            }
+            candidates.remove(victim);
+        }
+        candidates.put(key, new Candidate(frequency));
+        if (candidates.size() >= capacity) {
+            coldest = coldest();
+        }
+    }
+
+    /**
+     * Same as the admission of {@code W_TINY_LFU} local caches, compares sketch estimates
+     * of both keys as exact candidate reads are not bounded by the sketch counters.
+     */
+    private static boolean admittable(int candidateFrequency, int victimFrequency) {
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency <= 5) {
+            return false;
+        }
+        // saturated candidates must not reject every hot key
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private K coldest() {
+        Map.Entry<K, Candidate> coldest = null;
+        for (Map.Entry<K, Candidate> entry : candidates.entrySet()) {
+            if (coldest == null || entry.getValue().reads.get() < coldest.getValue().reads.get()) {
+                coldest = entry;
+            }
+        }
+        return coldest.getKey();
+    }
+
+    /**
+     * Called under {@link #lock}.
+     */
+    private void age() {
+        candidates.values().removeIf(candidate -> candidate.reads.updateAndGet(reads -> reads >>> 1) == 0);
+        coldest = candidates.size() < capacity ? null : coldest();
+        windowSamples = 0;
+    }
+
+    private static final class Candidate {
+
+        private final AtomicInteger reads;
+
+        Candidate(int reads) {
+            this.reads = new AtomicInteger(reads);
+        }
+    }
+}
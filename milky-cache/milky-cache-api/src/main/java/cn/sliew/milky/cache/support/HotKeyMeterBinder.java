@@ -0,0 +1,66 @@
+package cn.sliew.milky.cache.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.Map;
+
+public class HotKeyMeterBinder implements MeterBinder {
+
+    /**
+     * Hot key ranks exported as gauges, each rank is a time series. Keys are not exported,
+     * a tag per key would create meters without bound, see {@code Cache#hotKeyIterator(int)}.
+     */
+    static final int EXPORTED_RANKS = 10;
+
+    private final HotKeyDetector<?> detector;
+    private final Iterable<Tag> tags;
+
+    public HotKeyMeterBinder(HotKeyDetector<?> detector, String cacheName, Iterable<Tag> tags) {
+        this.detector = detector;
+        this.tags = Tags.concat(tags, "cache", cacheName);
+    }
+
+    /**
+     * Record metrics on a hot key detector.
+     *
+     * @param registry  The registry to bind metrics to.
+     * @param detector  The detector to instrument.
+     * @param cacheName The cache whose reads the detector counts.
+     * @param tags      Tags to apply to all recorded metrics. Must be an even number of arguments representing key/value pairs of tags.
+     * @return The instrumented detector, unchanged.
+     */
+    public static HotKeyDetector<?> monitor(MeterRegistry registry, HotKeyDetector<?> detector, String cacheName, String... tags) {
+        new HotKeyMeterBinder(detector, cacheName, Tags.of(tags)).bindTo(registry);
+        return detector;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.hot.key.samples", detector, d -> d.samples.sum())
+                .tags(tags)
+                .description("Reads counted by hot key detection")
+                .register(registry);
+
+        // ranked on every read of a gauge, candidates are at most hotKeyCapacity keys
+        for (int i = 0; i < EXPORTED_RANKS; i++) {
+            int rank = i;
+            Gauge.builder("cache.hot.key.reads", detector, d -> reads(d, rank))
+                    .tags(tags)
+                    .tag("rank", String.valueOf(rank + 1))
+                    .description("Estimated reads of the hottest keys since the last aging period, by rank")
+                    .strongReference(true)
+                    .register(registry);
+        }
+    }
+
+    private static double reads(HotKeyDetector<?> detector, int rank) {
+        List<? extends Map.Entry<?, Integer>> frequencies = detector.frequencies(rank + 1);
+        return frequencies.size() > rank ? frequencies.get(rank).getValue() : 0.0;
+    }
+}
@@ -0,0 +1,140 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.CacheLoader;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Coalesces concurrent loads of the same key into one in-flight load.
+ * <p>
+ * The first caller of a key runs the loader on its own thread, concurrent callers of
+ * the same key wait for its result at most {@code loadTimeout}. Loads of different keys
+ * never block each other.
+ * <p>
+ * A failed load is remembered for {@code failureTtl}, callers of that key fail fast with
+ * the same exception instead of hitting a broken source again. {@link Duration#ZERO}
+ * disables failure caching.
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * Expired failures are purged once this many keys are tracked.
+     */
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private final long loadTimeoutNanos;
+    private final long failureTtlNanos;
+
+    public SingleFlight(Duration loadTimeout, Duration failureTtl) {
+        checkNotNull(loadTimeout, () -> "loadTimeout can't be null");
+        checkNotNull(failureTtl, () -> "failureTtl can't be null");
+        checkArgument(!loadTimeout.isNegative() && !loadTimeout.isZero(), () -> "loadTimeout must be positive: " + loadTimeout);
+        checkArgument(!failureTtl.isNegative(), () -> "failureTtl can't be negative: " + failureTtl);
+        this.loadTimeoutNanos = loadTimeout.toNanos();
+        this.failureTtlNanos = failureTtl.toNanos();
+    }
+
+    /**
+     * Loads {@code key} by {@code loader} unless a load of it is in flight, then waits for that one.
+     *
+     * @throws TimeoutException if the in-flight load doesn't finish within {@code loadTimeout}
+     * @throws Exception        thrown by the loader, of this or the in-flight or a cached failed load
+     */
+    public V load(K key, CacheLoader<K, V> loader) throws Exception {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (flight == null) {
+                Flight<V> created = new Flight<>();
+                flight = flights.putIfAbsent(key, created);
+                if (flight == null) {
+                    return lead(key, created, loader);
+                }
+            }
+            if (flight.future.isCompletedExceptionally()) {
+                if (flight.isFailureCached(System.nanoTime())) {
+                    return flight.await(key, loadTimeoutNanos);
+                }
+                flights.remove(key, flight);
+                continue;
+            }
+            return flight.await(key, loadTimeoutNanos);
+        }
+    }
+
+    /**
+     * Keys being loaded or with a cached failure.
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private V lead(K key, Flight<V> flight, CacheLoader<K, V> loader) throws Exception {
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Throwable t) {
+            if (failureTtlNanos > 0L && t instanceof Exception) {
+                flight.failedUntil = System.nanoTime() + failureTtlNanos;
+                flight.failureCached = true;
+                flight.future.completeExceptionally(t);
+                purgeFailures();
+            } else {
+                flight.future.completeExceptionally(t);
+                flights.remove(key, flight);
+            }
+            throw t;
+        }
+        flight.future.complete(value);
+        flights.remove(key, flight);
+        return value;
+    }
+
+    private void purgeFailures() {
+        if (flights.size() < PURGE_THRESHOLD) {
+            return;
+        }
+        long now = System.nanoTime();
+        flights.values().removeIf(flight -> flight.future.isCompletedExceptionally() && !flight.isFailureCached(now));
+    }
+
+    private static final class Flight<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        /**
+         * Written before {@link #future} completes exceptionally. Only meaningful if
+         * {@link #failureCached}, {@code System.nanoTime()} may be negative.
+         */
+        private long failedUntil;
+        private volatile boolean failureCached;
+
+        boolean isFailureCached(long now) {
+            return failureCached && failedUntil - now > 0L;
+        }
+
+        V await(Object key, long timeoutNanos) throws Exception {
+            try {
+                return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            } catch (TimeoutException e) {
+                throw new TimeoutException("load of key " + key + " not finished within " + Duration.ofNanos(timeoutNanos));
+            }
+        }
+    }
+}
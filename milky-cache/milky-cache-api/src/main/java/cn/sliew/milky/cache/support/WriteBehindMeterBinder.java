@@ -0,0 +1,74 @@
+package cn.sliew.milky.cache.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+public class WriteBehindMeterBinder implements MeterBinder {
+
+    private final WriteBehindWriter<?, ?> writer;
+    private final Iterable<Tag> tags;
+
+    public WriteBehindMeterBinder(WriteBehindWriter<?, ?> writer, String cacheName, Iterable<Tag> tags) {
+        this.writer = writer;
+        this.tags = Tags.concat(tags, "cache", cacheName);
+    }
+
+    /**
+     * Record metrics on a write behind writer.
+     *
+     * @param registry  The registry to bind metrics to.
+     * @param writer    The writer to instrument.
+     * @param cacheName The cache writing through the writer.
+     * @param tags      Tags to apply to all recorded metrics. Must be an even number of arguments representing key/value pairs of tags.
+     * @return The instrumented writer, unchanged.
+     */
+    public static WriteBehindWriter<?, ?> monitor(MeterRegistry registry, WriteBehindWriter<?, ?> writer, String cacheName, String... tags) {
+        new WriteBehindMeterBinder(writer, cacheName, Tags.of(tags)).bindTo(registry);
+        return writer;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cache.write.behind.pending", writer, WriteBehindWriter::pending)
+                .tags(tags)
+                .description("Keys waiting for flush")
+                .register(registry);
+
+        FunctionCounter.builder("cache.write.behind.operations", writer, w -> w.written.sum())
+                .tags(tags)
+                .tag("result", "write")
+                .description("Writes handed to the cache writer")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.operations", writer, w -> w.deleted.sum())
+                .tags(tags)
+                .tag("result", "delete")
+                .description("Deletes handed to the cache writer")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.operations", writer, w -> w.coalesced.sum())
+                .tags(tags)
+                .tag("result", "coalesced")
+                .description("Operations replaced by a later operation of the same key before flush")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.operations", writer, w -> w.failed.sum())
+                .tags(tags)
+                .tag("result", "failed")
+                .description("Operations dropped after all retries failed")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.retries", writer, w -> w.retried.sum())
+                .tags(tags)
+                .description("Retries of failed flushes")
+                .register(registry);
+
+        FunctionTimer.builder("cache.write.behind.flush", writer, w -> w.batches.sum(), w -> w.flushNanos.sum(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Batches flushed to the cache writer, retries included")
+                .register(registry);
+    }
+}
@@ -0,0 +1,349 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.common.concurrent.DaemonThreadFactory;
+import cn.sliew.milky.log.Logger;
+import cn.sliew.milky.log.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Asynchronous {@link CacheWriter} of {@link CacheOptions.WriteMode#WRITE_BEHIND} mode.
+ * <p>
+ * Writes and deletes are queued and applied to the wrapped writer in batches, a batch is
+ * flushed once it holds {@code writeBehindBatchSize} keys or its oldest key waited
+ * {@code writeBehindDelay}. Writes to a key pending in the queue replace its pending
+ * operation, so only the latest value of the key reaches the writer.
+ * <p>
+ * Keys are spread over {@code writeBehindThreads} stripes by hash, each owning a queue and a
+ * flush thread, so operations of a key are applied in order. A full queue blocks writers
+ * until the flush thread catches up. A failed batch is retried {@code writeBehindRetries}
+ * times with exponential backoff, keys written again meanwhile are skipped as the newer
+ * operation follows, then the batch is dropped and logged.
+ * <p>
+ * {@link #close()} flushes all pending operations, operations after it go to the wrapped
+ * writer synchronously.
+ */
+public final class WriteBehindWriter<K, V> implements CacheWriter<K, V>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    private final CacheWriter<K, V> writer;
+    private final int batchSize;
+    private final long delayNanos;
+    private final int retries;
+    private final Duration retryBackoff;
+
+    private final List<Stripe> stripes;
+
+    private volatile boolean closed = false;
+
+    final LongAdder written = new LongAdder();
+    final LongAdder deleted = new LongAdder();
+    final LongAdder coalesced = new LongAdder();
+    final LongAdder batches = new LongAdder();
+    final LongAdder retried = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder flushNanos = new LongAdder();
+
+    public WriteBehindWriter(CacheOptions<K, V> options) {
+        checkNotNull(options, () -> "options can't be null");
+        this.writer = checkNotNull(options.getWriter(), () -> "cache writer can't be null");
+        this.batchSize = options.getWriteBehindBatchSize();
+        this.delayNanos = options.getWriteBehindDelay().toNanos();
+        this.retries = options.getWriteBehindRetries();
+        this.retryBackoff = options.getWriteBehindRetryBackoff();
+
+        int threads = options.getWriteBehindThreads();
+        int stripeCapacity = Math.max(1, options.getWriteBehindQueueSize() / threads);
+        ThreadFactory threadFactory = new DaemonThreadFactory("milky-write-behind-" + options.getName());
+        this.stripes = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Stripe stripe = new Stripe(stripeCapacity);
+            stripes.add(stripe);
+            threadFactory.newThread(stripe).start();
+        }
+    }
+
+    @Override
+    public void write(K key, V value) {
+        submit(key, new Operation<>(value, false));
+    }
+
+    @Override
+    public void delete(K key) {
+        submit(key, new Operation<>(null, true));
+    }
+
+    @Override
+    public void writeAll(Map<? extends K, ? extends V> map) {
+        map.forEach(this::write);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends K> keys) {
+        keys.forEach(this::delete);
+    }
+
+    private void submit(K key, Operation<V> operation) {
+        checkNotNull(key, () -> "key can't be null");
+        if (closed) {
+            apply(key, operation);
+            return;
+        }
+        stripe(key).submit(key, operation);
+    }
+
+    private void apply(K key, Operation<V> operation) {
+        if (operation.delete) {
+            writer.delete(key);
+        } else {
+            writer.write(key, operation.value);
+        }
+    }
+
+    /**
+     * Keys waiting for flush.
+     */
+    public long pending() {
+        long pending = 0L;
+        for (Stripe stripe : stripes) {
+            pending += stripe.pending.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Flushes all pending operations and stops flush threads, waiting for them to finish.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Stripe stripe : stripes) {
+            stripe.awaitTermination();
+            stripe.drain();
+        }
+    }
+
+    private Stripe stripe(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes.get((hash & Integer.MAX_VALUE) % stripes.size());
+    }
+
+    private static final class Operation<V> {
+
+        private final V value;
+        private final boolean delete;
+
+        Operation(V value, boolean delete) {
+            this.value = value;
+            this.delete = delete;
+        }
+    }
+
+    private final class Stripe implements Runnable {
+
+        /**
+         * Latest operation of each queued key. A key is queued when its operation is added
+         * and dequeued right before the flush thread takes its operation, so a key is queued
+         * at most once.
+         */
+        private final Map<K, Operation<V>> pending = new ConcurrentHashMap<>();
+        private final BlockingQueue<K> queue;
+
+        private volatile boolean terminated = false;
+
+        Stripe(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void submit(K key, Operation<V> operation) {
+            if (pending.put(key, operation) != null) {
+                coalesced.increment();
+            } else {
+                enqueue(key);
+            }
+            if (closed) {
+                // raced with close(), the flush thread may have finished already
+                drain();
+            }
+        }
+
+        private void enqueue(K key) {
+            boolean interrupted = false;
+            try {
+                while (!closed) {
+                    try {
+                        if (queue.offer(key, 100L, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Applies pending operations left after the flush thread finished synchronously.
+         */
+        void drain() {
+            for (K key : pending.keySet()) {
+                Operation<V> operation = pending.remove(key);
+                if (operation == null) {
+                    continue;
+                }
+                try {
+                    apply(key, operation);
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("write behind operation of key {} dropped", key, e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<K> keys = new ArrayList<>(batchSize);
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    try {
+                        collect(keys);
+                    } catch (InterruptedException e) {
+                        // flush what was collected, close() is the only way to stop
+                    }
+                    if (!keys.isEmpty()) {
+                        flush(keys);
+                        keys.clear();
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    terminated = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the first key, then collects keys until the batch is full or the first
+         * key waited the write behind delay. Stops waiting once closed, idle waits are
+         * bounded so close is noticed.
+         */
+        private void collect(List<K> keys) throws InterruptedException {
+            K first = queue.poll(IDLE_NANOS, TimeUnit.NANOSECONDS);
+            if (first == null) {
+                return;
+            }
+            keys.add(first);
+            long deadline = System.nanoTime() + delayNanos;
+            while (keys.size() < batchSize && !closed) {
+                queue.drainTo(keys, batchSize - keys.size());
+                long remaining = deadline - System.nanoTime();
+                if (keys.size() >= batchSize || remaining <= 0L) {
+                    return;
+                }
+                K next = queue.poll(Math.min(remaining, IDLE_NANOS), TimeUnit.NANOSECONDS);
+                if (next != null) {
+                    keys.add(next);
+                }
+            }
+            queue.drainTo(keys, batchSize - keys.size());
+        }
+
+        private void flush(List<K> keys) {
+            Map<K, V> writes = new LinkedHashMap<>();
+            List<K> deletes = new ArrayList<>();
+            for (K key : keys) {
+                Operation<V> operation = pending.remove(key);
+                if (operation == null) {
+                    continue;
+                }
+                if (operation.delete) {
+                    deletes.add(key);
+                } else {
+                    writes.put(key, operation.value);
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    if (!writes.isEmpty()) {
+                        writer.writeAll(writes);
+                        written.add(writes.size());
+                        writes.clear();
+                    }
+                    if (!deletes.isEmpty()) {
+                        writer.deleteAll(deletes);
+                        deleted.add(deletes.size());
+                        deletes.clear();
+                    }
+                    break;
+                } catch (Exception e) {
+                    if (attempt >= retries) {
+                        failed.add(writes.size() + deletes.size());
+                        log.error("write behind batch dropped after {} retries, writes: {}, deletes: {}",
+                                retries, writes.keySet(), deletes, e);
+                        break;
+                    }
+                    retried.increment();
+                    log.warn("write behind batch failed, retry {}/{}: {}", attempt + 1, retries, e.getMessage());
+                    backoff(attempt);
+                    // newer operations of these keys are queued and supersede the failed ones
+                    writes.keySet().removeIf(pending::containsKey);
+                    deletes.removeIf(pending::containsKey);
+                }
+            }
+            batches.increment();
+            flushNanos.add(System.nanoTime() - start);
+        }
+
+        private void backoff(int attempt) {
+            long sleepMillis = retryBackoff.toMillis() << Math.min(attempt, 16);
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void awaitTermination() {
+            boolean interrupted = false;
+            while (!terminated) {
+                try {
+                    wait(100L);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cn.sliew.milky.cache.benchmark;
+
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.common.benchmark.ZipfianGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives every {@link Cache} backend with the same workload.
+ * <p>
+ * {@link Mode#Throughput} reports ops/us, {@link Mode#SampleTime} reports p50/p90/p99/p999
+ * latency. Run with {@code -prof gc} (or {@link CacheBenchmarkRunner}) for the allocation
+ * rate per operation ({@code gc.alloc.rate.norm}).
+ * <p>
+ * Thread count is controlled by JMH {@code -t}, see {@link CacheBenchmarkRunner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CacheBenchmark {
+
+    /**
+     * Distinct value instances, values are reused across keys to keep
+     * benchmark heap footprint independent of {@link #keySpace}.
+     */
+    private static final int VALUE_POOL_SIZE = 1024;
+
+    @Param
+    private CacheType cacheType;
+
+    @Param
+    private ValueType valueType;
+
+    /**
+     * Approximate serialized payload of each value in bytes.
+     */
+    @Param({"128", "1024"})
+    private int valueSize;
+
+    /**
+     * Fraction of operations which are {@link Cache#get(Object)}, others are
+     * {@link Cache#put(Object, Object)}.
+     */
+    @Param({"0.9"})
+    private double readRatio;
+
+    @Param({"100000"})
+    private int keySpace;
+
+    /**
+     * Zipfian skew, {@code 0} means uniform.
+     */
+    @Param({"0.99"})
+    private double zipfTheta;
+
+    /**
+     * Cache maximum entries, defaults to half of {@link #keySpace} so that
+     * eviction takes part in the workload.
+     */
+    @Param({"50000"})
+    private long maximumSize;
+
+    private Cache<String, Object> cache;
+    private String[] keys;
+    private Object[] values;
+    private ZipfianGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.generator = new ZipfianGenerator(keySpace, zipfTheta);
+        this.keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "key-" + i;
+        }
+        this.values = new Object[VALUE_POOL_SIZE];
+        for (int i = 0; i < VALUE_POOL_SIZE; i++) {
+            values[i] = valueType.create(i, valueSize);
+        }
+
+        this.cache = cacheType.create("benchmark-" + cacheType.name().toLowerCase(), maximumSize);
+        this.cache.clear();
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        for (long i = 0; i < maximumSize; i++) {
+            int index = (int) generator.next(random);
+            cache.put(keys[index], value(index));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+        cache.destroy();
+        cacheType.release();
+    }
+
+    @Benchmark
+    public Object readWrite(ThreadState state) {
+        int index = (int) generator.next(state.random);
+        if (state.random.nextDouble() < readRatio) {
+            return cache.get(keys[index]);
+        }
+        cache.put(keys[index], value(index));
+        return null;
+    }
+
+    private Object value(int index) {
+        return values[index & (VALUE_POOL_SIZE - 1)];
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+}
@@ -0,0 +1,35 @@
+package cn.sliew.milky.cache.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link CacheBenchmark} once per thread count with the gc profiler enabled.
+ * <p>
+ * Thread counts are read from {@code -Dbenchmark.threads=1,4,16}, other JMH command line
+ * options are passed through, e.g. {@code -p cacheType=CAFFEINE,OHC -p readRatio=0.5,0.95}.
+ * Each run writes a {@code cache-benchmark-<threads>t.json} result file.
+ */
+public class CacheBenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String[] threads = System.getProperty("benchmark.threads", "1,4,16").split(",");
+        for (String thread : threads) {
+            int threadCount = Integer.parseInt(thread.trim());
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(CacheBenchmark.class.getSimpleName())
+                    .threads(threadCount)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("cache-benchmark-" + threadCount + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cn.sliew.milky.cache.benchmark;
+
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheFactory;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import cn.sliew.milky.cache.lettuce.LettuceCacheFactory;
+import cn.sliew.milky.cache.lettuce.LettuceCacheOptions;
+import cn.sliew.milky.cache.ohc.OhcCacheFactory;
+import cn.sliew.milky.cache.ohc.OhcCacheOptions;
+import io.lettuce.core.RedisURI;
+
+import java.time.Duration;
+
+/**
+ * Cache backends under benchmark, all driven through {@link Cache}.
+ * <p>
+ * Entries never expire during a benchmark trial so that hit ratio only depends on
+ * {@code maximumSize} and key distribution.
+ */
+public enum CacheType {
+
+    CAFFEINE {
+        @Override
+        Cache<String, Object> create(String name, long maximumSize) {
+            CaffeineCacheOptions<String, Object> options = new CaffeineCacheOptions<>();
+            options.name(name);
+            options.maximumSize(maximumSize)
+                    .expireAfterAccess(Duration.ofHours(1L))
+                    .expireAfterWrite(Duration.ofHours(1L));
+            return new CaffeineCacheFactory().getCache(options);
+        }
+    },
+
+    OHC {
+        @Override
+        Cache<String, Object> create(String name, long maximumSize) {
+            OhcCacheOptions<String, Object> options = new OhcCacheOptions<>();
+            options.name(name);
+            options.defaultTTLmillis(Duration.ofHours(1L).toMillis());
+            return new OhcCacheFactory().getCache(options);
+        }
+    },
+
+    /**
+     * Connects to {@code -Dredis.uri} when present, otherwise to an embedded redis
+     * started by {@link EmbeddedRedis}.
+     */
+    LETTUCE {
+        @Override
+        Cache<String, Object> create(String name, long maximumSize) {
+            LettuceCacheOptions<String, Object> options = new LettuceCacheOptions<>();
+            options.name(name);
+            options.redisURI(RedisURI.create(EmbeddedRedis.start()));
+            return new LettuceCacheFactory().getCache(options);
+        }
+
+        @Override
+        void release() {
+            EmbeddedRedis.stop();
+        }
+    },
+
+    /**
+     * {@link #LETTUCE} on one shared connection with single round trip operations.
+     */
+    LETTUCE_MULTIPLEXED {
+        @Override
+        Cache<String, Object> create(String name, long maximumSize) {
+            LettuceCacheOptions<String, Object> options = new LettuceCacheOptions<>();
+            options.name(name);
+            options.redisURI(RedisURI.create(EmbeddedRedis.start()))
+                    .executionMode(LettuceCacheOptions.ExecutionMode.MULTIPLEXED);
+            return new LettuceCacheFactory().getCache(options);
+        }
+
+        @Override
+        void release() {
+            EmbeddedRedis.stop();
+        }
+    };
+
+    abstract Cache<String, Object> create(String name, long maximumSize);
+
+    void release() {
+
+    }
+}
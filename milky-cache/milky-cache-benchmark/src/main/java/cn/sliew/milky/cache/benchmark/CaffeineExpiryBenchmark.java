@@ -0,0 +1,109 @@
+package cn.sliew.milky.cache.benchmark;
+
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.caffeine.CaffeineCache;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes short lived entries, e.g. sessions or tokens, into a {@link CaffeineCache} whose
+ * global expiry is long and compares how many entries stay resident.
+ * <p>
+ * {@link ExpiryMode#GLOBAL} writes through {@link Cache#put(Object, Object)}, which is what
+ * {@link Cache#put(Object, Object, Duration)} did before per entry expiry, so entries only
+ * leave by size eviction. {@link ExpiryMode#PER_ENTRY} writes with {@link #entryTtlMillis},
+ * resident entries settle at write rate * (ttl + timer wheel tick), Caffeine's finest wheel
+ * tick is about 1 second.
+ * <p>
+ * Each value is a distinct {@code byte[valueSize]}, retained heap is roughly
+ * {@code residentEntries * valueSize}. Run with
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main CaffeineExpiryBenchmark -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 20)
+@Threads(1)
+@Fork(1)
+public class CaffeineExpiryBenchmark {
+
+    public enum ExpiryMode {
+        GLOBAL,
+        PER_ENTRY
+    }
+
+    @Param
+    private ExpiryMode expiryMode;
+
+    @Param({"100"})
+    private long entryTtlMillis;
+
+    @Param({"128"})
+    private int valueSize;
+
+    @Param({"1000000"})
+    private long maximumSize;
+
+    /**
+     * {@link Blackhole#consumeCPU(long)} tokens per write, bounds the write rate like
+     * request handling around the cache does.
+     */
+    @Param({"1000"})
+    private long work;
+
+    private Cache<Long, byte[]> cache;
+    private Duration entryTtl;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CaffeineCacheOptions<Long, byte[]> options = new CaffeineCacheOptions<>();
+        options.name("benchmark-caffeine-expiry");
+        options.maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofHours(1L))
+                .expireAfterWrite(Duration.ofHours(1L));
+        this.cache = new CaffeineCache<>(options);
+        this.entryTtl = Duration.ofMillis(entryTtlMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+        cache.destroy();
+    }
+
+    @Benchmark
+    public void put(ResidentCounters counters) {
+        Blackhole.consumeCPU(work);
+        long key = sequence++;
+        if (expiryMode == ExpiryMode.PER_ENTRY) {
+            cache.put(key, new byte[valueSize], entryTtl);
+        } else {
+            cache.put(key, new byte[valueSize]);
+        }
+        if ((key & 0xFFF) == 0) {
+            counters.residentEntries = cache.size();
+        }
+    }
+
+    /**
+     * Entries resident at the end of the iteration, sampled every 4096 writes. JMH sums
+     * events over iterations, divide by the iteration count.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ResidentCounters {
+
+        public long residentEntries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            residentEntries = 0L;
+        }
+    }
+}
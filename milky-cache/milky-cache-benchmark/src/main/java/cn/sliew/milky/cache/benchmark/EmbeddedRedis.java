@@ -0,0 +1,54 @@
+package cn.sliew.milky.cache.benchmark;
+
+import cn.sliew.milky.common.exception.Rethrower;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+
+/**
+ * Local redis stand-in for {@link CacheType#LETTUCE}.
+ * <p>
+ * Set {@code -Dredis.uri=redis://host:port} to benchmark against a real redis instead,
+ * {@code -Dredis.port} changes the embedded redis port, default {@code 16379}.
+ */
+final class EmbeddedRedis {
+
+    private static final String REDIS_URI = "redis.uri";
+    private static final String REDIS_PORT = "redis.port";
+
+    private static RedisServer server;
+
+    private EmbeddedRedis() {
+        throw new IllegalStateException("no instance");
+    }
+
+    static synchronized String start() {
+        String uri = System.getProperty(REDIS_URI);
+        if (uri != null) {
+            return uri;
+        }
+        int port = Integer.getInteger(REDIS_PORT, 16379);
+        if (server == null) {
+            try {
+                server = new RedisServer(port);
+                server.start();
+            } catch (IOException e) {
+                Rethrower.throwAs(e);
+            }
+        }
+        return "redis://localhost:" + port;
+    }
+
+    static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.stop();
+        } catch (IOException e) {
+            Rethrower.throwAs(e);
+        } finally {
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cn.sliew.milky.cache.benchmark;
+
+import cn.sliew.milky.cache.model.BigPerson;
+import cn.sliew.milky.cache.model.FullAddress;
+import cn.sliew.milky.cache.model.Person;
+import cn.sliew.milky.cache.model.PersonInfo;
+import cn.sliew.milky.cache.model.Phone;
+import cn.sliew.milky.cache.model.Status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cache value models shared with {@code milky-cache-test}.
+ * <p>
+ * {@code payloadSize} pads a string field so the serialized size of the value
+ * can be tuned independently of the model shape.
+ */
+public enum ValueType {
+
+    PERSON {
+        @Override
+        Object create(int id, int payloadSize) {
+            Person person = new Person();
+            person.setName("person-" + id);
+            person.setAge(id % 100);
+            person.setValue(new String[]{payload(payloadSize)});
+            return person;
+        }
+    },
+
+    BIG_PERSON {
+        @Override
+        Object create(int id, int payloadSize) {
+            PersonInfo info = new PersonInfo();
+            List<Phone> phones = new ArrayList<>(2);
+            phones.add(new Phone("86", "0571", "87654321", "001"));
+            phones.add(new Phone("86", "0571", "87654322", "002"));
+            info.setPhones(phones);
+            info.setFax(new Phone("86", "0571", "87654321", null));
+            info.setFullAddress(new FullAddress("CN", "zj", "3480", "wensanlu", "wensanlu", "wensanluwensanluwensanlu", "315000"));
+            info.setMobileNo("13584652131");
+            info.setName("superman-" + id);
+            info.setMale(true);
+            info.setDepartment("b2b");
+            info.setJobTitle("qa");
+            info.setHomepageUrl(payload(payloadSize));
+
+            BigPerson person = new BigPerson();
+            person.setId(String.valueOf(id));
+            person.setUsername("user-" + id);
+            person.setStatus(Status.ENABLED);
+            person.setEmail("user-" + id + "@sliew.cn");
+            person.setPenName("pen-" + id);
+            person.setInfoProfile(info);
+            return person;
+        }
+    };
+
+    abstract Object create(int id, int payloadSize);
+
+    private static String payload(int payloadSize) {
+        char[] chars = new char[Math.max(payloadSize, 0)];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
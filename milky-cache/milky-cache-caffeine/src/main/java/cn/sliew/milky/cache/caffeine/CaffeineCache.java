@@ -2,9 +2,16 @@ package cn.sliew.milky.cache.caffeine;
 
 import cn.sliew.milky.cache.Cache;
 import cn.sliew.milky.cache.CacheLoader;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.cache.support.CacheWriters;
+import cn.sliew.milky.cache.support.HotKeyDetector;
+import cn.sliew.milky.cache.support.HotKeyMeterBinder;
+import cn.sliew.milky.cache.support.SingleFlight;
 import cn.sliew.milky.log.Logger;
 import cn.sliew.milky.log.LoggerFactory;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -12,6 +19,8 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static cn.sliew.milky.common.check.Ensures.checkNotNull;
 
@@ -21,6 +30,11 @@ import static cn.sliew.milky.common.check.Ensures.checkNotNull;
  * <p>
  * because maximumSize can't be combined with maximumWeight, CaffeineCache
  * would not support maximumWeight parameter.
+ * <p>
+ * Entries expire variably, an entry written with a {@link Duration} expires after it,
+ * others expire after the shorter of {@code expireAfterWrite} and {@code expireAfterAccess}
+ * since written. Caffeine can't combine fixed and variable expiration, so reads don't
+ * extend the lifetime of an entry. Expired entries are removed by Caffeine's timer wheel.
  */
 public class CaffeineCache<K, V> implements Cache<K, V> {
 
@@ -28,16 +42,26 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
 
     private final com.github.benmanes.caffeine.cache.Cache<K, V> cache;
 
+    private final Policy.VarExpiration<K, V> varExpiration;
+
     private final CaffeineCacheOptions<K, V> options;
 
+    private final CacheWriter<K, V> writer;
+
+    private final SingleFlight<K, V> singleFlight;
+
+    private final HotKeyDetector<K> hotKeys;
+
     public CaffeineCache(CaffeineCacheOptions<K, V> options) {
         this.options = checkNotNull(options, () -> "options can't be null");
+        this.writer = CacheWriters.create(options);
+        this.singleFlight = new SingleFlight<>(options.getLoadTimeout(), options.getLoadFailureTtl());
+        this.hotKeys = HotKeyDetector.create(options);
 
         Caffeine<K, V> caffeine = (Caffeine<K, V>) Caffeine.newBuilder()
                 .initialCapacity(options.getInitialCapacity())
                 .maximumSize(options.getMaximumSize())
-                .expireAfterAccess(options.getExpireAfterAccess())
-                .expireAfterWrite(options.getExpireAfterWrite())
+                .expireAfter(new DefaultExpiry<>(options))
                 .recordStats();
         if (options.isWeakKeys()) {
             caffeine.weakKeys();
@@ -56,10 +80,16 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
                 public @Nullable V load(K key) throws Exception {
                     return options.getLoader().load(key);
                 }
+
+                @Override
+                public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+                    return options.getLoader().loadAll(keys);
+                }
             });
         } else {
             this.cache = caffeine.build();
         }
+        this.varExpiration = this.cache.policy().expireVariably().get();
     }
 
     @Override
@@ -69,6 +99,9 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
 
     @Override
     public V get(K key) {
+        if (hotKeys != null) {
+            hotKeys.record(key);
+        }
         return this.cache.getIfPresent(key);
     }
 
@@ -80,40 +113,81 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
     @Override
     public V computeIfAbsent(K key, CacheLoader<K, V> loader, Duration expire) {
         V value = get(key);
-        if (value == null) {
-            synchronized (cache) {
-                value = get(key);
-                if (value == null) {
-                    try {
-                        value = loader.load(key);
-                        put(key, value, expire);
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
+        if (value != null) {
+            return value;
+        }
+        try {
+            return singleFlight.load(key, key1 -> {
+                // a previous load may have finished since the miss
+                V loaded = this.cache.getIfPresent(key1);
+                if (loaded == null) {
+                    loaded = loader.load(key1);
+                    if (loaded != null) {
+                        this.varExpiration.put(key1, loaded, expire.toNanos(), TimeUnit.NANOSECONDS);
                     }
                 }
-            }
+                return loaded;
+            });
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
         }
+        return null;
+    }
 
-        return value;
+    @Override
+    public Map<K, V> getAll(Iterable<K> keys) {
+        if (hotKeys != null) {
+            hotKeys.recordAll(keys);
+        }
+        return this.cache.getAllPresent(keys);
     }
 
     @Override
     public void put(K key, V value) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
         this.cache.put(key, value);
     }
 
     @Override
     public void put(K key, V value, Duration expire) {
-        this.cache.put(key, value);
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        this.varExpiration.put(key, value, expire.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        this.cache.putAll(map);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map, Duration expire) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        long expireNanos = expire.toNanos();
+        map.forEach((key, value) -> this.varExpiration.put(key, value, expireNanos, TimeUnit.NANOSECONDS));
     }
 
     @Override
     public void remove(K key) {
+        if (writer != null) {
+            writer.delete(key);
+        }
         this.cache.invalidate(key);
     }
 
     @Override
     public void removeAll(Iterable<K> keys) {
+        if (writer != null) {
+            writer.deleteAll(keys);
+        }
         this.cache.invalidateAll(keys);
     }
 
@@ -139,12 +213,19 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
 
     @Override
     public Iterator<K> hotKeyIterator(int n) {
-        return Collections.emptyIterator();
+        if (hotKeys == null) {
+            return Collections.emptyIterator();
+        }
+        return hotKeys.hotKeys(n).iterator();
     }
 
     @Override
     public void stats(MeterRegistry registry) {
         CaffeineCacheMetrics.monitor(registry, this.cache, this.name());
+        CacheWriters.stats(writer, registry, name());
+        if (hotKeys != null) {
+            HotKeyMeterBinder.monitor(registry, hotKeys, name());
+        }
     }
 
     @Override
@@ -154,6 +235,35 @@ public class CaffeineCache<K, V> implements Cache<K, V> {
 
     @Override
     public void destroy() {
+        CacheWriters.close(writer);
+    }
 
+    /**
+     * Expires entries written without duration after the shorter of {@code expireAfterWrite}
+     * and {@code expireAfterAccess}, entries written with duration are set through
+     * {@link Policy.VarExpiration} and keep it until rewritten.
+     */
+    private static class DefaultExpiry<K, V> implements Expiry<K, V> {
+
+        private final long expireNanos;
+
+        DefaultExpiry(CaffeineCacheOptions<K, V> options) {
+            this.expireNanos = Math.min(options.getExpireAfterWrite().toNanos(), options.getExpireAfterAccess().toNanos());
+        }
+
+        @Override
+        public long expireAfterCreate(K key, V value, long currentTime) {
+            return expireNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+            return expireNanos;
+        }
+
+        @Override
+        public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -1,10 +1,18 @@
 package cn.sliew.milky.cache.lettuce;
 
 import cn.sliew.milky.common.exception.Rethrower;
+import cn.sliew.milky.common.reference.ResourceLeakDetector;
+import cn.sliew.milky.common.reference.ResourceLeakTracker;
+import io.lettuce.core.AbstractRedisClient;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.cluster.RedisClusterClient;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import io.lettuce.core.support.BoundedPoolConfig;
 import io.lettuce.core.support.ConnectionPoolSupport;
 import org.apache.commons.pool2.impl.GenericObjectPool;
@@ -14,24 +22,45 @@ import java.io.IOException;
 
 public class DefaultLettuceConnectionFactory implements LettuceConnectionFactory {
 
-    private final GenericObjectPoolConfig poolConfig;
+    private final BoundedPoolConfig poolConfig;
 
-    private GenericObjectPool<StatefulRedisConnection<?, ?>> connectionPool;
-    private GenericObjectPool<StatefulRedisClusterConnection<?, ?>> clusterConnectionPool;
+    /**
+     * Created on first {@link #getConnection()}, {@link LettuceCacheOptions.ExecutionMode#MULTIPLEXED}
+     * mode runs without commons-pool.
+     */
+    private volatile GenericObjectPool<StatefulRedisConnection<?, ?>> connectionPool;
+    private volatile GenericObjectPool<StatefulRedisClusterConnection<?, ?>> clusterConnectionPool;
+
+    private RedisClient client;
+    private RedisClusterClient clusterClient;
+
+    /**
+     * Multiplexed connection shared by all callers, created on first use.
+     */
+    private volatile StatefulConnection<byte[], byte[]> sharedConnection;
+
+    /**
+     * Every borrowed connection is tracked, a connection never closed is never returned to
+     * the pool and the pool runs dry once all are leaked.
+     */
+    private final ResourceLeakDetector<LettuceConnection> leakDetector = new ResourceLeakDetector<>("LettuceConnection", 1);
 
     public DefaultLettuceConnectionFactory(RedisClient client, BoundedPoolConfig poolConfig) {
-        this.poolConfig = convert(poolConfig);
-        this.connectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> client.connect(ProtostuffCodec.INSTANCE), this.poolConfig);
+        this.poolConfig = poolConfig;
+        this.client = client;
     }
 
     public DefaultLettuceConnectionFactory(RedisClusterClient clusterClient, BoundedPoolConfig poolConfig) {
-        this.poolConfig = convert(poolConfig);
-        this.clusterConnectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> clusterClient.connect(ProtostuffCodec.INSTANCE), this.poolConfig);
+        this.poolConfig = poolConfig;
+        this.clusterClient = clusterClient;
     }
 
     @Override
     public LettuceConnection getConnection() {
         try {
+            if (connectionPool == null && clusterConnectionPool == null) {
+                createPool();
+            }
             if (connectionPool != null) {
                 return new LettuceConnectionWrapper(connectionPool.borrowObject());
             } else {
@@ -44,6 +73,95 @@ public class DefaultLettuceConnectionFactory implements LettuceConnectionFactory
         }
     }
 
+    /**
+     * Detects borrowed connections garbage collected without being closed.
+     */
+    public ResourceLeakDetector<LettuceConnection> leakDetector() {
+        return leakDetector;
+    }
+
+    private synchronized void createPool() {
+        if (connectionPool != null || clusterConnectionPool != null) {
+            return;
+        }
+        if (client != null) {
+            this.connectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> client.connect(ProtostuffCodec.INSTANCE), convert(poolConfig));
+        } else {
+            this.clusterConnectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> clusterClient.connect(ProtostuffCodec.INSTANCE), convert(poolConfig));
+        }
+    }
+
+    /**
+     * Returns the multiplexed connection shared by all callers. Keys and values are
+     * raw bytes, callers encode them, and the connection must never be closed by them.
+     */
+    public StatefulConnection<byte[], byte[]> getSharedConnection() {
+        StatefulConnection<byte[], byte[]> connection = sharedConnection;
+        if (connection == null) {
+            synchronized (this) {
+                connection = sharedConnection;
+                if (connection == null) {
+                    if (client != null) {
+                        connection = client.connect(ByteArrayCodec.INSTANCE);
+                    } else {
+                        connection = clusterClient.connect(ByteArrayCodec.INSTANCE);
+                    }
+                    sharedConnection = connection;
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Async commands of {@link #getSharedConnection()}, commands issued without
+     * awaiting each other are pipelined on the connection.
+     */
+    public RedisClusterAsyncCommands<byte[], byte[]> sharedAsync() {
+        StatefulConnection<byte[], byte[]> connection = getSharedConnection();
+        if (connection instanceof StatefulRedisClusterConnection) {
+            return ((StatefulRedisClusterConnection<byte[], byte[]>) connection).async();
+        }
+        return ((StatefulRedisConnection<byte[], byte[]>) connection).async();
+    }
+
+    /**
+     * Opens a new pub/sub connection, closed by the caller.
+     */
+    public StatefulRedisPubSubConnection<byte[], byte[]> connectPubSub() {
+        if (client != null) {
+            return client.connectPubSub(ByteArrayCodec.INSTANCE);
+        }
+        return clusterClient.connectPubSub(ByteArrayCodec.INSTANCE);
+    }
+
+    /**
+     * Listens to state changes of all connections of the client.
+     */
+    public void addListener(RedisConnectionStateListener listener) {
+        AbstractRedisClient redisClient = client != null ? client : clusterClient;
+        redisClient.addListener(listener);
+    }
+
+    /**
+     * Closes pooled and shared connections and shuts down the client.
+     */
+    @Override
+    public synchronized void close() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+        if (clusterConnectionPool != null) {
+            clusterConnectionPool.close();
+        }
+        if (sharedConnection != null) {
+            sharedConnection.close();
+            sharedConnection = null;
+        }
+        AbstractRedisClient redisClient = client != null ? client : clusterClient;
+        redisClient.shutdown();
+    }
+
     private void release(StatefulRedisConnection connection) {
         if (connectionPool != null) {
             connectionPool.returnObject(connection);
@@ -79,16 +197,22 @@ public class DefaultLettuceConnectionFactory implements LettuceConnectionFactory
 
         private StatefulRedisConnection connection;
         private StatefulRedisClusterConnection clusterConnection;
+        private final ResourceLeakTracker<LettuceConnection> leak;
 
         LettuceConnectionWrapper(StatefulRedisConnection connection) {
             this.connection = connection;
+            this.leak = leakDetector.track(this);
         }
 
         LettuceConnectionWrapper(StatefulRedisClusterConnection clusterConnection) {
             this.clusterConnection = clusterConnection;
+            this.leak = leakDetector.track(this);
         }
 
         public LettuceCommandsWrapper sync() {
+            if (leak != null) {
+                leak.record();
+            }
             return new LettuceCommandsWrapper(this.connection, this.clusterConnection);
         }
 
@@ -98,6 +222,9 @@ public class DefaultLettuceConnectionFactory implements LettuceConnectionFactory
 
         @Override
         public void close() throws IOException {
+            if (leak != null) {
+                leak.close(this);
+            }
             if (connection != null) {
                 release(connection);
             }
@@ -2,26 +2,35 @@ package cn.sliew.milky.cache.lettuce;
 
 import cn.sliew.milky.cache.Cache;
 import cn.sliew.milky.cache.CacheLoader;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.cache.support.CacheWriters;
+import cn.sliew.milky.cache.support.HotKeyDetector;
+import cn.sliew.milky.cache.support.HotKeyMeterBinder;
+import cn.sliew.milky.cache.support.SingleFlight;
 import cn.sliew.milky.common.exception.Rethrower;
+import cn.sliew.milky.common.reference.ResourceLeakDetectorMetrics;
 import cn.sliew.milky.log.Logger;
 import cn.sliew.milky.log.LoggerFactory;
-import io.lettuce.core.Limit;
-import io.lettuce.core.Range;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScoredValue;
 import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.metrics.CommandLatencyRecorder;
 import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
 import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.protocol.ProtocolKeyword;
 import io.lettuce.core.resource.ClientResources;
 import io.lettuce.core.support.BoundedPoolConfig;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
 
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
@@ -35,14 +44,15 @@ import static cn.sliew.milky.common.check.Ensures.checkNotNull;
  * 使用了hash作为缓存存储模式带来一个问题：redis官方至今没有打算支持hash的field的ttl。
  * 因此需要自己实现针对hash的field的ttl。
  * 为value对象创建包装类ValueWrapper，记录过期时间戳。获取缓存对象的时候查看对象是否已经过期。
- * 对于每个key对象放入一个sortset，以过期时间戳作为分数，创建定时任务定期从sortset和hash
- * 中移除缓存对象。
+ * 对于每个key对象放入一个sortset，以过期时间戳（epoch millis）作为分数，创建定时任务定期从sortset和hash
+ * 中移除缓存对象。同一个缓存的所有客户端通过租约选出一个执行清理，见{@link LettuceExpirySweeper}。
  * 为了保证数据不会出现永久停留在redis中的问题，设置缓存的过期时间统一为凌晨3点，缓存的凌晨过期
  * 不会造成业务的突然抖动，也能定时清理所有的缓存对象
  * todo 考虑到对象双写的问题，需要将同时操作sortset和hash的对象移除功能处理为一个
  * todo 原子操作，需要使用lua脚本来搞。
+ * {@link LettuceCacheOptions.ExecutionMode#MULTIPLEXED}模式下已经使用lua脚本，见{@link LettuceMultiplexedCommands}。
  * <p>
- * 时间轮是一秒跳一次，每个任务执行完毕后设置的是一秒后执行下一个任务，因此最快两个任务的执行间隔为2s。
+ * 清理间隔见{@link LettuceCacheOptions#getExpireSweepInterval()}，时间轮100ms跳一次。
  * 回头需要研究下spring中的redis cache是如何操作的。
  */
 public class LettuceCache<K, V> implements Cache<K, V> {
@@ -54,16 +64,52 @@ public class LettuceCache<K, V> implements Cache<K, V> {
      */
     private final HashedWheelTimer timer;
 
-    private DefaultLettuceConnectionFactory connectionFactory;
+    private final LettuceExpirySweeper sweeper;
+
+    private volatile boolean destroyed = false;
+
+    private final DelegatingCommandLatencyRecorder latencyRecorder = new DelegatingCommandLatencyRecorder();
+
+    private final ClientResources resources;
+
+    private final DefaultLettuceConnectionFactory connectionFactory;
+
+    /**
+     * Present in {@link LettuceCacheOptions.ExecutionMode#MULTIPLEXED} mode.
+     */
+    private final LettuceMultiplexedCommands<K, V> multiplexedCommands;
+
+    private volatile LettuceInvalidationChannel<K> invalidationChannel;
 
     private final LettuceCacheOptions<K, V> options;
 
+    private final CacheWriter<K, V> writer;
+
+    private final SingleFlight<K, V> singleFlight;
+
+    /**
+     * Counts reads of this client only.
+     */
+    private final HotKeyDetector<K> hotKeys;
+
     public LettuceCache(LettuceCacheOptions<K, V> options) {
         this.options = checkNotNull(options, () -> "options can't be null");
-        connect(ClientResources.create());
+        this.writer = CacheWriters.create(options);
+        this.singleFlight = new SingleFlight<>(options.getLoadTimeout(), options.getLoadFailureTtl());
+        this.hotKeys = HotKeyDetector.create(options);
+        this.resources = ClientResources.builder()
+                .commandLatencyRecorder(latencyRecorder)
+                .build();
+        this.connectionFactory = connect(resources);
+        if (options.getExecutionMode() == LettuceCacheOptions.ExecutionMode.MULTIPLEXED) {
+            this.multiplexedCommands = new LettuceMultiplexedCommands<>(name(), connectionFactory);
+        } else {
+            this.multiplexedCommands = null;
+        }
 
-        this.timer = new HashedWheelTimer(1, TimeUnit.SECONDS, 64);
-        this.timer.newTimeout(new ExpireTimeTask(), 1L, TimeUnit.SECONDS);
+        this.sweeper = new LettuceExpirySweeper(options, connectionFactory);
+        this.timer = new HashedWheelTimer(100L, TimeUnit.MILLISECONDS, 64);
+        this.timer.newTimeout(new ExpireTimeTask(), options.getExpireSweepInterval().toMillis(), TimeUnit.MILLISECONDS);
         this.timer.start();
     }
 
@@ -82,14 +128,24 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public V get(K key) {
+        if (hotKeys != null) {
+            hotKeys.record(key);
+        }
+        return getValue(key);
+    }
+
+    private V getValue(K key) {
+        if (multiplexedCommands != null) {
+            return multiplexedCommands.get(key, System.currentTimeMillis());
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             LettuceCommandsWrapper commandsWrapper = connection.sync();
             ValueWrapper<V> valueWrapper = (ValueWrapper<V>) commandsWrapper.hget(hashKey(), key);
             if (valueWrapper == null) {
                 return null;
             }
-            if (valueWrapper.getExpireAt() <= System.nanoTime()) {
-                remove(key);
+            if (valueWrapper.getExpireAt() <= System.currentTimeMillis()) {
+                delete(key);
                 return null;
             }
             return valueWrapper.getValue();
@@ -102,12 +158,18 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public boolean containsKey(K key) {
+        if (hotKeys != null) {
+            hotKeys.record(key);
+        }
+        if (multiplexedCommands != null) {
+            return multiplexedCommands.get(key, System.currentTimeMillis()) != null;
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             if (commandsWrapper.hexists(hashKey(), key)) {
                 ValueWrapper<V> valueWrapper = (ValueWrapper<V>) commandsWrapper.hget(hashKey(), key);
-                if (valueWrapper.getExpireAt() <= System.nanoTime()) {
-                    remove(key);
+                if (valueWrapper.getExpireAt() <= System.currentTimeMillis()) {
+                    delete(key);
                     return false;
                 }
                 return valueWrapper.getValue() != null;
@@ -123,40 +185,138 @@ public class LettuceCache<K, V> implements Cache<K, V> {
     @Override
     public V computeIfAbsent(K key, CacheLoader<K, V> loader, Duration expire) {
         V value = get(key);
-        if (value == null) {
-            synchronized (connectionFactory) {
-                value = get(key);
-                if (value == null) {
-                    try {
-                        value = loader.load(key);
-                        put(key, value, expire);
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
-                    }
+        if (value != null) {
+            return value;
+        }
+        try {
+            return singleFlight.load(key, key1 -> {
+                // a previous load may have finished since the miss
+                V loaded = getValue(key1);
+                if (loaded == null) {
+                    loaded = loader.load(key1);
+                    put(key1, loaded, expireAt(expire));
                 }
-            }
+                return loaded;
+            });
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
         }
-        return value;
+        return null;
     }
 
     @Override
     public void put(K key, V value) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        put(key, value, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void put(K key, V value, Duration expire) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        put(key, value, expireAt(expire));
+    }
+
+    private static long expireAt(Duration expire) {
+        long expireAt = System.currentTimeMillis() + expire.toMillis();
+        return expireAt < 0L ? Long.MAX_VALUE : expireAt;
+    }
+
+    private void put(K key, V value, long expireAt) {
+        if (multiplexedCommands != null) {
+            multiplexedCommands.put(key, value, expireAt);
+            return;
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
-            commandsWrapper.zadd(sortsetKey(), Long.MAX_VALUE, value);
-            commandsWrapper.hset(hashKey(), key, new ValueWrapper<>(value, Long.MAX_VALUE));
+            commandsWrapper.zadd(sortsetKey(), expireAt, key);
+            commandsWrapper.hset(hashKey(), key, new ValueWrapper<>(value, expireAt));
         } catch (IOException e) {
             Rethrower.throwAs(e);
         }
     }
 
+    /**
+     * Returns present and unexpired values of {@code keys}, fetched by one {@code HMGET}.
+     */
     @Override
-    public void put(K key, V value, Duration expire) {
+    public Map<K, V> getAll(Iterable<K> keys) {
+        if (hotKeys != null) {
+            hotKeys.recordAll(keys);
+        }
+        long now = System.currentTimeMillis();
+        if (multiplexedCommands != null) {
+            return multiplexedCommands.getAll(keys, now);
+        }
+        Object[] array = StreamSupport.stream(keys.spliterator(), false).toArray();
+        if (array.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        List<K> expired = new ArrayList<>();
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
-            long expireAt = expire.toNanos() + System.nanoTime();
-            commandsWrapper.zadd(sortsetKey(), expireAt, value);
-            commandsWrapper.hset(hashKey(), key, new ValueWrapper<>(value, expireAt));
+            List<KeyValue<K, ValueWrapper<V>>> values = commandsWrapper.hmget(hashKey(), array);
+            for (KeyValue<K, ValueWrapper<V>> keyValue : values) {
+                if (!keyValue.hasValue()) {
+                    continue;
+                }
+                ValueWrapper<V> valueWrapper = keyValue.getValue();
+                if (valueWrapper.getExpireAt() <= now) {
+                    expired.add(keyValue.getKey());
+                } else if (valueWrapper.getValue() != null) {
+                    result.put(keyValue.getKey(), valueWrapper.getValue());
+                }
+            }
+        } catch (IOException e) {
+            Rethrower.throwAs(e);
+        }
+        if (!expired.isEmpty()) {
+            deleteAll(expired);
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        putAll(map, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map, Duration expire) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        putAll(map, expireAt(expire));
+    }
+
+    /**
+     * Sends sortset and hash updates of all entries as two commands.
+     */
+    private void putAll(Map<? extends K, ? extends V> map, long expireAt) {
+        if (map.isEmpty()) {
+            return;
+        }
+        if (multiplexedCommands != null) {
+            multiplexedCommands.putAll(map, expireAt);
+            return;
+        }
+        Map<K, ValueWrapper<V>> entries = new LinkedHashMap<>();
+        List<ScoredValue<K>> scoredKeys = new ArrayList<>(map.size());
+        map.forEach((key, value) -> {
+            entries.put(key, new ValueWrapper<>(value, expireAt));
+            scoredKeys.add(ScoredValue.just(expireAt, key));
+        });
+        try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
+            final LettuceCommandsWrapper commandsWrapper = connection.sync();
+            commandsWrapper.zadd(sortsetKey(), scoredKeys.toArray(new ScoredValue[0]));
+            commandsWrapper.hset(hashKey(), entries);
         } catch (IOException e) {
             Rethrower.throwAs(e);
         }
@@ -164,6 +324,20 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public void remove(K key) {
+        if (writer != null) {
+            writer.delete(key);
+        }
+        delete(key);
+    }
+
+    /**
+     * Removes {@code key} bypassing the cache writer, expired entries are removed by it.
+     */
+    private void delete(K key) {
+        if (multiplexedCommands != null) {
+            multiplexedCommands.remove(key);
+            return;
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             commandsWrapper.hdel(hashKey(), key);
@@ -175,6 +349,17 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public void removeAll(Iterable<K> keys) {
+        if (writer != null) {
+            writer.deleteAll(keys);
+        }
+        deleteAll(keys);
+    }
+
+    private void deleteAll(Iterable<K> keys) {
+        if (multiplexedCommands != null) {
+            multiplexedCommands.removeAll(keys);
+            return;
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             Object[] array = StreamSupport.stream(keys.spliterator(), false).toArray();
@@ -187,6 +372,9 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public long size() {
+        if (multiplexedCommands != null) {
+            return multiplexedCommands.size();
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             return commandsWrapper.zcard(sortsetKey());
@@ -213,6 +401,9 @@ public class LettuceCache<K, V> implements Cache<K, V> {
      */
     @Override
     public Iterator<K> keyIterator() {
+        if (multiplexedCommands != null) {
+            return multiplexedCommands.keys().iterator();
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             return (Iterator<K>) commandsWrapper.hkeys(hashKey()).iterator();
@@ -225,23 +416,51 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public Iterator<K> hotKeyIterator(int n) {
-        return Collections.emptyIterator();
+        if (hotKeys == null) {
+            return Collections.emptyIterator();
+        }
+        return hotKeys.hotKeys(n).iterator();
     }
 
     /**
-     * fixme 数据监控
+     * Binds command latencies, expiry sweep metrics, see {@link LettuceExpiryMeterBinder},
+     * hot keys and leaked connections of this client.
      */
     @Override
     public void stats(MeterRegistry registry) {
-        MicrometerOptions options = MicrometerOptions.create();
-        ClientResources resources = ClientResources.builder()
-                .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(registry, options))
-                .build();
-        connect(resources);
+        latencyRecorder.delegate = new MicrometerCommandLatencyRecorder(registry, MicrometerOptions.create());
+        LettuceExpiryMeterBinder.monitor(registry, sweeper, name());
+        if (hotKeys != null) {
+            HotKeyMeterBinder.monitor(registry, hotKeys, name());
+        }
+        CacheWriters.stats(writer, registry, name());
+        new ResourceLeakDetectorMetrics(connectionFactory.leakDetector(), Tag.of("cache", name())).bindTo(registry);
+    }
+
+    /**
+     * Returns the channel broadcasting key invalidations among all nodes of this cache,
+     * created on first call and closed with the cache.
+     */
+    public LettuceInvalidationChannel<K> invalidationChannel() {
+        LettuceInvalidationChannel<K> channel = invalidationChannel;
+        if (channel == null) {
+            synchronized (this) {
+                channel = invalidationChannel;
+                if (channel == null) {
+                    channel = new LettuceInvalidationChannel<>(name(), connectionFactory);
+                    invalidationChannel = channel;
+                }
+            }
+        }
+        return channel;
     }
 
     @Override
     public void clear() {
+        if (multiplexedCommands != null) {
+            multiplexedCommands.clear();
+            return;
+        }
         try (LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection()) {
             final LettuceCommandsWrapper commandsWrapper = connection.sync();
             commandsWrapper.del(hashKey());
@@ -253,16 +472,46 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
     @Override
     public void destroy() {
-
+        CacheWriters.close(writer);
+        destroyed = true;
+        timer.stop();
+        try {
+            sweeper.release();
+        } catch (Exception e) {
+            log.warn("release expiry sweeper lease of cache {} failed: {}", name(), e.getMessage());
+        }
+        close();
     }
 
-    private void connect(ClientResources resources) {
+    private DefaultLettuceConnectionFactory connect(ClientResources resources) {
         List<RedisURI> clusterRedisURIS = options.getClusterRedisURIS();
         if (clusterRedisURIS != null && !clusterRedisURIS.isEmpty()) {
             RedisClusterClient clusterClient = RedisClusterClient.create(resources, clusterRedisURIS);
-            this.connectionFactory = new DefaultLettuceConnectionFactory(clusterClient, BoundedPoolConfig.create());
-        } else {
-            this.connectionFactory = new DefaultLettuceConnectionFactory(RedisClient.create(resources, options.getRedisURI()), BoundedPoolConfig.create());
+            return new DefaultLettuceConnectionFactory(clusterClient, BoundedPoolConfig.create());
+        }
+        return new DefaultLettuceConnectionFactory(RedisClient.create(resources, options.getRedisURI()), BoundedPoolConfig.create());
+    }
+
+    private void close() {
+        if (invalidationChannel != null) {
+            invalidationChannel.close();
+        }
+        connectionFactory.close();
+        resources.shutdown();
+    }
+
+    /**
+     * Latency recorder of the client resources, {@link #stats(MeterRegistry)} sets the
+     * micrometer recorder later without reconnecting.
+     */
+    private static class DelegatingCommandLatencyRecorder implements CommandLatencyRecorder {
+
+        private volatile CommandLatencyRecorder delegate = CommandLatencyRecorder.disabled();
+
+        @Override
+        public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+                                         long firstResponseLatency, long completionLatency) {
+            delegate.recordCommandLatency(local, remote, commandType, firstResponseLatency, completionLatency);
         }
     }
 
@@ -270,25 +519,17 @@ public class LettuceCache<K, V> implements Cache<K, V> {
 
         @Override
         public void run(Timeout timeout) throws Exception {
-            LettuceConnectionFactory.LettuceConnection connection = connectionFactory.getConnection();
-            LettuceCommandsWrapper commandsWrapper = connection.sync();
-            if (commandsWrapper.exists(sortsetKey()) == 0L) {
-                clear();
-            }
-            List keys = commandsWrapper.zrangebyscore(sortsetKey(), Range.create(0, System.nanoTime()), Limit.from(100L));
-            if (keys != null && keys.size() > 0) {
-                removeAll(keys);
-            }
-            LocalDateTime tomorrow = LocalDateTime.now().withNano(0).withSecond(0).withMinute(0).withHour(3).plusDays(1L);
-            Instant instant = tomorrow.atZone(ZoneOffset.systemDefault()).toInstant();
-
-            if (commandsWrapper.ttl(hashKey()) == -1) {
-                commandsWrapper.expireat(hashKey(), Date.from(instant));
-            }
-            if (commandsWrapper.ttl(sortsetKey()) == -1) {
-                commandsWrapper.expireat(sortsetKey(), Date.from(instant));
+            try {
+                LocalDateTime tomorrow = LocalDateTime.now().withNano(0).withSecond(0).withMinute(0).withHour(3).plusDays(1L);
+                long expireAt = tomorrow.atZone(ZoneOffset.systemDefault()).toEpochSecond();
+                sweeper.sweep(expireAt);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            } finally {
+                if (!destroyed) {
+                    timer.newTimeout(this, options.getExpireSweepInterval().toMillis(), TimeUnit.MILLISECONDS);
+                }
             }
-            timer.newTimeout(this, 1L, TimeUnit.SECONDS);
         }
     }
 
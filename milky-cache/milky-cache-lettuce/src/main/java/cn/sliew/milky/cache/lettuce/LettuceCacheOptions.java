@@ -3,18 +3,45 @@ package cn.sliew.milky.cache.lettuce;
 import cn.sliew.milky.cache.CacheOptions;
 import io.lettuce.core.RedisURI;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
 import static cn.sliew.milky.common.check.Ensures.checkNotNull;
 import static cn.sliew.milky.common.check.Ensures.notEmpty;
 
 public class LettuceCacheOptions<K, V> extends CacheOptions<K, V> {
 
+    public enum ExecutionMode {
+
+        /**
+         * Every operation borrows a pooled connection and sends
+         * its commands one by one.
+         */
+        POOLED,
+
+        /**
+         * All operations share one multiplexed connection. Compound operations
+         * run as one lua script and bulk operations as one pipelined batch,
+         * each costs a single round trip.
+         * <p>
+         * Keys are stored apart from {@link #POOLED} mode, all clients of
+         * a cache must use the same mode.
+         */
+        MULTIPLEXED
+    }
+
     private RedisURI redisURI;
 
     private List<RedisURI> clusterRedisURIS;
 
+    private ExecutionMode executionMode = ExecutionMode.POOLED;
+
+    private Duration expireSweepInterval = Duration.ofSeconds(1L);
+
+    private int expireSweepMaxBatchSize = 10000;
+
     public LettuceCacheOptions() {
         super();
     }
@@ -25,24 +52,83 @@ public class LettuceCacheOptions<K, V> extends CacheOptions<K, V> {
      * @param redisURI redisURI
      * @return LettuceCacheOptions instance
      */
-    public void redisURI(RedisURI redisURI) {
+    public LettuceCacheOptions<K, V> redisURI(RedisURI redisURI) {
         checkNotNull(redisURI, () -> "lettuce redisURI can't be empty");
         this.redisURI = redisURI;
+        return this;
     }
 
     public RedisURI getRedisURI() {
         return redisURI;
     }
 
-    public void clusterRedisURIS(List<RedisURI> clusterRedisURIS) {
+    public LettuceCacheOptions<K, V> clusterRedisURIS(List<RedisURI> clusterRedisURIS) {
         notEmpty(clusterRedisURIS, () -> "lettuce clusterRedisURIS can't be empty");
         this.clusterRedisURIS = clusterRedisURIS;
+        return this;
     }
 
     public List<RedisURI> getClusterRedisURIS() {
         return clusterRedisURIS;
     }
 
+    /**
+     * Sets execution mode.
+     * <p>
+     * Default is <code>{@link ExecutionMode#POOLED}</code>
+     *
+     * @param executionMode execution mode
+     * @return LettuceCacheOptions instance
+     */
+    public LettuceCacheOptions<K, V> executionMode(ExecutionMode executionMode) {
+        checkNotNull(executionMode, () -> "lettuce executionMode can't be null");
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets interval between sweeps removing expired entries. One client of the cache
+     * is elected to sweep, its lease lasts three intervals.
+     * <p>
+     * Default is <code>1s</code>
+     *
+     * @param expireSweepInterval sweep interval
+     * @return LettuceCacheOptions instance
+     */
+    public LettuceCacheOptions<K, V> expireSweepInterval(Duration expireSweepInterval) {
+        checkNotNull(expireSweepInterval, () -> "lettuce expireSweepInterval can't be null");
+        checkArgument(expireSweepInterval.toMillis() > 0L, () -> "lettuce expireSweepInterval invalid: " + expireSweepInterval);
+        this.expireSweepInterval = expireSweepInterval;
+        return this;
+    }
+
+    public Duration getExpireSweepInterval() {
+        return expireSweepInterval;
+    }
+
+    /**
+     * Sets max entries removed by one sweep batch. Batch size starts at <code>100</code>
+     * and doubles up to it while the backlog of expired entries grows.
+     * <p>
+     * Default is <code>10000</code>
+     *
+     * @param expireSweepMaxBatchSize max batch size
+     * @return LettuceCacheOptions instance
+     */
+    public LettuceCacheOptions<K, V> expireSweepMaxBatchSize(int expireSweepMaxBatchSize) {
+        checkArgument(expireSweepMaxBatchSize > 0, () -> "lettuce expireSweepMaxBatchSize must be positive: " + expireSweepMaxBatchSize);
+        this.expireSweepMaxBatchSize = expireSweepMaxBatchSize;
+        return this;
+    }
+
+    public int getExpireSweepMaxBatchSize() {
+        return expireSweepMaxBatchSize;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -50,11 +136,15 @@ public class LettuceCacheOptions<K, V> extends CacheOptions<K, V> {
         if (!super.equals(o)) return false;
         LettuceCacheOptions<?, ?> that = (LettuceCacheOptions<?, ?>) o;
         return Objects.equals(redisURI, that.redisURI) &&
-                Objects.equals(clusterRedisURIS, that.clusterRedisURIS);
+                Objects.equals(clusterRedisURIS, that.clusterRedisURIS) &&
+                executionMode == that.executionMode &&
+                expireSweepMaxBatchSize == that.expireSweepMaxBatchSize &&
+                Objects.equals(expireSweepInterval, that.expireSweepInterval);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), redisURI, clusterRedisURIS);
+        return Objects.hash(super.hashCode(), redisURI, clusterRedisURIS, executionMode,
+                expireSweepInterval, expireSweepMaxBatchSize);
     }
 }
@@ -2,7 +2,7 @@ package cn.sliew.milky.cache.lettuce;
 
 import java.io.Closeable;
 
-public interface LettuceConnectionFactory {
+public interface LettuceConnectionFactory extends Closeable {
 
     LettuceConnection getConnection();
 
@@ -0,0 +1,58 @@
+package cn.sliew.milky.cache.lettuce;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+final class LettuceExpiryMeterBinder implements MeterBinder {
+
+    private final LettuceExpirySweeper sweeper;
+    private final Iterable<Tag> tags;
+
+    LettuceExpiryMeterBinder(LettuceExpirySweeper sweeper, String cacheName, Iterable<Tag> tags) {
+        this.sweeper = sweeper;
+        this.tags = Tags.concat(tags, "cache", cacheName);
+    }
+
+    /**
+     * Record metrics on an expiry sweeper.
+     *
+     * @param registry  The registry to bind metrics to.
+     * @param sweeper   The sweeper to instrument.
+     * @param cacheName The cache swept by the sweeper.
+     * @param tags      Tags to apply to all recorded metrics. Must be an even number of arguments representing key/value pairs of tags.
+     * @return The instrumented sweeper, unchanged.
+     */
+    static LettuceExpirySweeper monitor(MeterRegistry registry, LettuceExpirySweeper sweeper, String cacheName, String... tags) {
+        new LettuceExpiryMeterBinder(sweeper, cacheName, Tags.of(tags)).bindTo(registry);
+        return sweeper;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cache.expire.backlog", sweeper, s -> s.backlog)
+                .tags(tags)
+                .description("Expired entries left after the last sweep, 0 on clients not sweeping")
+                .register(registry);
+        Gauge.builder("cache.expire.leader", sweeper, s -> s.leader ? 1.0 : 0.0)
+                .tags(tags)
+                .description("1 if this client holds the sweeper lease of the cache")
+                .register(registry);
+
+        FunctionCounter.builder("cache.expire.removed", sweeper, s -> s.removed.sum())
+                .tags(tags)
+                .description("Expired entries removed by sweeps of this client")
+                .register(registry);
+
+        FunctionTimer.builder("cache.expire.sweep", sweeper, s -> s.sweeps.sum(), s -> s.sweepNanos.sum(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Sweeps run by this client")
+                .register(registry);
+    }
+}
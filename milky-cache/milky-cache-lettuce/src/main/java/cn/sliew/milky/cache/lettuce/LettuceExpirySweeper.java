@@ -0,0 +1,250 @@
+package cn.sliew.milky.cache.lettuce;
+
+import cn.sliew.milky.common.exception.Rethrower;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Removes expired entries of a {@link LettuceCache} from its hash and sortset.
+ * <p>
+ * Redis has no ttl for hash fields, so the sortset scores every field with its expire
+ * time in epoch millis and expired fields are removed by score. All clients of a cache
+ * share the work through a lease key, only the client holding it sweeps and the others
+ * just try to take it over each interval. The lease outlives three intervals, a crashed
+ * sweeper is replaced within that time.
+ * <p>
+ * A sweep removes batches until a batch is not full or half of the interval passed. The
+ * batch size adapts to the backlog, it doubles after a full batch up to
+ * {@link LettuceCacheOptions#getExpireSweepMaxBatchSize()} and halves after a batch
+ * removing less than a quarter of it or failing.
+ * <p>
+ * Hash and sortset of {@link LettuceCacheOptions.ExecutionMode#MULTIPLEXED} mode share a
+ * hash tag and are swept by a lua script. {@link LettuceCacheOptions.ExecutionMode#POOLED}
+ * mode keys may live on different cluster nodes, expired fields are read from the sortset
+ * first and removed by pipelined commands then, a field written again in between is
+ * removed and misses once.
+ */
+final class LettuceExpirySweeper {
+
+    static final int MIN_BATCH_SIZE = 100;
+
+    /**
+     * KEYS: lease. ARGV: owner, lease millis.
+     */
+    private static final LettuceScript ACQUIRE = new LettuceScript(
+            "local owner = redis.call('get', KEYS[1])\n" +
+            "if not owner then\n" +
+            "  redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2])\n" +
+            "  return 1\n" +
+            "end\n" +
+            "if owner == ARGV[1] then\n" +
+            "  redis.call('pexpire', KEYS[1], ARGV[2])\n" +
+            "  return 1\n" +
+            "end\n" +
+            "return 0");
+
+    /**
+     * KEYS: lease. ARGV: owner.
+     */
+    private static final LettuceScript RELEASE = new LettuceScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('del', KEYS[1])\n" +
+            "end\n" +
+            "return 0");
+
+    /**
+     * Fields removed by one hdel and zrem of {@link #SWEEP}, lua fails to unpack about 8000 values.
+     */
+    static final int UNPACK_SIZE = 1000;
+
+    /**
+     * KEYS: hash, sortset. ARGV: now, limit, expireAt of both keys in seconds.
+     */
+    private static final LettuceScript SWEEP = new LettuceScript(
+            "if redis.call('exists', KEYS[2]) == 0 then\n" +
+            "  redis.call('del', KEYS[1])\n" +
+            "  return 0\n" +
+            "end\n" +
+            "local fields = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])\n" +
+            "for i = 1, #fields, " + UNPACK_SIZE + " do\n" +
+            "  local last = math.min(i + " + (UNPACK_SIZE - 1) + ", #fields)\n" +
+            "  redis.call('hdel', KEYS[1], unpack(fields, i, last))\n" +
+            "  redis.call('zrem', KEYS[2], unpack(fields, i, last))\n" +
+            "end\n" +
+            "if redis.call('ttl', KEYS[1]) == -1 then\n" +
+            "  redis.call('expireat', KEYS[1], ARGV[3])\n" +
+            "end\n" +
+            "if redis.call('ttl', KEYS[2]) == -1 then\n" +
+            "  redis.call('expireat', KEYS[2], ARGV[3])\n" +
+            "end\n" +
+            "return #fields");
+
+    private final DefaultLettuceConnectionFactory connectionFactory;
+    private final boolean atomic;
+    private final byte[][] keys;
+    private final byte[][] leaseKeys;
+    private final byte[] owner = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    private final long intervalNanos;
+    private final long leaseMillis;
+    private final int maxBatchSize;
+
+    private int batchSize = MIN_BATCH_SIZE;
+
+    volatile boolean leader = false;
+    volatile long backlog = 0L;
+    final LongAdder removed = new LongAdder();
+    final LongAdder sweeps = new LongAdder();
+    final LongAdder sweepNanos = new LongAdder();
+
+    LettuceExpirySweeper(LettuceCacheOptions<?, ?> options, DefaultLettuceConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+        String name = options.getName();
+        if (options.getExecutionMode() == LettuceCacheOptions.ExecutionMode.MULTIPLEXED) {
+            this.atomic = true;
+            this.keys = new byte[][]{bytes("{" + name + "}_hash"), bytes("{" + name + "}_sortset")};
+            this.leaseKeys = new byte[][]{bytes("{" + name + "}_sweeper")};
+        } else {
+            // pooled keys are encoded by ProtostuffCodec
+            this.atomic = options.getClusterRedisURIS() == null || options.getClusterRedisURIS().isEmpty();
+            this.keys = new byte[][]{encode(name + "_hash"), encode(name + "_sortset")};
+            this.leaseKeys = new byte[][]{bytes(name + "_sweeper")};
+        }
+        this.intervalNanos = options.getExpireSweepInterval().toNanos();
+        this.leaseMillis = options.getExpireSweepInterval().toMillis() * 3L;
+        this.maxBatchSize = Math.max(MIN_BATCH_SIZE, options.getExpireSweepMaxBatchSize());
+    }
+
+    /**
+     * Takes or renews the lease and sweeps expired entries if held, called once per
+     * interval by a single thread.
+     *
+     * @param expireAt expire time of hash and sortset in epoch seconds, set when absent
+     */
+    void sweep(long expireAt) {
+        Long acquired = ACQUIRE.eval(connectionFactory, ScriptOutputType.INTEGER, leaseKeys, owner, number(leaseMillis));
+        leader = acquired != null && acquired == 1L;
+        if (!leader) {
+            backlog = 0L;
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + intervalNanos / 2L;
+        long now = System.currentTimeMillis();
+        if (!atomic) {
+            expireKeys(expireAt);
+        }
+        while (true) {
+            int limit = batchSize;
+            long batch;
+            try {
+                batch = atomic ? sweepAtomic(now, limit, expireAt) : sweepPipelined(now, limit);
+            } catch (RuntimeException e) {
+                // a batch too large to remove in time must not fail every later sweep
+                batchSize = Math.max(MIN_BATCH_SIZE, limit / 2);
+                throw e;
+            }
+            removed.add(batch);
+            if (batch >= limit) {
+                batchSize = Math.min(maxBatchSize, limit * 2);
+                if (System.nanoTime() - deadline < 0L) {
+                    continue;
+                }
+            } else if (batch < limit / 4) {
+                batchSize = Math.max(MIN_BATCH_SIZE, limit / 2);
+            }
+            break;
+        }
+        backlog = LettuceScript.await(connectionFactory, async().zcount(sortsetKey(), expired(now)));
+        sweeps.increment();
+        sweepNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Gives the lease up if held, another client takes it over on its next sweep.
+     */
+    void release() {
+        if (leader) {
+            leader = false;
+            RELEASE.eval(connectionFactory, ScriptOutputType.INTEGER, leaseKeys, owner);
+        }
+    }
+
+    private long sweepAtomic(long now, int limit, long expireAt) {
+        Long removed = SWEEP.eval(connectionFactory, ScriptOutputType.INTEGER, keys,
+                number(now), number(limit), number(expireAt));
+        return removed == null ? 0L : removed;
+    }
+
+    private long sweepPipelined(long now, int limit) {
+        List<byte[]> fields = LettuceScript.await(connectionFactory,
+                async().zrangebyscore(sortsetKey(), expired(now), Limit.create(0L, limit)));
+        if (fields.isEmpty()) {
+            return 0L;
+        }
+        byte[][] array = fields.toArray(new byte[0][]);
+        RedisClusterAsyncCommands<byte[], byte[]> commands = async();
+        RedisFuture<Long> hdel = commands.hdel(hashKey(), array);
+        RedisFuture<Long> zrem = commands.zrem(sortsetKey(), array);
+        LettuceScript.await(connectionFactory, hdel);
+        LettuceScript.await(connectionFactory, zrem);
+        return fields.size();
+    }
+
+    private void expireKeys(long expireAt) {
+        RedisClusterAsyncCommands<byte[], byte[]> commands = async();
+        if (LettuceScript.await(connectionFactory, commands.exists(sortsetKey())) == 0L) {
+            LettuceScript.await(connectionFactory, commands.del(hashKey()));
+            return;
+        }
+        for (byte[] key : keys) {
+            if (LettuceScript.await(connectionFactory, commands.ttl(key)) == -1L) {
+                LettuceScript.await(connectionFactory, commands.expireat(key, expireAt));
+            }
+        }
+    }
+
+    private RedisClusterAsyncCommands<byte[], byte[]> async() {
+        return connectionFactory.sharedAsync();
+    }
+
+    private byte[] hashKey() {
+        return keys[0];
+    }
+
+    private byte[] sortsetKey() {
+        return keys[1];
+    }
+
+    private static Range<Long> expired(long now) {
+        return Range.from(Range.Boundary.unbounded(), Range.Boundary.including(now));
+    }
+
+    private static byte[] encode(Object obj) {
+        try {
+            return ProtostuffCodec.toBytes(obj);
+        } catch (IOException e) {
+            Rethrower.throwAs(e);
+            // should never reach here
+            return null;
+        }
+    }
+
+    private static byte[] number(long number) {
+        return bytes(Long.toString(number));
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,170 @@
+package cn.sliew.milky.cache.lettuce;
+
+import cn.sliew.milky.common.exception.Rethrower;
+import cn.sliew.milky.log.Logger;
+import cn.sliew.milky.log.LoggerFactory;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Broadcasts key invalidations of a cache to all nodes through redis pub/sub, used to keep
+ * local copies of redis entries coherent.
+ * <p>
+ * A node never receives its own invalidations. Pub/sub delivers at most once, messages
+ * published while the subscriber is disconnected are lost, so listeners are told to
+ * invalidate everything once the subscriber reconnected.
+ */
+public final class LettuceInvalidationChannel<K> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(LettuceInvalidationChannel.class);
+
+    public interface Listener<K> {
+
+        void invalidate(List<K> keys);
+
+        void invalidateAll();
+    }
+
+    private final String source = UUID.randomUUID().toString();
+
+    private final byte[] channel;
+
+    private final DefaultLettuceConnectionFactory connectionFactory;
+
+    private final List<Listener<K>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile StatefulRedisPubSubConnection<byte[], byte[]> pubSubConnection;
+
+    LettuceInvalidationChannel(String name, DefaultLettuceConnectionFactory connectionFactory) {
+        this.channel = ("{" + name + "}_invalidation").getBytes(StandardCharsets.UTF_8);
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Registers {@code listener} for invalidations published by other nodes, the channel
+     * is subscribed on first call.
+     */
+    public synchronized void subscribe(Listener<K> listener) {
+        listeners.add(listener);
+        if (pubSubConnection != null) {
+            return;
+        }
+        StatefulRedisPubSubConnection<byte[], byte[]> connection = connectionFactory.connectPubSub();
+        connection.addListener(new RedisPubSubAdapter<byte[], byte[]>() {
+            @Override
+            public void message(byte[] channel, byte[] message) {
+                onMessage(message);
+            }
+        });
+        connection.sync().subscribe(channel);
+        pubSubConnection = connection;
+        connectionFactory.addListener(new ReconnectListener());
+    }
+
+    /**
+     * Publishes invalidation of {@code keys} without waiting for redis.
+     */
+    public void publish(Collection<? extends K> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        publish(new Invalidation(source, new ArrayList<>(keys), false));
+    }
+
+    /**
+     * Publishes invalidation of all keys without waiting for redis.
+     */
+    public void publishAll() {
+        publish(new Invalidation(source, null, true));
+    }
+
+    private void publish(Invalidation invalidation) {
+        byte[] message = null;
+        try {
+            message = ProtostuffCodec.toBytes(invalidation);
+        } catch (IOException e) {
+            Rethrower.throwAs(e);
+        }
+        connectionFactory.sharedAsync().publish(channel, message).whenComplete((receivers, throwable) -> {
+            if (throwable != null) {
+                log.error(throwable.getMessage(), throwable);
+            }
+        });
+    }
+
+    private void onMessage(byte[] message) {
+        try {
+            Invalidation invalidation = (Invalidation) ProtostuffCodec.fromBytes(message);
+            if (source.equals(invalidation.source)) {
+                return;
+            }
+            for (Listener<K> listener : listeners) {
+                if (invalidation.all) {
+                    listener.invalidateAll();
+                } else {
+                    listener.invalidate((List<K>) invalidation.keys);
+                }
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        listeners.clear();
+        if (pubSubConnection != null) {
+            pubSubConnection.close();
+            pubSubConnection = null;
+        }
+    }
+
+    private class ReconnectListener implements RedisConnectionStateListener {
+
+        @Override
+        public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+            if (connection == pubSubConnection) {
+                listeners.forEach(Listener::invalidateAll);
+            }
+        }
+
+        @Override
+        public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+
+        }
+
+        @Override
+        public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+
+        }
+    }
+
+    static final class Invalidation {
+
+        private String source;
+        private List<Object> keys;
+        private boolean all;
+
+        Invalidation() {
+
+        }
+
+        Invalidation(String source, List<Object> keys, boolean all) {
+            this.source = source;
+            this.keys = keys;
+            this.all = all;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package cn.sliew.milky.cache.lettuce;
+
+import cn.sliew.milky.cache.lettuce.LettuceCache.ValueWrapper;
+import cn.sliew.milky.common.exception.Rethrower;
+import cn.sliew.milky.log.Logger;
+import cn.sliew.milky.log.LoggerFactory;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * {@link LettuceCache} commands for {@link LettuceCacheOptions.ExecutionMode#MULTIPLEXED} mode,
+ * sent on the shared connection of {@link DefaultLettuceConnectionFactory}.
+ * <p>
+ * Compound single key operations run as one lua script, hash and sortset are updated
+ * atomically in one round trip. Bulk operations are pipelined and awaited together.
+ * Hash and sortset keys carry the cache name as hash tag so scripts touching both
+ * keys work on redis cluster too.
+ */
+final class LettuceMultiplexedCommands<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(LettuceMultiplexedCommands.class);
+
+    /**
+     * KEYS: hash, sortset. ARGV: field, now.
+     */
+    private static final LettuceScript GET = new LettuceScript(
+            "local score = redis.call('zscore', KEYS[2], ARGV[1])\n" +
+            "if score and tonumber(score) <= tonumber(ARGV[2]) then\n" +
+            "  redis.call('hdel', KEYS[1], ARGV[1])\n" +
+            "  redis.call('zrem', KEYS[2], ARGV[1])\n" +
+            "  return false\n" +
+            "end\n" +
+            "return redis.call('hget', KEYS[1], ARGV[1])");
+
+    /**
+     * KEYS: hash, sortset. ARGV: field, value, expireAt.
+     */
+    private static final LettuceScript PUT = new LettuceScript(
+            "redis.call('zadd', KEYS[2], ARGV[3], ARGV[1])\n" +
+            "redis.call('hset', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "return 1");
+
+    /**
+     * KEYS: hash, sortset. ARGV: field.
+     */
+    private static final LettuceScript REMOVE = new LettuceScript(
+            "redis.call('zrem', KEYS[2], ARGV[1])\n" +
+            "return redis.call('hdel', KEYS[1], ARGV[1])");
+
+    private final String name;
+    private final DefaultLettuceConnectionFactory connectionFactory;
+    private final byte[][] scriptKeys;
+
+    LettuceMultiplexedCommands(String name, DefaultLettuceConnectionFactory connectionFactory) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.scriptKeys = new byte[][]{
+                bytes("{" + name + "}_hash"),
+                bytes("{" + name + "}_sortset")
+        };
+    }
+
+    private byte[] hashKey() {
+        return scriptKeys[0];
+    }
+
+    private byte[] sortsetKey() {
+        return scriptKeys[1];
+    }
+
+    V get(K key, long now) {
+        byte[] bytes = eval(GET, ScriptOutputType.VALUE, encode(key), number(now));
+        ValueWrapper<V> valueWrapper = decodeValue(bytes);
+        if (valueWrapper == null || valueWrapper.getExpireAt() <= now) {
+            return null;
+        }
+        return valueWrapper.getValue();
+    }
+
+    /**
+     * Present, unexpired and non null values of {@code keys}, expired entries are removed
+     * in the background. A failed removal is only logged, the entries stay expired and are
+     * removed again by a later read or the expiry sweeper.
+     */
+    Map<K, V> getAll(Iterable<K> keys, long now) {
+        List<K> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+        if (keyList.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        byte[][] fields = encodeAll(keyList);
+        List<KeyValue<byte[], byte[]>> values = await(async().hmget(hashKey(), fields));
+
+        Map<K, V> result = new LinkedHashMap<>();
+        List<byte[]> expired = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            KeyValue<byte[], byte[]> keyValue = values.get(i);
+            ValueWrapper<V> valueWrapper = keyValue.hasValue() ? decodeValue(keyValue.getValue()) : null;
+            if (valueWrapper == null) {
+                continue;
+            }
+            if (valueWrapper.getExpireAt() <= now) {
+                expired.add(fields[i]);
+            } else if (valueWrapper.getValue() != null) {
+                result.put(keyList.get(i), valueWrapper.getValue());
+            }
+        }
+        if (!expired.isEmpty()) {
+            byte[][] expiredFields = expired.toArray(new byte[0][]);
+            RedisClusterAsyncCommands<byte[], byte[]> commands = async();
+            logFailure(commands.hdel(hashKey(), expiredFields), "hdel");
+            logFailure(commands.zrem(sortsetKey(), expiredFields), "zrem");
+        }
+        return result;
+    }
+
+    void put(K key, V value, long expireAt) {
+        eval(PUT, ScriptOutputType.INTEGER, encode(key), encode(new ValueWrapper<>(value, expireAt)), number(expireAt));
+    }
+
+    void putAll(Map<? extends K, ? extends V> map, long expireAt) {
+        if (map.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> entries = new LinkedHashMap<>(map.size() * 2);
+        List<ScoredValue<byte[]>> scoredFields = new ArrayList<>(map.size());
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            byte[] field = encode(entry.getKey());
+            entries.put(field, encode(new ValueWrapper<>(entry.getValue(), expireAt)));
+            scoredFields.add(ScoredValue.just(expireAt, field));
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = async();
+        awaitAll(commands.zadd(sortsetKey(), scoredFields.toArray(new ScoredValue[0])),
+                commands.hset(hashKey(), entries));
+    }
+
+    void remove(K key) {
+        eval(REMOVE, ScriptOutputType.INTEGER, encode(key));
+    }
+
+    void removeAll(Iterable<K> keys) {
+        List<K> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+        if (keyList.isEmpty()) {
+            return;
+        }
+        byte[][] fields = encodeAll(keyList);
+        RedisClusterAsyncCommands<byte[], byte[]> commands = async();
+        awaitAll(commands.hdel(hashKey(), fields), commands.zrem(sortsetKey(), fields));
+    }
+
+    long size() {
+        return await(async().zcard(sortsetKey()));
+    }
+
+    List<K> keys() {
+        List<byte[]> fields = await(async().hkeys(hashKey()));
+        List<K> result = new ArrayList<>(fields.size());
+        for (byte[] field : fields) {
+            result.add((K) decode(field));
+        }
+        return result;
+    }
+
+    void clear() {
+        await(async().del(scriptKeys));
+    }
+
+    private RedisClusterAsyncCommands<byte[], byte[]> async() {
+        return connectionFactory.sharedAsync();
+    }
+
+    private Duration timeout() {
+        return connectionFactory.getSharedConnection().getTimeout();
+    }
+
+    private <T> T eval(LettuceScript script, ScriptOutputType type, byte[]... args) {
+        return script.eval(connectionFactory, type, scriptKeys, args);
+    }
+
+    private <T> T await(RedisFuture<T> future) {
+        return LettuceScript.await(connectionFactory, future);
+    }
+
+    private void logFailure(RedisFuture<?> future, String command) {
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.warn("{} of expired entries of cache {} failed: {}", command, name, throwable.getMessage());
+            }
+        });
+    }
+
+    private void awaitAll(RedisFuture<?>... futures) {
+        Duration timeout = timeout();
+        if (!LettuceFutures.awaitAll(timeout, futures)) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        }
+    }
+
+    private byte[][] encodeAll(List<K> keys) {
+        byte[][] fields = new byte[keys.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = encode(keys.get(i));
+        }
+        return fields;
+    }
+
+    private ValueWrapper<V> decodeValue(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return (ValueWrapper<V>) decode(bytes);
+    }
+
+    private static byte[] encode(Object obj) {
+        try {
+            return ProtostuffCodec.toBytes(obj);
+        } catch (IOException e) {
+            Rethrower.throwAs(e);
+            // should never reach here
+            return null;
+        }
+    }
+
+    private static Object decode(byte[] bytes) {
+        try {
+            return ProtostuffCodec.fromBytes(bytes);
+        } catch (IOException | ClassNotFoundException e) {
+            Rethrower.throwAs(e);
+            // should never reach here
+            return null;
+        }
+    }
+
+    private static byte[] number(long number) {
+        return bytes(Long.toString(number));
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
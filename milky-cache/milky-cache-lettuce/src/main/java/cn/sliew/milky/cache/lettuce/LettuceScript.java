@@ -0,0 +1,58 @@
+package cn.sliew.milky.cache.lettuce;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lua script sent on the shared connection of {@link DefaultLettuceConnectionFactory}.
+ */
+final class LettuceScript {
+
+    private final String body;
+    private final String sha;
+
+    LettuceScript(String body) {
+        this.body = body;
+        this.sha = sha1(body);
+    }
+
+    /**
+     * Runs the script by its digest and falls back to sending the script body once
+     * the server lost it, after a restart or {@code SCRIPT FLUSH}.
+     */
+    <T> T eval(DefaultLettuceConnectionFactory connectionFactory, ScriptOutputType type, byte[][] keys, byte[]... args) {
+        RedisClusterAsyncCommands<byte[], byte[]> commands = connectionFactory.sharedAsync();
+        try {
+            return await(connectionFactory, commands.evalsha(sha, type, keys, args));
+        } catch (RedisNoScriptException e) {
+            return await(connectionFactory, commands.eval(body, type, keys, args));
+        }
+    }
+
+    static <T> T await(DefaultLettuceConnectionFactory connectionFactory, RedisFuture<T> future) {
+        long timeout = connectionFactory.getSharedConnection().getTimeout().toNanos();
+        return LettuceFutures.awaitOrCancel(future, timeout, TimeUnit.NANOSECONDS);
+    }
+
+    private static String sha1(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
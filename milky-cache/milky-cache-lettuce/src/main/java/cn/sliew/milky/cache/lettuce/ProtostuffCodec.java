@@ -2,12 +2,10 @@ package cn.sliew.milky.cache.lettuce;
 
 import cn.sliew.milky.log.Logger;
 import cn.sliew.milky.log.LoggerFactory;
-import cn.sliew.milky.serialize.protostuff.ProtostuffDataInputView;
-import cn.sliew.milky.serialize.protostuff.ProtostuffDataOutputView;
+import cn.sliew.milky.serialize.protostuff.ProtostuffByteBufferCodec;
+import cn.sliew.milky.serialize.protostuff.ProtostuffByteBufferCodec.Encoded;
 import io.lettuce.core.codec.RedisCodec;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -17,6 +15,8 @@ public class ProtostuffCodec<K, V> implements RedisCodec<K, V> {
 
     public static final ProtostuffCodec INSTANCE = new ProtostuffCodec();
 
+    private static final ThreadLocal<Encoded> ENCODED = ThreadLocal.withInitial(Encoded::new);
+
     @Override
     public K decodeKey(ByteBuffer byteBuffer) {
         return (K) decode(byteBuffer);
@@ -39,11 +39,7 @@ public class ProtostuffCodec<K, V> implements RedisCodec<K, V> {
 
     private ByteBuffer encode(Object obj) {
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ProtostuffDataOutputView outputView = new ProtostuffDataOutputView(outputStream);
-            outputView.writeObject(obj);
-            outputView.flushBuffer();
-            return ByteBuffer.wrap(outputStream.toByteArray());
+            return ByteBuffer.wrap(toBytes(obj));
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         }
@@ -55,11 +51,7 @@ public class ProtostuffCodec<K, V> implements RedisCodec<K, V> {
             return null;
         }
         try {
-            byte[] bytes = new byte[byteBuffer.remaining()];
-            byteBuffer.get(bytes);
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-            ProtostuffDataInputView inputView = new ProtostuffDataInputView(inputStream);
-            return inputView.readObject();
+            return ProtostuffByteBufferCodec.decode(byteBuffer);
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         } catch (ClassNotFoundException e) {
@@ -67,4 +59,21 @@ public class ProtostuffCodec<K, V> implements RedisCodec<K, V> {
         }
         return null;
     }
+
+    /**
+     * Same layout as {@link #encodeKey(Object)} and {@link #encodeValue(Object)}.
+     */
+    static byte[] toBytes(Object obj) throws IOException {
+        Encoded encoded = ENCODED.get();
+        ProtostuffByteBufferCodec.encode(obj, encoded);
+        try {
+            return encoded.toByteArray();
+        } finally {
+            encoded.reset();
+        }
+    }
+
+    static Object fromBytes(byte[] bytes) throws IOException, ClassNotFoundException {
+        return ProtostuffByteBufferCodec.decode(ByteBuffer.wrap(bytes));
+    }
 }
@@ -0,0 +1,336 @@
+package cn.sliew.milky.cache.near;
+
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.CacheLoader;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.cache.lettuce.LettuceCache;
+import cn.sliew.milky.cache.lettuce.LettuceInvalidationChannel;
+import cn.sliew.milky.cache.support.CacheWriters;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Two level cache, a local L1 cache in front of a {@link LettuceCache} L2 cache.
+ * <p>
+ * Reads try L1 first, then L2, and copy L2 hits into L1. Writes go to L2 first, then update
+ * L1 and broadcast the written keys through {@link LettuceInvalidationChannel}, other nodes
+ * drop them from their L1. Broadcast is at most once, L1 expiry bounds how long a node may
+ * serve a stale entry when an invalidation is lost.
+ * <p>
+ * Every L1 write and invalidation bumps an epoch before changing L1, under a lock striped
+ * by key. An L2 read copies its result into L1 under the same lock and only when the epoch
+ * is unchanged since the read started, so a concurrent write or invalidation can't be
+ * overwritten by the value it replaced.
+ */
+public class NearCache<K, V> implements Cache<K, V> {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final NearCacheOptions<K, V> options;
+
+    private final CacheWriter<K, V> writer;
+
+    private final Cache<K, V> local;
+
+    private final LettuceCache<K, V> remote;
+
+    private final LettuceInvalidationChannel<K> channel;
+
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    final LongAdder localHits = new LongAdder();
+    final LongAdder remoteHits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder puts = new LongAdder();
+    final LongAdder localInvalidations = new LongAdder();
+    final LongAdder remoteInvalidations = new LongAdder();
+
+    public NearCache(NearCacheOptions<K, V> options, Cache<K, V> local, LettuceCache<K, V> remote) {
+        this.options = checkNotNull(options, () -> "options can't be null");
+        this.writer = CacheWriters.create(options);
+        this.local = checkNotNull(local, () -> "local cache can't be null");
+        this.remote = checkNotNull(remote, () -> "remote cache can't be null");
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.channel = remote.invalidationChannel();
+        this.channel.subscribe(new LettuceInvalidationChannel.Listener<K>() {
+            @Override
+            public void invalidate(List<K> keys) {
+                remoteInvalidations.increment();
+                keys.forEach(NearCache.this::removeLocal);
+            }
+
+            @Override
+            public void invalidateAll() {
+                remoteInvalidations.increment();
+                clearLocal();
+            }
+        });
+    }
+
+    @Override
+    public String name() {
+        return this.options.getName();
+    }
+
+    @Override
+    public V get(K key) {
+        V value = local.get(key);
+        if (value != null) {
+            localHits.increment();
+            return value;
+        }
+        long epoch = invalidationEpoch.get();
+        value = remote.get(key);
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        fill(key, value, epoch);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return local.containsKey(key) || remote.containsKey(key);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, CacheLoader<K, V> loader, Duration expire) {
+        V value = local.get(key);
+        if (value != null) {
+            localHits.increment();
+            return value;
+        }
+        long epoch = invalidationEpoch.get();
+        // remote coalesces concurrent loads of the key
+        value = remote.computeIfAbsent(key, loader, expire);
+        if (value != null) {
+            fill(key, value, epoch);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Iterable<K> keys) {
+        Map<K, V> result = new HashMap<>(local.getAll(keys));
+        localHits.add(result.size());
+        List<K> absentKeys = new ArrayList<>();
+        for (K key : keys) {
+            if (!result.containsKey(key)) {
+                absentKeys.add(key);
+            }
+        }
+        if (absentKeys.isEmpty()) {
+            return result;
+        }
+        long epoch = invalidationEpoch.get();
+        Map<K, V> remoteValues = remote.getAll(absentKeys);
+        remoteHits.add(remoteValues.size());
+        misses.add(absentKeys.size() - remoteValues.size());
+        remoteValues.forEach((key, value) -> fill(key, value, epoch));
+        result.putAll(remoteValues);
+        return result;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        remote.put(key, value);
+        putLocal(key, value, null);
+        invalidateOthers(Collections.singletonList(key));
+    }
+
+    @Override
+    public void put(K key, V value, Duration expire) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        remote.put(key, value, expire);
+        putLocal(key, value, expire);
+        invalidateOthers(Collections.singletonList(key));
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        remote.putAll(map);
+        map.forEach((key, value) -> putLocal(key, value, null));
+        invalidateOthers(map.keySet());
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map, Duration expire) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        remote.putAll(map, expire);
+        map.forEach((key, value) -> putLocal(key, value, expire));
+        invalidateOthers(map.keySet());
+    }
+
+    @Override
+    public void remove(K key) {
+        if (writer != null) {
+            writer.delete(key);
+        }
+        remote.remove(key);
+        removeLocal(key);
+        invalidateOthers(Collections.singletonList(key));
+    }
+
+    @Override
+    public void removeAll(Iterable<K> keys) {
+        if (writer != null) {
+            writer.deleteAll(keys);
+        }
+        remote.removeAll(keys);
+        List<K> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+        keyList.forEach(this::removeLocal);
+        invalidateOthers(keyList);
+    }
+
+    @Override
+    public long size() {
+        return remote.size();
+    }
+
+    @Override
+    public boolean supportNullKey() {
+        return false;
+    }
+
+    @Override
+    public boolean supportNullValue() {
+        return remote.supportNullValue();
+    }
+
+    @Override
+    public Iterator<K> keyIterator() {
+        return remote.keyIterator();
+    }
+
+    @Override
+    public Iterator<K> hotKeyIterator(int n) {
+        return local.hotKeyIterator(n);
+    }
+
+    /**
+     * Binds L1 metrics, named {@code name + ".local"}, L2 command latencies and
+     * near cache hit metrics, see {@link NearCacheMeterBinder}.
+     */
+    @Override
+    public void stats(MeterRegistry registry) {
+        local.stats(registry);
+        remote.stats(registry);
+        NearCacheMeterBinder.monitor(registry, this, name());
+        CacheWriters.stats(writer, registry, name());
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        clearLocal();
+        localInvalidations.increment();
+        channel.publishAll();
+    }
+
+    @Override
+    public void destroy() {
+        CacheWriters.close(writer);
+        local.destroy();
+        remote.destroy();
+    }
+
+    /**
+     * Copies {@code value} read from L2 into L1 unless L1 was written or invalidated
+     * since {@code epoch} was read, before the L2 read.
+     */
+    private void fill(K key, V value, long epoch) {
+        ReentrantLock lock = lock(key);
+        lock.lock();
+        try {
+            if (invalidationEpoch.get() == epoch) {
+                local.put(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putLocal(K key, V value, Duration expire) {
+        puts.increment();
+        if (value == null) {
+            // L1 may not hold null, L2 answers it
+            removeLocal(key);
+            return;
+        }
+        ReentrantLock lock = lock(key);
+        lock.lock();
+        try {
+            invalidationEpoch.incrementAndGet();
+            if (expire == null) {
+                local.put(key, value);
+            } else {
+                local.put(key, value, expire);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeLocal(K key) {
+        ReentrantLock lock = lock(key);
+        lock.lock();
+        try {
+            invalidationEpoch.incrementAndGet();
+            local.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes every stripe in order, no fill may land between the epoch bump and the clear.
+     */
+    private void clearLocal() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            invalidationEpoch.incrementAndGet();
+            local.clear();
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock lock(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[(hash & Integer.MAX_VALUE) % locks.length];
+    }
+
+    private void invalidateOthers(Collection<? extends K> keys) {
+        localInvalidations.increment();
+        channel.publish(keys);
+    }
+}
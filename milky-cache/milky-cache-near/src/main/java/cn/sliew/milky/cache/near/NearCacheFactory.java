@@ -0,0 +1,37 @@
+package cn.sliew.milky.cache.near;
+
+import cn.sliew.milky.cache.AbstractCacheFactory;
+import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.cache.caffeine.CaffeineCache;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import cn.sliew.milky.cache.lettuce.LettuceCache;
+import cn.sliew.milky.cache.lettuce.LettuceCacheOptions;
+import cn.sliew.milky.cache.ohc.OhcCache;
+import cn.sliew.milky.cache.ohc.OhcCacheOptions;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+public class NearCacheFactory extends AbstractCacheFactory<NearCache> {
+
+    @Override
+    protected NearCache newCache(CacheOptions options) {
+        checkArgument(options instanceof NearCacheOptions);
+
+        NearCacheOptions nearOptions = (NearCacheOptions) options;
+        LettuceCacheOptions remoteOptions = checkNotNull(nearOptions.getRemote(), () -> "near cache remote options can't be null");
+        remoteOptions.name(nearOptions.getName());
+        CacheOptions localOptions = nearOptions.getLocal();
+        localOptions.name(nearOptions.getName() + ".local");
+
+        Cache local;
+        if (localOptions instanceof OhcCacheOptions) {
+            local = new OhcCache((OhcCacheOptions) localOptions);
+        } else {
+            local = new CaffeineCache((CaffeineCacheOptions) localOptions);
+        }
+        return new NearCache(nearOptions, local, new LettuceCache(remoteOptions));
+    }
+
+}
@@ -0,0 +1,113 @@
+package cn.sliew.milky.cache.near;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+import java.lang.ref.WeakReference;
+
+public class NearCacheMeterBinder extends CacheMeterBinder {
+
+    private final WeakReference<NearCache> cache;
+
+    public NearCacheMeterBinder(NearCache cache, String cacheName, Iterable<Tag> tags) {
+        super(cache, cacheName, tags);
+        this.cache = new WeakReference(cache);
+    }
+
+    /**
+     * Record metrics on a NearCache cache.
+     *
+     * @param registry The registry to bind metrics to.
+     * @param cache    The cache to instrument.
+     * @param tags     Tags to apply to all recorded metrics. Must be an even number of arguments representing key/value pairs of tags.
+     * @return The instrumented cache, unchanged. The original cache is not wrapped or proxied in any way.
+     */
+    public static NearCache monitor(MeterRegistry registry, NearCache cache, String cacheName, String... tags) {
+        return monitor(registry, cache, cacheName, Tags.of(tags));
+    }
+
+    /**
+     * Record metrics on a NearCache cache.
+     *
+     * @param registry The registry to bind metrics to.
+     * @param cache    The cache to instrument.
+     * @param tags     Tags to apply to all recorded metrics.
+     * @return The instrumented cache, unchanged. The original cache is not wrapped or proxied in any way.
+     */
+    public static NearCache monitor(MeterRegistry registry, NearCache cache, String cacheName, Iterable<Tag> tags) {
+        new NearCacheMeterBinder(cache, cacheName, tags).bindTo(registry);
+        return cache;
+    }
+
+    /**
+     * Size is a redis round-trip, left to the L2 cache.
+     */
+    @Override
+    protected Long size() {
+        return null;
+    }
+
+    @Override
+    protected long hitCount() {
+        NearCache cache = this.cache.get();
+        return cache.localHits.sum() + cache.remoteHits.sum();
+    }
+
+    @Override
+    protected Long missCount() {
+        return this.cache.get().misses.sum();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return null;
+    }
+
+    @Override
+    protected long putCount() {
+        return this.cache.get().puts.sum();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("cache.near.gets", cache.get(), c -> c.localHits.sum())
+                .tags(getTagsWithCacheName())
+                .tag("level", "l1")
+                .tag("result", "hit")
+                .description("Near cache hits served by the local cache")
+                .register(registry);
+        FunctionCounter.builder("cache.near.gets", cache.get(), c -> c.remoteHits.sum())
+                .tags(getTagsWithCacheName())
+                .tag("level", "l2")
+                .tag("result", "hit")
+                .description("Near cache hits served by redis")
+                .register(registry);
+
+        Gauge.builder("cache.near.hit.ratio", cache.get(), c -> ratio(c.localHits.sum(), c.remoteHits.sum() + c.misses.sum()))
+                .tags(getTagsWithCacheName())
+                .tag("level", "l1")
+                .description("Ratio of gets served by the local cache")
+                .register(registry);
+        Gauge.builder("cache.near.hit.ratio", cache.get(), c -> ratio(c.remoteHits.sum(), c.misses.sum()))
+                .tags(getTagsWithCacheName())
+                .tag("level", "l2")
+                .description("Ratio of local cache misses served by redis")
+                .register(registry);
+
+        FunctionCounter.builder("cache.near.invalidations", cache.get(), c -> c.localInvalidations.sum())
+                .tags(getTagsWithCacheName())
+                .tag("source", "local")
+                .description("Invalidations published to other nodes")
+                .register(registry);
+        FunctionCounter.builder("cache.near.invalidations", cache.get(), c -> c.remoteInvalidations.sum())
+                .tags(getTagsWithCacheName())
+                .tag("source", "remote")
+                .description("Invalidations received from other nodes")
+                .register(registry);
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0L ? 0.0 : (double) hits / total;
+    }
+}
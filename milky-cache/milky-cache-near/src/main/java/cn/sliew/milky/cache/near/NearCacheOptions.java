@@ -0,0 +1,81 @@
+package cn.sliew.milky.cache.near;
+
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import cn.sliew.milky.cache.lettuce.LettuceCacheOptions;
+import cn.sliew.milky.cache.ohc.OhcCacheOptions;
+
+import java.util.Objects;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * {@code local} options configure the L1 cache, either {@link CaffeineCacheOptions}
+ * or {@link OhcCacheOptions}, {@code remote} options configure the L2 cache.
+ * <p>
+ * Both are named after the near cache by {@link NearCacheFactory}: remote gets the
+ * near cache name, so all nodes share the same redis entries, local gets
+ * {@code name + ".local"}.
+ */
+public class NearCacheOptions<K, V> extends CacheOptions<K, V> {
+
+    private CacheOptions<K, V> local = new CaffeineCacheOptions<>();
+
+    private LettuceCacheOptions<K, V> remote;
+
+    public NearCacheOptions() {
+        super();
+    }
+
+    /**
+     * Sets L1 cache options.
+     * <p>
+     * Default is <code>{@link CaffeineCacheOptions}</code> defaults.
+     *
+     * @param local {@link CaffeineCacheOptions} or {@link OhcCacheOptions}
+     * @return NearCacheOptions instance
+     */
+    public NearCacheOptions<K, V> local(CacheOptions<K, V> local) {
+        checkNotNull(local, () -> "near cache local options can't be null");
+        checkArgument(local instanceof CaffeineCacheOptions || local instanceof OhcCacheOptions,
+                () -> "near cache local options must be caffeine or ohc options: " + local.getClass().getName());
+        this.local = local;
+        return this;
+    }
+
+    public CacheOptions<K, V> getLocal() {
+        return local;
+    }
+
+    /**
+     * Sets L2 cache options.
+     *
+     * @param remote lettuce cache options
+     * @return NearCacheOptions instance
+     */
+    public NearCacheOptions<K, V> remote(LettuceCacheOptions<K, V> remote) {
+        checkNotNull(remote, () -> "near cache remote options can't be null");
+        this.remote = remote;
+        return this;
+    }
+
+    public LettuceCacheOptions<K, V> getRemote() {
+        return remote;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        NearCacheOptions<?, ?> that = (NearCacheOptions<?, ?>) o;
+        return Objects.equals(local, that.local) &&
+                Objects.equals(remote, that.remote);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), local, remote);
+    }
+}
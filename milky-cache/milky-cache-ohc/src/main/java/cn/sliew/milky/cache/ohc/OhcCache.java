@@ -2,6 +2,8 @@ package cn.sliew.milky.cache.ohc;
 
 import cn.sliew.milky.cache.Cache;
 import cn.sliew.milky.cache.CacheLoader;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.cache.support.CacheWriters;
 import cn.sliew.milky.log.Logger;
 import cn.sliew.milky.log.LoggerFactory;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -10,7 +12,9 @@ import org.caffinitas.ohc.OHCacheBuilder;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -27,8 +31,15 @@ public class OhcCache<K, V> implements Cache<K, V> {
 
     private final OhcCacheOptions<K, V> options;
 
+    private final CacheWriter<K, V> writer;
+
+    private final boolean releaseEncoded;
+
     public OhcCache(OhcCacheOptions<K, V> options) {
         this.options = checkNotNull(options, () -> "options can't be null");
+        this.writer = CacheWriters.create(options);
+        this.releaseEncoded = options.getKeySerializer() instanceof ProtostuffCacheSerializer
+                || options.getValueSerializer() instanceof ProtostuffCacheSerializer;
 
         OHCacheBuilder<K, V> ohCacheBuilder = OHCacheBuilder.newBuilder();
         if (options.getSegmentCount() != null) {
@@ -116,23 +127,92 @@ public class OhcCache<K, V> implements Cache<K, V> {
         return null;
     }
 
+    /**
+     * OHC has no bulk read, keys are looked up one by one off heap.
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<K> keys) {
+        Map<K, V> result = new HashMap<>();
+        for (K key : keys) {
+            V value = ohc.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void put(K key, V value) {
-        ohc.put(key, value);
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        try {
+            ohc.put(key, value);
+        } finally {
+            releaseEncoded();
+        }
     }
 
     @Override
     public void put(K key, V value, Duration expire) {
-        ohc.put(key, value, expire.toMillis() + System.currentTimeMillis());
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        try {
+            ohc.put(key, value, expire.toMillis() + System.currentTimeMillis());
+        } finally {
+            releaseEncoded();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        try {
+            ohc.putAll(map);
+        } finally {
+            releaseEncoded();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map, Duration expire) {
+        if (writer != null) {
+            writer.writeAll(map);
+        }
+        long expireAt = expire.toMillis() + System.currentTimeMillis();
+        try {
+            map.forEach((key, value) -> ohc.put(key, value, expireAt));
+        } finally {
+            releaseEncoded();
+        }
+    }
+
+    /**
+     * Rejected entries are never serialized, their encoded form must not stay in the serializer.
+     */
+    private void releaseEncoded() {
+        if (releaseEncoded) {
+            ProtostuffCacheSerializer.release();
+        }
     }
 
     @Override
     public void remove(K key) {
+        if (writer != null) {
+            writer.delete(key);
+        }
         ohc.remove(key);
     }
 
     @Override
     public void removeAll(Iterable<K> keys) {
+        if (writer != null) {
+            writer.deleteAll(keys);
+        }
         ohc.removeAll(keys);
     }
 
@@ -167,6 +247,7 @@ public class OhcCache<K, V> implements Cache<K, V> {
     @Override
     public void stats(MeterRegistry registry) {
         OHCacheMeterBinder.monitor(registry, ohc, name());
+        CacheWriters.stats(writer, registry, name());
     }
 
     @Override
@@ -176,6 +257,7 @@ public class OhcCache<K, V> implements Cache<K, V> {
 
     @Override
     public void destroy() {
+        CacheWriters.close(writer);
         try {
             ohc.close();
         } catch (IOException e) {
@@ -2,47 +2,58 @@ package cn.sliew.milky.cache.ohc;
 
 import cn.sliew.milky.log.Logger;
 import cn.sliew.milky.log.LoggerFactory;
-import cn.sliew.milky.serialize.protostuff.ProtostuffDataInputView;
-import cn.sliew.milky.serialize.protostuff.ProtostuffDataOutputView;
+import cn.sliew.milky.serialize.protostuff.ProtostuffByteBufferCodec;
+import cn.sliew.milky.serialize.protostuff.ProtostuffByteBufferCodec.Encoded;
 import org.caffinitas.ohc.CacheSerializer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+/**
+ * Serializes objects exactly once per OHC operation.
+ * <p>
+ * OHC asks for {@link #serializedSize(Object)} of key and value, allocates the off-heap
+ * entry and then calls {@link #serialize(Object, ByteBuffer)} for both on the same thread.
+ * {@code serializedSize} encodes the object into a thread local {@link Encoded} slot,
+ * {@code serialize} copies that encoded form straight into the off-heap buffer and releases
+ * the slot. Two slots are kept per thread because key and value may share this serializer.
+ * OHC skips {@code serialize} for entries it rejects, callers release the slots left behind
+ * with {@link #release()} once the operation completed.
+ * <p>
+ * Entry layout: {@code size} followed by {@link ProtostuffByteBufferCodec} object layout.
+ */
 public class ProtostuffCacheSerializer<T> implements CacheSerializer<T> {
 
     private static final Logger log = LoggerFactory.getLogger(ProtostuffCacheSerializer.class);
 
     public static final ProtostuffCacheSerializer INSTANCE = new ProtostuffCacheSerializer();
 
-    /**
-     * todo 这里其实有一个额外的copy的动作，后续可以考虑优化为直接写入ByteBuffer
-     */
+    private static final ThreadLocal<EncodedSlots> SLOTS = ThreadLocal.withInitial(EncodedSlots::new);
+
     @Override
     public void serialize(T t, ByteBuffer byteBuffer) {
+        EncodedSlots slots = SLOTS.get();
+        Encoded encoded = slots.find(t);
+        if (encoded == null) {
+            encoded = slots.acquire(t);
+            ProtostuffByteBufferCodec.encode(t, encoded);
+        }
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ProtostuffDataOutputView outputView = new ProtostuffDataOutputView(outputStream);
-            outputView.writeObject(t);
-            outputView.flushBuffer();
-            byte[] bytes = outputStream.toByteArray();
-            byteBuffer.putInt(bytes.length);
-            byteBuffer.put(bytes);
+            byteBuffer.putInt(encoded.size());
+            encoded.writeTo(byteBuffer);
         } catch (IOException e) {
             log.error(e.getMessage(), e);
+        } finally {
+            encoded.reset();
         }
     }
 
     @Override
     public T deserialize(ByteBuffer byteBuffer) {
         try {
-            byte[] bytes = new byte[byteBuffer.getInt()];
-            byteBuffer.get(bytes);
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-            ProtostuffDataInputView inputView = new ProtostuffDataInputView(inputStream);
-            return (T) inputView.readObject();
+            // skip entry size
+            byteBuffer.getInt();
+            return (T) ProtostuffByteBufferCodec.decode(byteBuffer);
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         } catch (ClassNotFoundException e) {
@@ -51,18 +62,69 @@ public class ProtostuffCacheSerializer<T> implements CacheSerializer<T> {
         return null;
     }
 
+    /**
+     * Always encodes {@code t} again, an object may have been mutated since a
+     * previous {@code serializedSize} call which was not followed by {@code serialize}.
+     */
     @Override
     public int serializedSize(T t) {
+        Encoded encoded = SLOTS.get().acquire(t);
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ProtostuffDataOutputView outputView = new ProtostuffDataOutputView(outputStream);
-            outputView.writeObject(t);
-            outputView.flushBuffer();
-            byte[] bytes = outputStream.toByteArray();
-            return bytes.length + 4;
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+            ProtostuffByteBufferCodec.encode(t, encoded);
+        } catch (RuntimeException e) {
+            encoded.reset();
+            throw e;
+        }
+        return encoded.size() + 4;
+    }
+
+    /**
+     * Releases the encoded objects of the current thread which were never serialized,
+     * so they are not kept reachable until the next operation.
+     */
+    public static void release() {
+        SLOTS.get().reset();
+    }
+
+    private static final class EncodedSlots {
+
+        private final Encoded[] slots = {new Encoded(), new Encoded()};
+        private int next;
+
+        Encoded find(Object obj) {
+            for (Encoded slot : slots) {
+                if (slot.isEncoded(obj)) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Prefers the slot already holding {@code obj}, then an empty slot,
+         * then overwrites slots round-robin.
+         */
+        Encoded acquire(Object obj) {
+            Encoded slot = find(obj);
+            if (slot != null) {
+                return slot;
+            }
+            for (Encoded candidate : slots) {
+                if (candidate.isEmpty()) {
+                    return candidate;
+                }
+            }
+            slot = slots[next];
+            next = (next + 1) % slots.length;
+            return slot;
+        }
+
+        void reset() {
+            for (Encoded slot : slots) {
+                if (!slot.isEmpty()) {
+                    slot.reset();
+                }
+            }
         }
-        return -1;
     }
 }
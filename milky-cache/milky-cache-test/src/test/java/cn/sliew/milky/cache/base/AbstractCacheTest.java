@@ -1,6 +1,7 @@
 package cn.sliew.milky.cache.base;
 
 import cn.sliew.milky.cache.Cache;
+import cn.sliew.milky.cache.CacheLoader;
 import cn.sliew.milky.cache.model.FullAddress;
 import cn.sliew.milky.cache.model.Person;
 import cn.sliew.milky.cache.model.PersonInfo;
@@ -17,7 +18,13 @@ import org.junit.jupiter.api.Test;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -57,7 +64,12 @@ public abstract class AbstractCacheTest extends MilkyTestCase {
 
     @AfterEach
     private void afterEach() {
-        cache.clear();
+        try {
+            cache.clear();
+        } finally {
+            // every test builds its own cache, stop its background tasks before the next one
+            cache.destroy();
+        }
 //        registry.forEachMeter(meter -> {
 //            System.out.println(meter.getId());
 //            meter.measure().forEach(measurement -> {
@@ -97,6 +109,74 @@ public abstract class AbstractCacheTest extends MilkyTestCase {
         assertEquals(value, cache.get(key));
     }
 
+    @Test
+    public void testConcurrentGetWithLoader() throws Exception {
+        AtomicInteger loadTimes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.computeIfAbsent(key, key1 -> {
+                    loadTimes.incrementAndGet();
+                    Thread.sleep(100L);
+                    return value;
+                }, Duration.ofMillis(5000L))));
+            }
+            for (Future<Object> future : futures) {
+                assertEquals(value, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loadTimes.get());
+    }
+
+    @Test
+    public void testGetAll() {
+        cache.put(key, value);
+        cache.put("123", "456");
+        Map result = cache.getAll(Arrays.asList(key, "123", "789"));
+        assertEquals(2, result.size());
+        assertEquals(value, result.get(key));
+        assertEquals("456", result.get("123"));
+    }
+
+    @Test
+    public void testPutAll() {
+        Map<Object, Object> entries = new HashMap<>();
+        entries.put(key, value);
+        entries.put("123", "456");
+        cache.putAll(entries, Duration.ofMillis(5000L));
+        assertEquals(value, cache.get(key));
+        assertEquals("456", cache.get("123"));
+    }
+
+    @Test
+    public void testComputeAllIfAbsent() {
+        cache.put(key, value);
+        AtomicInteger loadAllTimes = new AtomicInteger();
+        CacheLoader<Object, Object> loader = new CacheLoader<Object, Object>() {
+            @Override
+            public Object load(Object key) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Map<Object, Object> loadAll(Iterable<?> keys) {
+                loadAllTimes.incrementAndGet();
+                Map<Object, Object> result = new HashMap<>();
+                keys.forEach(key -> result.put(key, key + "-loaded"));
+                return result;
+            }
+        };
+        Map result = cache.computeAllIfAbsent(Arrays.asList(key, "123", "789"), loader, Duration.ofMillis(5000L));
+        assertEquals(1, loadAllTimes.get());
+        assertEquals(3, result.size());
+        assertEquals(value, result.get(key));
+        assertEquals("123-loaded", result.get("123"));
+        assertEquals("789-loaded", cache.get("789"));
+    }
+
     @Test
     public void testRemove() {
         cache.put(key, value);
@@ -0,0 +1,46 @@
+package cn.sliew.milky.cache.base;
+
+import io.lettuce.core.RedisURI;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+/**
+ * Local redis stand-in for {@code LettuceCache} tests, listening on a free port.
+ */
+public final class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final int port;
+
+    private EmbeddedRedis(RedisServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    public static EmbeddedRedis start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RedisServer server = new RedisServer(port);
+        server.start();
+        return new EmbeddedRedis(server, port);
+    }
+
+    public RedisURI redisURI() {
+        return RedisURI.builder()
+                .withHost("localhost")
+                .withPort(port)
+                .withDatabase(0)
+                .withTimeout(Duration.ofSeconds(1L))
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+    }
+}
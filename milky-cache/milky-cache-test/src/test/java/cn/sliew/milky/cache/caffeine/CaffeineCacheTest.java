@@ -1,6 +1,14 @@
 package cn.sliew.milky.cache.caffeine;
 
 import cn.sliew.milky.cache.base.AbstractCacheTest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class CaffeineCacheTest extends AbstractCacheTest {
 
@@ -10,4 +18,37 @@ public class CaffeineCacheTest extends AbstractCacheTest {
         CaffeineCacheFactory factory = new CaffeineCacheFactory();
         cache = factory.getCache(options);
     }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        cache.put("1", "one", Duration.ofMillis(10L));
+        Map<String, String> map = new HashMap<>();
+        map.put("2", "two");
+        cache.putAll(map, Duration.ofMillis(10L));
+        cache.put("3", "three");
+        Thread.sleep(20L);
+        assertNull(cache.get("1"));
+        assertNull(cache.get("2"));
+        assertFalse(cache.containsKey("1"));
+        assertEquals("three", cache.get("3"));
+    }
+
+    @Test
+    public void testRewriteResetsExpire() throws InterruptedException {
+        cache.put("1", "one", Duration.ofMillis(10L));
+        cache.put("1", "uno");
+        Thread.sleep(20L);
+        assertEquals("uno", cache.get("1"));
+    }
+
+    @Test
+    public void testHotKeyIterator() {
+        for (int i = 0; i < 10000; i++) {
+            cache.get("hot");
+            cache.get("key-" + i);
+        }
+        Iterator<String> hotKeys = cache.hotKeyIterator(1);
+        assertEquals("hot", hotKeys.next());
+        assertFalse(hotKeys.hasNext());
+    }
 }
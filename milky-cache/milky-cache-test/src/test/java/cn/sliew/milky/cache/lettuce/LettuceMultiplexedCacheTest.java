@@ -0,0 +1,152 @@
+package cn.sliew.milky.cache.lettuce;
+
+import cn.sliew.milky.cache.base.AbstractCacheTest;
+import cn.sliew.milky.cache.base.EmbeddedRedis;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LettuceMultiplexedCacheTest extends AbstractCacheTest {
+
+    private static EmbeddedRedis redis;
+
+    @BeforeAll
+    public static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() throws IOException {
+        redis.close();
+    }
+
+    {
+        LettuceCacheFactory factory = new LettuceCacheFactory();
+        this.cache = factory.getCache(options("LettuceMultiplexedCacheTest"));
+    }
+
+    private static LettuceCacheOptions options(String name) {
+        LettuceCacheOptions options = new LettuceCacheOptions();
+        options.name(name);
+        options.redisURI(redis.redisURI());
+        options.executionMode(LettuceCacheOptions.ExecutionMode.MULTIPLEXED);
+        return options;
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        cache.put("1", "one", Duration.ofMillis(10L));
+        Thread.sleep(20L);
+        assertNull(cache.get("1"));
+        assertFalse(cache.containsKey("1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSweepExpired() throws InterruptedException {
+        LettuceCache<String, String> cache = new LettuceCache<>(options("LettuceMultiplexedCacheTest.sweep")
+                .expireSweepInterval(Duration.ofMillis(100L)));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        cache.stats(registry);
+        try {
+            for (int i = 0; i < 500; i++) {
+                cache.put("key-" + i, "value", Duration.ofMillis(10L));
+            }
+            cache.put("forever", "value");
+            // expired entries are removed without being read
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (cache.size() > 1L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertEquals(1L, cache.size());
+            assertEquals("value", cache.get("forever"));
+            assertEquals(500.0, registry.get("cache.expire.removed").functionCounter().count());
+            assertEquals(1.0, registry.get("cache.expire.leader").gauge().value());
+        } finally {
+            cache.clear();
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void testSweepLargeBacklog() throws InterruptedException {
+        LettuceCache<String, String> cache = new LettuceCache<>(options("LettuceMultiplexedCacheTest.backlog")
+                .expireSweepInterval(Duration.ofMillis(100L)));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        cache.stats(registry);
+        try {
+            // batches double up to the max batch size of 10000 before the backlog is gone
+            Map<String, String> entries = new HashMap<>();
+            for (int i = 0; i < 30000; i++) {
+                entries.put("key-" + i, "value");
+            }
+            cache.putAll(entries, Duration.ofMillis(10L));
+            FunctionCounter removed = registry.get("cache.expire.removed").functionCounter();
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (removed.count() < 30000.0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            assertEquals(30000.0, removed.count());
+            assertEquals(0L, cache.size());
+        } finally {
+            cache.clear();
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void testSingleSweeper() throws InterruptedException {
+        LettuceCacheOptions options = options("LettuceMultiplexedCacheTest.leader")
+                .expireSweepInterval(Duration.ofMillis(100L));
+        LettuceCache<String, String> first = new LettuceCache<>(options);
+        LettuceCache<String, String> second = new LettuceCache<>(options);
+        MeterRegistry firstRegistry = new SimpleMeterRegistry();
+        MeterRegistry secondRegistry = new SimpleMeterRegistry();
+        first.stats(firstRegistry);
+        second.stats(secondRegistry);
+        LettuceCache<String, String> follower = second;
+        try {
+            Thread.sleep(500L);
+            double firstLeader = firstRegistry.get("cache.expire.leader").gauge().value();
+            double secondLeader = secondRegistry.get("cache.expire.leader").gauge().value();
+            assertEquals(1.0, firstLeader + secondLeader);
+
+            // the other client takes over once the lease is released
+            MeterRegistry followerRegistry = secondRegistry;
+            if (secondLeader == 1.0) {
+                follower = first;
+                followerRegistry = firstRegistry;
+                second.destroy();
+            } else {
+                first.destroy();
+            }
+            Thread.sleep(500L);
+            assertEquals(1.0, followerRegistry.get("cache.expire.leader").gauge().value());
+        } finally {
+            follower.destroy();
+        }
+    }
+
+    @Test
+    public void testHotKeyIterator() {
+        cache.put("hot", "value");
+        for (int i = 0; i < 1000; i++) {
+            cache.get("hot");
+            cache.get("key-" + (i % 100));
+        }
+        Iterator<String> hotKeys = cache.hotKeyIterator(1);
+        assertEquals("hot", hotKeys.next());
+        assertFalse(hotKeys.hasNext());
+    }
+}
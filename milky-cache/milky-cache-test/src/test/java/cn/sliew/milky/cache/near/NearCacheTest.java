@@ -0,0 +1,197 @@
+package cn.sliew.milky.cache.near;
+
+import cn.sliew.milky.cache.base.AbstractCacheTest;
+import cn.sliew.milky.cache.base.EmbeddedRedis;
+import cn.sliew.milky.cache.caffeine.CaffeineCache;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import cn.sliew.milky.cache.lettuce.LettuceCache;
+import cn.sliew.milky.cache.lettuce.LettuceCacheOptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearCacheTest extends AbstractCacheTest {
+
+    private static EmbeddedRedis redis;
+
+    @BeforeAll
+    public static void startRedis() throws IOException {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() throws IOException {
+        redis.close();
+    }
+
+    {
+        this.cache = new NearCacheFactory().getCache(options("NearCacheTest"));
+    }
+
+    private static NearCacheOptions options(String name) {
+        LettuceCacheOptions remote = new LettuceCacheOptions();
+        remote.redisURI(redis.redisURI());
+        remote.executionMode(LettuceCacheOptions.ExecutionMode.MULTIPLEXED);
+        NearCacheOptions options = new NearCacheOptions();
+        options.name(name);
+        options.local(new CaffeineCacheOptions());
+        options.remote(remote);
+        return options;
+    }
+
+    @Test
+    public void testInvalidationAcrossNodes() throws InterruptedException {
+        NearCache<String, String> node1 = new NearCacheFactory().getCache(options("NearCacheTest-nodes"));
+        NearCache<String, String> node2 = new NearCacheFactory().getCache(options("NearCacheTest-nodes"));
+        try {
+            node1.put("1", "one");
+            // fills node2 L1
+            assertEquals("one", node2.get("1"));
+            assertEquals("one", node2.get("1"));
+
+            node1.put("1", "uno");
+            assertEquals("uno", node1.get("1"));
+            assertTrue(awaitValue(node2, "1", "uno"));
+
+            node1.remove("1");
+            assertTrue(awaitValue(node2, "1", null));
+        } finally {
+            node1.clear();
+            node1.destroy();
+            node2.destroy();
+        }
+    }
+
+    @Test
+    public void testPutCount() {
+        NearCache<String, String> cache = new NearCacheFactory().getCache(options("NearCacheTest-puts"));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        NearCacheMeterBinder.monitor(registry, cache, "NearCacheTest-puts");
+        try {
+            cache.put("1", "one");
+            Map<String, String> entries = new HashMap<>();
+            entries.put("2", "two");
+            entries.put("3", "three");
+            cache.putAll(entries);
+            cache.putAll(entries, Duration.ofMinutes(1L));
+
+            assertEquals(5.0, registry.get("cache.puts").functionCounter().count());
+        } finally {
+            cache.clear();
+            cache.destroy();
+        }
+    }
+
+    /**
+     * A fill which passed its epoch check but not yet wrote L1 must not overwrite a put
+     * completing meanwhile.
+     */
+    @Test
+    public void testFillRacingPut() throws Exception {
+        NearCacheOptions<String, String> options = options("NearCacheTest-fill");
+        CountDownLatch filling = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CaffeineCacheOptions<String, String> localOptions = new CaffeineCacheOptions<>();
+        localOptions.name("NearCacheTest-fill.local");
+        CaffeineCache<String, String> local = new CaffeineCache<String, String>(localOptions) {
+            @Override
+            public void put(String key, String value) {
+                if ("old".equals(value)) {
+                    filling.countDown();
+                    // the put blocks until the fill landed when they are serialized
+                    awaitQuietly(written, 500L);
+                }
+                super.put(key, value);
+            }
+        };
+        LettuceCacheOptions<String, String> remoteOptions = options.getRemote();
+        remoteOptions.name("NearCacheTest-fill");
+        LettuceCache<String, String> remote = new LettuceCache<>(remoteOptions);
+        remote.put("key", "old");
+        NearCache<String, String> near = new NearCache<>(options, local, remote);
+        try {
+            Thread reader = new Thread(() -> near.get("key"));
+            reader.start();
+            assertTrue(filling.await(10L, TimeUnit.SECONDS));
+            near.put("key", "new");
+            written.countDown();
+            reader.join();
+            assertEquals("new", near.get("key"));
+        } finally {
+            near.clear();
+            near.destroy();
+        }
+    }
+
+    /**
+     * Readers fill L1 from L2 while the writer updates the key, a fill must never
+     * overwrite a value written after the read it carries.
+     */
+    @Test
+    public void testConcurrentGetAndPut() throws Exception {
+        NearCache<String, String> near = new NearCacheFactory().getCache(options("NearCacheTest-race"));
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(readers.submit(() -> {
+                    while (running.get()) {
+                        near.get("key");
+                    }
+                }));
+            }
+            for (int i = 0; i < 500; i++) {
+                String value = "value-" + i;
+                near.put("key", value);
+                assertEquals(value, near.get("key"));
+            }
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            running.set(false);
+            readers.shutdownNow();
+            near.clear();
+            near.destroy();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch, long millis) {
+        try {
+            latch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean awaitValue(NearCache<String, String> cache, String key, String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            String value = cache.get(key);
+            if (expected == null ? value == null : expected.equals(value)) {
+                return true;
+            }
+            Thread.sleep(10L);
+        }
+        return false;
+    }
+}
@@ -1,6 +1,12 @@
 package cn.sliew.milky.cache.ohc;
 
 import cn.sliew.milky.cache.base.AbstractCacheTest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class OhcCacheTest extends AbstractCacheTest {
 
@@ -10,4 +16,26 @@ public class OhcCacheTest extends AbstractCacheTest {
         OhcCacheFactory factory = new OhcCacheFactory();
         this.cache = factory.getCache(options);
     }
+
+    @Test
+    void testRejectedEntryReleased() throws InterruptedException {
+        OhcCacheOptions<String, byte[]> options = new OhcCacheOptions<>();
+        options.name("OhcCacheTest-rejected");
+        options.maxEntrySize(1024L);
+        OhcCache<String, byte[]> rejecting = new OhcCache<>(options);
+        try {
+            byte[] value = new byte[64 * 1024];
+            WeakReference<byte[]> reference = new WeakReference<>(value);
+            rejecting.put("oversized", value);
+            assertFalse(rejecting.containsKey("oversized"));
+            value = null;
+            for (int i = 0; i < 10 && reference.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10L);
+            }
+            assertNull(reference.get());
+        } finally {
+            rejecting.destroy();
+        }
+    }
 }
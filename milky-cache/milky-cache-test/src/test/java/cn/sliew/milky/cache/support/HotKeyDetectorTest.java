@@ -0,0 +1,107 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotKeyDetectorTest extends MilkyTestCase {
+
+    @Test
+    void testTopKeys() {
+        HotKeyDetector<String> detector = new HotKeyDetector<>(1.0, 8);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                detector.record("hot-" + i);
+            }
+            detector.record("hot-0");
+            // a long tail of keys read once
+            for (int i = 0; i < 20; i++) {
+                detector.record("cold-" + round + "-" + i);
+            }
+        }
+        List<String> hotKeys = detector.hotKeys(3);
+        assertEquals("hot-0", hotKeys.get(0));
+        assertEquals(Arrays.asList("hot-1", "hot-2"), hotKeys.subList(1, 3).stream().sorted().collect(Collectors.toList()));
+        assertEquals(8, detector.hotKeys(100).size());
+    }
+
+    @Test
+    void testHotKeyDisplacesSaturatedCandidates() {
+        HotKeyDetector<String> detector = new HotKeyDetector<>(1.0, 10);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 10; i++) {
+                detector.record("warm-" + i);
+            }
+        }
+        // every candidate is above the saturated sketch estimate of 15
+        for (int i = 0; i < 5000; i++) {
+            detector.record("hot");
+        }
+        assertEquals(Arrays.asList("hot"), detector.hotKeys(1));
+    }
+
+    @Test
+    void testAgingForgetsCooledKeys() {
+        HotKeyDetector<String> detector = new HotKeyDetector<>(1.0, 1);
+        for (int i = 0; i < 100; i++) {
+            detector.record("old");
+        }
+        assertEquals(Arrays.asList("old"), detector.hotKeys(1));
+        // aging period is 2560 samples, halving repeatedly lets new keys take over
+        for (int i = 0; i < 20000; i++) {
+            detector.record("new");
+        }
+        assertEquals(Arrays.asList("new"), detector.hotKeys(1));
+    }
+
+    @Test
+    void testSampling() {
+        HotKeyDetector<String> detector = new HotKeyDetector<>(0.1, 8);
+        for (int i = 0; i < 10000; i++) {
+            detector.record("key");
+        }
+        long samples = detector.samples.sum();
+        assertTrue(samples > 800L && samples < 1200L, "samples: " + samples);
+        // estimated reads scale samples back
+        Map.Entry<String, Integer> entry = detector.frequencies(1).get(0);
+        assertEquals("key", entry.getKey());
+        assertEquals(samples * 10.0, entry.getValue(), samples * 10.0 * 0.05);
+    }
+
+    @Test
+    void testDisabled() {
+        CacheOptions<String, String> options = CacheOptions.defaults();
+        assertNotNull(HotKeyDetector.create(options));
+        assertNull(HotKeyDetector.create(options.hotKeySampleRate(0.0)));
+        assertNull(HotKeyDetector.create(options.hotKeySampleRate(0.5).hotKeyCapacity(0)));
+    }
+
+    @Test
+    void testMetrics() {
+        HotKeyDetector<String> detector = new HotKeyDetector<>(1.0, 4);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        HotKeyMeterBinder.monitor(registry, detector, "HotKeyDetectorTest");
+        assertEquals(HotKeyMeterBinder.EXPORTED_RANKS, registry.find("cache.hot.key.reads").gauges().size());
+        assertEquals(0.0, registry.get("cache.hot.key.reads").tag("rank", "1").gauge().value());
+
+        // gauges are current well before the aging period of 2560 samples
+        for (int i = 0; i < 1000; i++) {
+            detector.record(i % 2 == 0 ? "hot" : "key-" + i);
+        }
+        assertEquals(1000.0, registry.get("cache.hot.key.samples").functionCounter().count());
+        assertEquals(500.0, registry.get("cache.hot.key.reads").tag("rank", "1").gauge().value());
+        assertEquals(0.0, registry.get("cache.hot.key.reads").tag("rank", "5").gauge().value());
+        // keys are never tags, the number of meters stays bounded
+        assertEquals(HotKeyMeterBinder.EXPORTED_RANKS, registry.find("cache.hot.key.reads").gauges().size());
+        assertNull(registry.find("cache.hot.key.reads").tagKeys("key").gauge());
+    }
+}
@@ -0,0 +1,133 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest extends MilkyTestCase {
+
+    @Test
+    void testConcurrentLoadsOfSameKeyShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofSeconds(5L), Duration.ZERO);
+        AtomicInteger loadTimes = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> singleFlight.load("key", key -> {
+                    loadTimes.incrementAndGet();
+                    release.await();
+                    return key + "-value";
+                })));
+            }
+            while (loadTimes.get() == 0) {
+                Thread.sleep(1L);
+            }
+            // let followers reach the in-flight load
+            Thread.sleep(50L);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("key-value", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loadTimes.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    void testLoadsOfDifferentKeysDoNotBlock() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofSeconds(5L), Duration.ZERO);
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = executor.submit(() -> singleFlight.load("slow", key -> {
+                slowStarted.countDown();
+                release.await();
+                return key;
+            }));
+            assertTrue(slowStarted.await(5L, TimeUnit.SECONDS));
+            assertEquals("fast", singleFlight.load("fast", key -> key));
+            release.countDown();
+            assertEquals("slow", slow.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFollowerTimeout() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofMillis(20L), Duration.ZERO);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> singleFlight.load("key", key -> {
+                started.countDown();
+                release.await();
+                return key;
+            }));
+            assertTrue(started.await(5L, TimeUnit.SECONDS));
+            assertThrows(TimeoutException.class, () -> singleFlight.load("key", key -> key));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureCaching() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofSeconds(5L), Duration.ofMillis(100L));
+        AtomicInteger loadTimes = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> singleFlight.load("key", key -> {
+                loadTimes.incrementAndGet();
+                throw new IOException("source down");
+            }));
+        }
+        assertEquals(1, loadTimes.get());
+
+        Thread.sleep(150L);
+        assertEquals("key", singleFlight.load("key", key -> {
+            loadTimes.incrementAndGet();
+            return key;
+        }));
+        assertEquals(2, loadTimes.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    void testFailureNotCachedByDefault() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofSeconds(5L), Duration.ZERO);
+        AtomicInteger loadTimes = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> singleFlight.load("key", key -> {
+                loadTimes.incrementAndGet();
+                throw new IOException("source down");
+            }));
+        }
+        assertEquals(3, loadTimes.get());
+        assertEquals(0, singleFlight.size());
+    }
+}
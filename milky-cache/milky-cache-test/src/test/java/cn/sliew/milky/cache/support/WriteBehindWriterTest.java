@@ -0,0 +1,235 @@
+package cn.sliew.milky.cache.support;
+
+import cn.sliew.milky.cache.CacheOptions;
+import cn.sliew.milky.cache.CacheWriter;
+import cn.sliew.milky.cache.caffeine.CaffeineCache;
+import cn.sliew.milky.cache.caffeine.CaffeineCacheOptions;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindWriterTest extends MilkyTestCase {
+
+    @Test
+    void testCoalesceWritesOfSameKey() {
+        RecordingWriter store = new RecordingWriter();
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindDelay(Duration.ofMillis(200L)));
+        for (int i = 0; i < 100; i++) {
+            writer.write("key", "value-" + i);
+        }
+        writer.write("other", "value");
+        writer.delete("other");
+        writer.close();
+
+        assertEquals("value-99", store.values.get("key"));
+        assertFalse(store.values.containsKey("other"));
+        assertEquals(1, store.writes.get());
+        assertEquals(1, store.deletes.get());
+        assertEquals(100L, writer.coalesced.sum());
+    }
+
+    @Test
+    void testFlushByBatchSize() throws InterruptedException {
+        RecordingWriter store = new RecordingWriter();
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindBatchSize(10)
+                .writeBehindDelay(Duration.ofMinutes(1L)));
+        try {
+            for (int i = 0; i < 25; i++) {
+                writer.write("key-" + i, "value");
+            }
+            assertTrue(awaitWrites(store, 20));
+            assertEquals(5L, writer.pending());
+            assertTrue(store.batchSizes.stream().allMatch(size -> size == 10));
+        } finally {
+            writer.close();
+        }
+        assertEquals(25, store.values.size());
+    }
+
+    @Test
+    void testFlushByDelay() throws InterruptedException {
+        RecordingWriter store = new RecordingWriter();
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindDelay(Duration.ofMillis(50L)));
+        try {
+            writer.write("key", "value");
+            assertTrue(awaitWrites(store, 1));
+            assertEquals(0L, writer.pending());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void testRetryFailedBatch() throws InterruptedException {
+        RecordingWriter store = new RecordingWriter();
+        store.failures.set(2);
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindDelay(Duration.ofMillis(10L))
+                .writeBehindRetryBackoff(Duration.ofMillis(10L)));
+        try {
+            writer.write("key", "value");
+            assertTrue(awaitWrites(store, 1));
+            assertEquals(2L, writer.retried.sum());
+            assertEquals(0L, writer.failed.sum());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void testDropBatchAfterRetries() throws InterruptedException {
+        RecordingWriter store = new RecordingWriter();
+        store.failures.set(Integer.MAX_VALUE);
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindDelay(Duration.ofMillis(10L))
+                .writeBehindRetries(1)
+                .writeBehindRetryBackoff(Duration.ofMillis(10L)));
+        writer.write("key", "value");
+        writer.close();
+        assertEquals(1L, writer.failed.sum());
+        assertTrue(store.values.isEmpty());
+    }
+
+    @Test
+    void testBackpressure() throws Exception {
+        RecordingWriter store = new RecordingWriter();
+        CountDownLatch release = new CountDownLatch(1);
+        store.blocker = release;
+        WriteBehindWriter<String, String> writer = new WriteBehindWriter<>(options(store)
+                .writeBehindBatchSize(1)
+                .writeBehindQueueSize(1)
+                .writeBehindDelay(Duration.ZERO));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // first key blocks in the writer, second fills the queue
+            writer.write("key-0", "value");
+            while (store.blocked.get() == 0) {
+                Thread.sleep(1L);
+            }
+            writer.write("key-1", "value");
+            Future<?> blocked = executor.submit(() -> writer.write("key-2", "value"));
+            assertThrows(TimeoutException.class, () -> blocked.get(100L, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            blocked.get(5L, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            writer.close();
+        }
+        assertEquals(3, store.values.size());
+    }
+
+    @Test
+    void testCacheWriteBehind() throws InterruptedException {
+        RecordingWriter store = new RecordingWriter();
+        CaffeineCacheOptions<String, String> options = new CaffeineCacheOptions<>();
+        options.name("WriteBehindWriterTest");
+        options.writer(store)
+                .writeMode(CacheOptions.WriteMode.WRITE_BEHIND)
+                .writeBehindDelay(Duration.ofMinutes(1L));
+        CaffeineCache<String, String> cache = new CaffeineCache<>(options);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        cache.stats(registry);
+
+        cache.put("1", "one");
+        cache.put("2", "two");
+        cache.remove("2");
+        assertEquals("one", cache.get("1"));
+        assertTrue(store.values.isEmpty());
+        assertEquals(2.0, registry.get("cache.write.behind.pending").gauge().value());
+
+        cache.destroy();
+        assertEquals("one", store.values.get("1"));
+        assertFalse(store.values.containsKey("2"));
+        assertEquals(1.0, registry.get("cache.write.behind.operations").tag("result", "write").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.write.behind.operations").tag("result", "delete").functionCounter().count());
+    }
+
+    private static CacheOptions<String, String> options(CacheWriter<String, String> writer) {
+        CacheOptions<String, String> options = CacheOptions.defaults();
+        return options.name("WriteBehindWriterTest")
+                .writer(writer)
+                .writeMode(CacheOptions.WriteMode.WRITE_BEHIND);
+    }
+
+    private static boolean awaitWrites(RecordingWriter store, int writes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline) {
+            if (store.writes.get() >= writes) {
+                return true;
+            }
+            Thread.sleep(5L);
+        }
+        return false;
+    }
+
+    private static class RecordingWriter implements CacheWriter<String, String> {
+
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger deletes = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger blocked = new AtomicInteger();
+        private volatile CountDownLatch blocker;
+
+        @Override
+        public void write(String key, String value) {
+            writeAll(Collections.singletonMap(key, value));
+        }
+
+        @Override
+        public void delete(String key) {
+            deleteAll(Collections.singletonList(key));
+        }
+
+        @Override
+        public void writeAll(Map<? extends String, ? extends String> map) {
+            if (failures.getAndUpdate(failures -> failures > 0 ? failures - 1 : 0) > 0) {
+                throw new IllegalStateException("store unavailable");
+            }
+            if (blocker != null) {
+                blocked.incrementAndGet();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            values.putAll(map);
+            batchSizes.add(map.size());
+            writes.addAndGet(map.size());
+        }
+
+        @Override
+        public void deleteAll(Iterable<? extends String> keys) {
+            List<String> keyList = new ArrayList<>();
+            keys.forEach(keyList::add);
+            keyList.forEach(values::remove);
+            deletes.addAndGet(keyList.size());
+        }
+    }
+}
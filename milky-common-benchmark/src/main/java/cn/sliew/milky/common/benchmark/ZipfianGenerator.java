@@ -0,0 +1,75 @@
+package cn.sliew.milky.common.benchmark;
+
+import java.util.SplittableRandom;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * Scrambled zipfian key index generator, port of the YCSB {@code ScrambledZipfianGenerator}.
+ * <p>
+ * Popular items are scattered across the key space by a FNV hash so hot keys do not cluster
+ * into the same OHC segment or redis slot. {@code theta = 0} degrades to an uniform distribution.
+ * <p>
+ * Instance is immutable after construction and can be shared by benchmark threads,
+ * each thread brings its own {@link SplittableRandom}.
+ */
+public class ZipfianGenerator {
+
+    private static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME_64 = 1099511628211L;
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+
+    public ZipfianGenerator(long items, double theta) {
+        checkArgument(items > 2, () -> String.format("zipfian items invalid: %d", items));
+        checkArgument(theta >= 0d && theta < 1d, () -> String.format("zipfian theta invalid: %f", theta));
+        this.items = items;
+        this.theta = theta;
+        this.alpha = 1.0d / (1.0d - theta);
+        this.zetan = zeta(items, theta);
+        double zeta2theta = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0d / items, 1 - theta)) / (1 - zeta2theta / zetan);
+    }
+
+    /**
+     * Returns next key index in {@code [0, items)}.
+     */
+    public long next(SplittableRandom random) {
+        return Math.floorMod(fnvHash64(nextRank(random)), items);
+    }
+
+    private long nextRank(SplittableRandom random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0d) {
+            return 0L;
+        }
+        if (uz < 1.0d + Math.pow(0.5d, theta)) {
+            return 1L;
+        }
+        return (long) (items * Math.pow(eta * u - eta + 1, alpha));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0d;
+        for (long i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, theta);
+        }
+        return sum;
+    }
+
+    private static long fnvHash64(long value) {
+        long hash = FNV_OFFSET_BASIS_64;
+        for (int i = 0; i < 8; i++) {
+            long octet = value & 0x00FF;
+            value = value >> 8;
+            hash = hash ^ octet;
+            hash = hash * FNV_PRIME_64;
+        }
+        return hash;
+    }
+}
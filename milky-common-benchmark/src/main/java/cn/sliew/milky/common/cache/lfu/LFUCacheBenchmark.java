@@ -0,0 +1,108 @@
+package cn.sliew.milky.common.cache.lfu;
+
+import cn.sliew.milky.common.benchmark.ZipfianGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Throughput and footprint of {@link LFUCache} and {@link ConcurrentLFUCache}.
+ * <p>
+ * {@link #readWrite(ThreadState)} runs a zipfian workload, compare thread counts with
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main LFUCacheBenchmark.readWrite -t 4} against {@code -t 1}.
+ * {@link #create()} builds an empty cache of {@link #capacity}, its footprint is the
+ * {@code gc.alloc.rate.norm} reported by {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class LFUCacheBenchmark {
+
+    public enum Implementation {
+        LFU,
+        CONCURRENT_LFU
+    }
+
+    @Param
+    private Implementation implementation;
+
+    /**
+     * Fraction of operations which are reads, others are writes.
+     */
+    @Param({"0.9"})
+    private double readRatio;
+
+    @Param({"100000"})
+    private int keySpace;
+
+    @Param({"0.99"})
+    private double zipfTheta;
+
+    @Param({"10000"})
+    private int capacity;
+
+    private Cache cache;
+    private String[] keys;
+    private ZipfianGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.generator = new ZipfianGenerator(keySpace, zipfTheta);
+        this.keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "key-" + i;
+        }
+        this.cache = create();
+    }
+
+    @Benchmark
+    public String readWrite(ThreadState state) {
+        String key = keys[(int) generator.next(state.random)];
+        if (state.random.nextDouble() < readRatio) {
+            return cache.get(key);
+        }
+        return cache.put(key, key);
+    }
+
+    @Benchmark
+    public Cache create() {
+        if (implementation == Implementation.LFU) {
+            LFUCache<String, String> lfu = new LFUCache<>(capacity, 0.75f);
+            return new Cache(lfu::get, lfu::put);
+        }
+        ConcurrentLFUCache<String, String> lfu = new ConcurrentLFUCache<>(capacity, 0.75f);
+        return new Cache(lfu::get, lfu::put);
+    }
+
+    private static final class Cache {
+
+        private final UnaryOperator<String> get;
+        private final BinaryOperator<String> put;
+
+        Cache(UnaryOperator<String> get, BinaryOperator<String> put) {
+            this.get = get;
+            this.put = put;
+        }
+
+        String get(String key) {
+            return get.apply(key);
+        }
+
+        String put(String key, String value) {
+            return put.apply(key, value);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+}
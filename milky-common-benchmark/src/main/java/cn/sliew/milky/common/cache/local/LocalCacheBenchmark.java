@@ -0,0 +1,89 @@
+package cn.sliew.milky.common.cache.local;
+
+import cn.sliew.milky.common.benchmark.ZipfianGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read heavy workload on {@link Cache}, which promotes
+ * every hit in its LRU list.
+ * <p>
+ * Compare throughput over thread counts to see whether reads scale with cores, e.g.
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main LocalCacheBenchmark -t 32} against {@code -t 1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class LocalCacheBenchmark {
+
+    /**
+     * Fraction of operations which are {@link Cache#get(Object)}, others are
+     * {@link Cache#put(Object, Object)}.
+     */
+    @Param({"1.0", "0.9"})
+    private double readRatio;
+
+    @Param({"100000"})
+    private int keySpace;
+
+    /**
+     * Zipfian skew, {@code 0} means uniform.
+     */
+    @Param({"0.99"})
+    private double zipfTheta;
+
+    /**
+     * Cache maximum entries, defaults to half of {@link #keySpace} so that
+     * eviction takes part in the workload.
+     */
+    @Param({"50000"})
+    private long maximumSize;
+
+    private Cache<String, String> cache;
+    private String[] keys;
+    private ZipfianGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.generator = new ZipfianGenerator(keySpace, zipfTheta);
+        this.keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "key-" + i;
+        }
+        this.cache = CacheBuilder.<String, String>builder()
+                .setMaximumWeight(maximumSize)
+                .build();
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        for (long i = 0; i < maximumSize; i++) {
+            int index = (int) generator.next(random);
+            cache.put(keys[index], keys[index]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.invalidateAll();
+    }
+
+    @Benchmark
+    public String readWrite(ThreadState state) {
+        int index = (int) generator.next(state.random);
+        if (readRatio >= 1.0 || state.random.nextDouble() < readRatio) {
+            return cache.get(keys[index]);
+        }
+        cache.put(keys[index], keys[index]);
+        return null;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+}
@@ -0,0 +1,83 @@
+package cn.sliew.milky.common.cache.lru;
+
+import cn.sliew.milky.common.benchmark.ZipfianGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention of {@link LRUCache}, whose reads take its lock, against {@link ConcurrentLRUCache}.
+ * <p>
+ * Run each thread count separately, e.g.
+ * {@code for t in 1 2 4 8 16 32 64; do java -cp benchmarks.jar org.openjdk.jmh.Main LRUCacheBenchmark -t $t; done}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class LRUCacheBenchmark {
+
+    public enum Implementation {
+        LRU,
+        CONCURRENT_LRU
+    }
+
+    @Param
+    private Implementation implementation;
+
+    /**
+     * Fraction of operations which are reads, others are writes.
+     */
+    @Param({"1.0", "0.9"})
+    private double readRatio;
+
+    @Param({"100000"})
+    private int keySpace;
+
+    @Param({"0.99"})
+    private double zipfTheta;
+
+    @Param({"10000"})
+    private int maxCapacity;
+
+    private Map<String, String> cache;
+    private String[] keys;
+    private ZipfianGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.generator = new ZipfianGenerator(keySpace, zipfTheta);
+        this.keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "key-" + i;
+        }
+        this.cache = implementation == Implementation.LRU
+                ? new LRUCache<>(maxCapacity)
+                : new ConcurrentLRUCache<>(maxCapacity);
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        for (int i = 0; i < maxCapacity; i++) {
+            int index = (int) generator.next(random);
+            cache.put(keys[index], keys[index]);
+        }
+    }
+
+    @Benchmark
+    public String readWrite(ThreadState state) {
+        String key = keys[(int) generator.next(state.random)];
+        if (readRatio >= 1.0 || state.random.nextDouble() < readRatio) {
+            return cache.get(key);
+        }
+        return cache.put(key, key);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+}
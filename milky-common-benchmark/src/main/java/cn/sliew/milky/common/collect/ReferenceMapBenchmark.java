@@ -0,0 +1,186 @@
+package cn.sliew.milky.common.collect;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weak reference maps under the workload of the decorated task map of a thread pool:
+ * every submitted task is put once, looked up on cancellation and left to garbage collection.
+ * <p>
+ * {@link ConcurrentReferenceHashMap} is compared to a {@link ConcurrentHashMap} of
+ * {@link WeakReference} keys expunged on writes. Weak entries of {@link ConcurrentReferenceHashMap}
+ * are not held by their keys and go with every collection, soft entries show reads hitting, e.g.
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main ReferenceMapBenchmark -t 4 -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ReferenceMapBenchmark {
+
+    public enum Implementation {
+        REFERENCE_HASH_MAP_WEAK,
+        REFERENCE_HASH_MAP_SOFT,
+        WEAK_KEY_CONCURRENT_HASH_MAP
+    }
+
+    @Param
+    private Implementation implementation;
+
+    /**
+     * Keys held strongly and read by {@link #get(ThreadState)}.
+     */
+    @Param({"10000"})
+    private int keySpace;
+
+    private ReferenceMap map;
+    private Object[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (implementation) {
+            case REFERENCE_HASH_MAP_WEAK:
+                map = new ReferenceHashMapAdapter(ConcurrentReferenceHashMap.ReferenceType.WEAK);
+                break;
+            case REFERENCE_HASH_MAP_SOFT:
+                map = new ReferenceHashMapAdapter(ConcurrentReferenceHashMap.ReferenceType.SOFT);
+                break;
+            case WEAK_KEY_CONCURRENT_HASH_MAP:
+                map = new WeakKeyConcurrentHashMap();
+                break;
+            default:
+                throw new IllegalStateException("unknown implementation: " + implementation);
+        }
+        keys = new Object[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = new Object();
+            map.put(keys[i], keys[i]);
+        }
+    }
+
+    @Benchmark
+    public Object get(ThreadState state) {
+        return map.get(keys[state.random.nextInt(keySpace)]);
+    }
+
+    @Benchmark
+    public Object putAndGet() {
+        Object task = new Object();
+        map.put(task, task);
+        return map.get(task);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+
+    private interface ReferenceMap {
+
+        Object get(Object key);
+
+        void put(Object key, Object value);
+    }
+
+    private static final class ReferenceHashMapAdapter implements ReferenceMap {
+
+        private final Map<Object, Object> map;
+
+        ReferenceHashMapAdapter(ConcurrentReferenceHashMap.ReferenceType referenceType) {
+            this.map = new ConcurrentReferenceHashMap<>(16, referenceType);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Keys are compared by identity, lookups use a plain {@link LookupKey} to not allocate references.
+     */
+    private static final class WeakKeyConcurrentHashMap implements ReferenceMap {
+
+        private final ConcurrentHashMap<Object, Object> map = new ConcurrentHashMap<>();
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+        @Override
+        public Object get(Object key) {
+            return map.get(new LookupKey(key));
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            expunge();
+            map.put(new WeakKey(key, queue), value);
+        }
+
+        private void expunge() {
+            Object ref;
+            while ((ref = queue.poll()) != null) {
+                map.remove(ref);
+            }
+        }
+    }
+
+    private static final class WeakKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Object key = get();
+            if (o instanceof LookupKey) {
+                return key != null && key == ((LookupKey) o).key;
+            }
+            return o instanceof WeakKey && key != null && key == ((WeakKey) o).get();
+        }
+    }
+
+    private static final class LookupKey {
+
+        private final Object key;
+
+        LookupKey(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof WeakKey && ((WeakKey) o).equals(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package cn.sliew.milky.common.recycler;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obtain and release throughput of the {@link Recycler} implementations, with
+ * {@code -prof gc} the {@code gc.alloc.rate.norm} shows what pooling saves, e.g.
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main RecyclerBenchmark -t 4 -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RecyclerBenchmark {
+
+    public enum Implementation {
+        NONE,
+        CONCURRENT_DEQUE,
+        THREAD_LOCAL
+    }
+
+    @Param
+    private Implementation implementation;
+
+    /**
+     * Size of the pooled {@code byte[]}.
+     */
+    @Param({"1024"})
+    private int size;
+
+    @Param({"256"})
+    private int maxSize;
+
+    private Recycler<byte[]> recycler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Source<byte[]> source = new AbstractSource<byte[]>() {
+            @Override
+            public byte[] newInstance() {
+                return new byte[size];
+            }
+
+            @Override
+            public void recycle(byte[] value) {
+            }
+        };
+        switch (implementation) {
+            case NONE:
+                recycler = new NoneRecycler<>(source);
+                break;
+            case CONCURRENT_DEQUE:
+                recycler = new ConcurrentDequeRecycler<>(source, maxSize);
+                break;
+            default:
+                recycler = new ThreadLocalRecycler<>(source, maxSize);
+        }
+    }
+
+    @Benchmark
+    public void obtainAndClose(Blackhole blackhole) {
+        Value<byte[]> value = recycler.obtain();
+        // escapes, as pooled objects do, so allocations are not eliminated
+        blackhole.consume(value.value());
+        value.close();
+    }
+}
@@ -0,0 +1,52 @@
+package cn.sliew.milky.common.timewheel;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedule and cancel throughput of {@link HashedWheelTimer}, as request timeouts do when
+ * responses arrive in time.
+ * <p>
+ * {@link #pending} long lived timeouts are scheduled up front, the timer worker keeps them
+ * while the benchmark threads submit and cancel, e.g.
+ * {@code java -cp benchmarks.jar org.openjdk.jmh.Main TimerBenchmark -t 4}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TimerBenchmark {
+
+    private static final TimerTask NOOP = timeout -> {
+    };
+
+    @Param({"0", "1000000"})
+    private int pending;
+
+    @Param({"1"})
+    private long tickMillis;
+
+    private HashedWheelTimer timer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.timer = new HashedWheelTimer(tickMillis, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < pending; i++) {
+            timer.newTimeout(NOOP, 1 + i % 3600, TimeUnit.SECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        Timeout timeout = timer.newTimeout(NOOP, 30, TimeUnit.SECONDS);
+        return timeout.cancel();
+    }
+}
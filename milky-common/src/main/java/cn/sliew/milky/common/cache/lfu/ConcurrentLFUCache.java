@@ -0,0 +1,97 @@
+package cn.sliew.milky.common.cache.lfu;
+
+/**
+ * Least frequently used cache for concurrent access.
+ * <p>
+ * Keys are striped by hash over {@code concurrencyLevel} {@link LFUCache} segments, each with
+ * its own lock and a share of the capacity, so threads touching different segments never
+ * contend. Frequencies and eviction are tracked per segment: an entry is evicted when it is
+ * among the least frequently used of its segment, and every segment frees
+ * {@code evictionFactor} of its own capacity once full.
+ */
+public class ConcurrentLFUCache<K, V> {
+
+    private static final int DEFAULT_MAX_CAPACITY = 1000;
+
+    private static final float DEFAULT_EVICTION_CAPACITY = 0.75f;
+
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private final LFUCache<K, V>[] segments;
+    private final int segmentMask;
+    private final int capacity;
+
+    public ConcurrentLFUCache() {
+        this(DEFAULT_MAX_CAPACITY, DEFAULT_EVICTION_CAPACITY);
+    }
+
+    public ConcurrentLFUCache(final int maxCapacity, final float evictionFactor) {
+        this(maxCapacity, evictionFactor, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a cache of {@code maxCapacity} entries split over segments. Unacceptable
+     * parameter values followed with {@link IllegalArgumentException}.
+     *
+     * @param maxCapacity      cache max capacity
+     * @param evictionFactor   fraction of a segment capacity freed by an eviction
+     * @param concurrencyLevel expected number of concurrently accessing threads, rounded up to a
+     *                         power of two segments but no more segments than entries
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLFUCache(final int maxCapacity, final float evictionFactor, final int concurrencyLevel) {
+        if (maxCapacity <= 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    maxCapacity);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Illegal concurrency level: " +
+                    concurrencyLevel);
+        }
+        int count = Integer.highestOneBit(Math.min(concurrencyLevel, MAX_SEGMENTS) * 2 - 1);
+        count = Math.min(count, Integer.highestOneBit(maxCapacity));
+        this.capacity = maxCapacity;
+        this.segments = new LFUCache[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = maxCapacity / count + (i < maxCapacity % count ? 1 : 0);
+            segments[i] = new LFUCache<>(segmentCapacity, evictionFactor);
+        }
+        this.segmentMask = count - 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public V put(final K key, final V value) {
+        return segmentFor(key).put(key, value);
+    }
+
+    public V remove(final K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    public V get(final K key) {
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Returns cache current size, the sum of segment sizes read one after another.
+     *
+     * @return cache size
+     */
+    public int getSize() {
+        int size = 0;
+        for (LFUCache<K, V> segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    private LFUCache<K, V> segmentFor(final K key) {
+        int hash = key.hashCode();
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = (hash >>> 16) ^ hash;
+        return segments[hash & segmentMask];
+    }
+}
@@ -4,12 +4,26 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Least frequently used cache with O(1) operations.
+ * <p>
+ * Entries of the same access frequency share a bucket, buckets form a list ordered by frequency
+ * and only exist while they hold entries, so an empty cache costs no more than its map whatever
+ * the capacity. A hit moves the entry to the bucket of the next frequency, creating it right
+ * after the current one if missing. Eviction takes the oldest entries of the least frequent
+ * buckets until {@code evictionFactor} of the capacity was freed.
+ * <p>
+ * All operations serialize on one lock, {@link ConcurrentLFUCache} stripes entries over several
+ * caches for concurrent access.
+ */
 public class LFUCache<K, V> {
 
-    private Map<K, CacheNode<K, V>> map;
-    private CacheDeque<K, V>[] freqTable;
+    private final Map<K, CacheNode<K, V>> map;
+    // sentinel of the circular bucket list, the least frequent bucket is next to it
+    private final FrequencyNode<K, V> frequencies = new FrequencyNode<>(-1);
 
     private final int capacity;
+    private final int maxFrequency;
     private int evictionCount;
     private int curSize = 0;
 
@@ -31,6 +45,10 @@ public class LFUCache<K, V> {
      * @param evictionFactor cache proceedEviction factor
      */
     public LFUCache(final int maxCapacity, final float evictionFactor) {
+        this(maxCapacity, evictionFactor, Integer.MAX_VALUE);
+    }
+
+    LFUCache(final int maxCapacity, final float evictionFactor, final int maxFrequency) {
         if (maxCapacity <= 0) {
             throw new IllegalArgumentException("Illegal initial capacity: " +
                     maxCapacity);
@@ -42,15 +60,8 @@ public class LFUCache<K, V> {
         }
         this.capacity = maxCapacity;
         this.evictionCount = (int) (capacity * evictionFactor);
+        this.maxFrequency = maxFrequency;
         this.map = new HashMap<>();
-        this.freqTable = new CacheDeque[capacity + 1];
-        for (int i = 0; i <= capacity; i++) {
-            freqTable[i] = new CacheDeque<K, V>();
-        }
-        for (int i = 0; i < capacity; i++) {
-            freqTable[i].nextDeque = freqTable[i + 1];
-        }
-        freqTable[capacity].nextDeque = freqTable[capacity];
     }
 
     public int getCapacity() {
@@ -61,16 +72,15 @@ public class LFUCache<K, V> {
         CacheNode<K, V> node;
         lock.lock();
         try {
-            if (map.containsKey(key)) {
-                node = map.get(key);
-                if (node != null) {
-                    CacheNode.withdrawNode(node);
-                }
+            node = map.get(key);
+            if (node != null) {
+                // a new value starts over as never read
                 node.value = value;
-                freqTable[0].addLastNode(node);
-                map.put(key, node);
+                node.owner.remove(node);
+                firstBucket().addLast(node);
             } else {
-                node = freqTable[0].addLast(key, value);
+                node = new CacheNode<>(key, value);
+                firstBucket().addLast(node);
                 map.put(key, node);
                 curSize++;
                 if (curSize > capacity) {
@@ -84,14 +94,12 @@ public class LFUCache<K, V> {
     }
 
     public V remove(final K key) {
-        CacheNode<K, V> node = null;
+        CacheNode<K, V> node;
         lock.lock();
         try {
-            if (map.containsKey(key)) {
-                node = map.remove(key);
-                if (node != null) {
-                    CacheNode.withdrawNode(node);
-                }
+            node = map.remove(key);
+            if (node != null) {
+                node.owner.remove(node);
                 curSize--;
             }
         } finally {
@@ -101,13 +109,22 @@ public class LFUCache<K, V> {
     }
 
     public V get(final K key) {
-        CacheNode<K, V> node = null;
+        CacheNode<K, V> node;
         lock.lock();
         try {
-            if (map.containsKey(key)) {
-                node = map.get(key);
-                CacheNode.withdrawNode(node);
-                node.owner.nextDeque.addLastNode(node);
+            node = map.get(key);
+            if (node != null) {
+                FrequencyNode<K, V> owner = node.owner;
+                // a saturated entry stays where it is, re-adding it would go to its bucket
+                // which is unlinked once the entry was the only one left
+                if (owner.frequency < maxFrequency) {
+                    FrequencyNode<K, V> next = owner.next;
+                    if (next.frequency != owner.frequency + 1) {
+                        next = owner.insertAfter(owner.frequency + 1);
+                    }
+                    owner.remove(node);
+                    next.addLast(node);
+                }
             }
         } finally {
             lock.unlock();
@@ -125,17 +142,15 @@ public class LFUCache<K, V> {
         int targetSize = capacity - evictionCount;
         int evictedElements = 0;
 
-        FREQ_TABLE_ITER_LOOP:
-        for (int i = 0; i <= capacity; i++) {
-            CacheNode<K, V> node;
-            while (!freqTable[i].isEmpty()) {
-                node = freqTable[i].pollFirst();
-                remove(node.key);
-                if (targetSize >= curSize) {
-                    break FREQ_TABLE_ITER_LOOP;
-                }
-                evictedElements++;
+        while (frequencies.next != frequencies) {
+            CacheNode<K, V> node = frequencies.next.first;
+            map.remove(node.key);
+            node.owner.remove(node);
+            curSize--;
+            if (targetSize >= curSize) {
+                break;
             }
+            evictedElements++;
         }
         return evictedElements;
     }
@@ -149,123 +164,90 @@ public class LFUCache<K, V> {
         return curSize;
     }
 
+    private FrequencyNode<K, V> firstBucket() {
+        FrequencyNode<K, V> first = frequencies.next;
+        return first.frequency == 0 ? first : frequencies.insertAfter(0);
+    }
+
     static class CacheNode<K, V> {
 
         CacheNode<K, V> prev;
         CacheNode<K, V> next;
         K key;
         V value;
-        CacheDeque owner;
-
-        CacheNode() {
-        }
+        FrequencyNode<K, V> owner;
 
         CacheNode(final K key, final V value) {
             this.key = key;
             this.value = value;
         }
-
-        /**
-         * This method takes specified node and reattaches it neighbors nodes
-         * links to each other, so specified node will no longer tied with them.
-         * Returns united node, returns null if argument is null.
-         *
-         * @param node note to retrieve
-         * @param <K>  key
-         * @param <V>  value
-         * @return retrieved node
-         */
-        static <K, V> CacheNode<K, V> withdrawNode(
-                final CacheNode<K, V> node) {
-            if (node != null && node.prev != null) {
-                node.prev.next = node.next;
-                if (node.next != null) {
-                    node.next.prev = node.prev;
-                }
-            }
-            return node;
-        }
-
     }
 
     /**
-     * Custom deque implementation of LIFO type. Allows to place element at top
-     * of deque and poll very last added elements. An arbitrary node from the
-     * deque can be removed with {@link CacheNode#withdrawNode(CacheNode)}
-     * method.
+     * A bucket of the entries read {@code frequency} times, oldest entry first. A bucket
+     * unlinks itself from the bucket list once its last entry is removed.
      *
      * @param <K> key
      * @param <V> value
      */
-    static class CacheDeque<K, V> {
+    static class FrequencyNode<K, V> {
 
-        CacheNode<K, V> last;
+        final int frequency;
+        FrequencyNode<K, V> prev = this;
+        FrequencyNode<K, V> next = this;
         CacheNode<K, V> first;
-        CacheDeque<K, V> nextDeque;
+        CacheNode<K, V> last;
 
-        /**
-         * Constructs list and initializes last and first pointers.
-         */
-        CacheDeque() {
-            last = new CacheNode<>();
-            first = new CacheNode<>();
-            last.next = first;
-            first.prev = last;
+        FrequencyNode(final int frequency) {
+            this.frequency = frequency;
         }
 
         /**
-         * Puts the node with specified key and value at the end of the deque
-         * and returns node.
+         * Links a new empty bucket of {@code frequency} after this one and returns it.
          *
-         * @param key   key
-         * @param value value
-         * @return added node
+         * @param frequency frequency of the new bucket
+         * @return added bucket
          */
-        CacheNode<K, V> addLast(final K key, final V value) {
-            CacheNode<K, V> node = new CacheNode<>(key, value);
-            node.owner = this;
-            node.next = last.next;
-            node.prev = last;
-            node.next.prev = node;
-            last.next = node;
-            return node;
+        FrequencyNode<K, V> insertAfter(final int frequency) {
+            FrequencyNode<K, V> bucket = new FrequencyNode<>(frequency);
+            bucket.prev = this;
+            bucket.next = next;
+            next.prev = bucket;
+            next = bucket;
+            return bucket;
         }
 
-        CacheNode<K, V> addLastNode(final CacheNode<K, V> node) {
+        void addLast(final CacheNode<K, V> node) {
             node.owner = this;
-            node.next = last.next;
             node.prev = last;
-            node.next.prev = node;
-            last.next = node;
-            return node;
-        }
-
-        /**
-         * Retrieves and removes the first node of this deque.
-         *
-         * @return removed node
-         */
-        CacheNode<K, V> pollFirst() {
-            CacheNode<K, V> node = null;
-            if (first.prev != last) {
-                node = first.prev;
-                first.prev = node.prev;
-                first.prev.next = first;
-                node.prev = null;
-                node.next = null;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
             }
-            return node;
+            last = node;
         }
 
-        /**
-         * Checks if link to the last node points to link to the first node.
-         *
-         * @return is deque empty
-         */
-        boolean isEmpty() {
-            return last.next == first;
+        void remove(final CacheNode<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.owner = null;
+            if (first == null) {
+                prev.next = next;
+                next.prev = prev;
+            }
         }
-
     }
 
-}
\ No newline at end of file
+}
@@ -4,8 +4,12 @@ import cn.sliew.milky.common.collect.Tuple;
 import cn.sliew.milky.common.concurrent.ReleasableLock;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,22 +27,24 @@ import java.util.function.ToLongBiFunction;
  * accept reduced write performance in exchange for easy-to-understand code. Cache statistics for hits, misses and
  * evictions are exposed.
  * <p>
- * The design of the cache is relatively simple. The cache is segmented into 256 segments which are backed by HashMaps.
- * Each segment is protected by a re-entrant read/write lock. The read/write locks permit multiple concurrent readers
- * without contention, and the segments gives us write throughput without impacting readers (so readers are blocked only
- * if they are reading a segment that a writer is writing to).
+ * The design of the cache is relatively simple. The cache is segmented into 256 segments which are backed by
+ * ConcurrentHashMaps. Readers never lock a segment, writers of a segment are serialized by a re-entrant lock.
  * <p>
  * The LRU functionality is backed by a single doubly-linked list chaining the entries in order of insertion. This
- * LRU list is protected by a lock that serializes all writes to it. There are opportunities for improvements
- * here if write throughput is a concern.
- * <ol>
- * <li>LRU list mutations could be inserted into a blocking queue that a single thread is reading from
- * and applying to the LRU list.</li>
- * <li>Promotions could be deferred for entries that were "recently" promoted.</li>
- * <li>Locks on the list could be taken per node being modified instead of globally.</li>
- * </ol>
+ * LRU list is protected by a lock that serializes all writes to it. Readers don't take it: a hit is recorded into a
+ * striped, lossy {@link ReadBuffer} and the hit entries are moved to the head of the list in batches by whichever
+ * thread wins a try-lock on the LRU list once a stripe is full. Insertions are queued into a bounded write buffer and
+ * applied the same way, a writer finding the write buffer full applies the pending insertions itself under the lock.
+ * So under concurrency {@link #count()}, {@link #weight()} and the LRU order may briefly lag behind operations
+ * of other threads, until the thread holding the LRU lock drains the buffers.
  * <p>
- * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
+ * Entries beyond the maximum weight are evicted per {@link EvictionPolicy}, least recently used first by default.
+ * With {@link EvictionPolicy#W_TINY_LFU} the entries are kept in three LRU lists, a window taking 1% of the maximum
+ * weight, and a probation and a protected segment sharing the rest 20/80. The frequency of accesses is counted in a
+ * {@link FrequencySketch}, an entry leaving the window is admitted to probation only if it is more frequent than the
+ * probation entry it would evict, so one scan over cold keys can't flush the working set.
+ * <p>
+ * Evictions only occur after a drain of the buffers (meaning a cache insertion, a full read buffer, or a manual
  * invalidation) or an explicit call to {@link #refresh()}.
  *
  * @param <K> The type of the keys
@@ -74,6 +80,12 @@ public class Cache<K, V> {
     private RemovalListener<K, V> removalListener = notification -> {
     };
 
+    // the eviction policy
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+    // the access frequencies, present with W_TINY_LFU
+    private FrequencySketch sketch;
+
     // use CacheBuilder to construct
     Cache() {
     }
@@ -121,6 +133,17 @@ public class Cache<K, V> {
         this.removalListener = removalListener;
     }
 
+    void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        Objects.requireNonNull(evictionPolicy);
+        this.evictionPolicy = evictionPolicy;
+        this.sketch = evictionPolicy == EvictionPolicy.W_TINY_LFU ? new FrequencySketch() : null;
+    }
+
+    // pkg-private for testing
+    EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
     /**
      * The relative time used to track time-based evictions.
      *
@@ -144,6 +167,8 @@ public class Cache<K, V> {
         volatile long accessTime;
         Entry<K, V> before;
         Entry<K, V> after;
+        AccessOrder<K, V> accessOrder;
+        long weight;
         State state = State.NEW;
 
         Entry(K key, V value, long writeTime) {
@@ -153,10 +178,84 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * A doubly-linked list of entries, the most recently used entry at its head.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    static class AccessOrder<K, V> {
+        Entry<K, V> head;
+        Entry<K, V> tail;
+        // the weight of the entries in the list
+        long weight;
+
+        void linkAtHead(Entry<K, V> entry) {
+            Entry<K, V> h = head;
+            entry.before = null;
+            entry.after = head;
+            head = entry;
+            if (h == null) {
+                tail = entry;
+            } else {
+                h.before = entry;
+            }
+            entry.accessOrder = this;
+            weight += entry.weight;
+        }
+
+        void unlink(Entry<K, V> entry) {
+            assert entry.accessOrder == this;
+
+            final Entry<K, V> before = entry.before;
+            final Entry<K, V> after = entry.after;
+
+            if (before == null) {
+                // removing the head
+                assert head == entry;
+                head = after;
+                if (head != null) {
+                    head.before = null;
+                }
+            } else {
+                // removing inner element
+                before.after = after;
+                entry.before = null;
+            }
+
+            if (after == null) {
+                // removing tail
+                assert tail == entry;
+                tail = before;
+                if (tail != null) {
+                    tail.after = null;
+                }
+            } else {
+                // removing inner element
+                after.before = before;
+                entry.after = null;
+            }
+            entry.accessOrder = null;
+            weight -= entry.weight;
+        }
+
+        void moveToHead(Entry<K, V> entry) {
+            if (head != entry) {
+                unlink(entry);
+                linkAtHead(entry);
+            }
+        }
+
+        void clear() {
+            head = tail = null;
+            weight = 0;
+        }
+    }
+
     /**
      * A cache segment.
      * <p>
-     * A CacheSegment is backed by a HashMap and is protected by a read/write lock.
+     * A CacheSegment is backed by a ConcurrentHashMap, mutations are protected by a read/write lock.
      *
      * @param <K> the type of the keys
      * @param <V> the type of the values
@@ -165,10 +264,9 @@ public class Cache<K, V> {
         // read/write lock protecting mutations to the segment
         ReadWriteLock segmentLock = new ReentrantReadWriteLock();
 
-        ReleasableLock readLock = new ReleasableLock(segmentLock.readLock());
         ReleasableLock writeLock = new ReleasableLock(segmentLock.writeLock());
 
-        Map<K, CompletableFuture<Entry<K, V>>> map = new HashMap<>();
+        volatile Map<K, CompletableFuture<Entry<K, V>>> map = new ConcurrentHashMap<>();
 
         SegmentStats segmentStats = new SegmentStats();
 
@@ -183,10 +281,7 @@ public class Cache<K, V> {
          * @return the entry if there was one, otherwise null
          */
         Entry<K, V> get(K key, long now, Predicate<Entry<K, V>> isExpired, Consumer<Entry<K, V>> onExpiration) {
-            CompletableFuture<Entry<K, V>> future;
-            try (ReleasableLock ignored = readLock.acquire()) {
-                future = map.get(key);
-            }
+            CompletableFuture<Entry<K, V>> future = map.get(key);
             if (future != null) {
                 Entry<K, V> entry;
                 try {
@@ -291,6 +386,33 @@ public class Cache<K, V> {
             }
         }
 
+        /**
+         * remove an entry from the segment iff the key is still associated with this very entry, an equal
+         * value of a newer entry waiting in the write buffer must stay
+         *
+         * @param entry     the entry to remove from the cache
+         * @param onRemoval a callback for the removed entry
+         */
+        void remove(Entry<K, V> entry, Consumer<CompletableFuture<Entry<K, V>>> onRemoval) {
+            CompletableFuture<Entry<K, V>> future;
+            boolean removed = false;
+            try (ReleasableLock ignored = writeLock.acquire()) {
+                future = map.get(entry.key);
+                try {
+                    if (future != null && future.isDone() && future.get() == entry) {
+                        removed = map.remove(entry.key, future);
+                    }
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            if (removed) {
+                segmentStats.eviction();
+                onRemoval.accept(future);
+            }
+        }
+
         private static class SegmentStats {
             private final LongAdder hits = new LongAdder();
             private final LongAdder misses = new LongAdder();
@@ -320,12 +442,25 @@ public class Cache<K, V> {
         }
     }
 
-    Entry<K, V> head;
-    Entry<K, V> tail;
+    // the LRU lists, plain LRU keeps all entries in probation
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedOrder = new AccessOrder<>();
+
+    // the lists in iteration order
+    private final List<AccessOrder<K, V>> accessOrders = Arrays.asList(window, protectedOrder, probation);
 
     // lock protecting mutations to the LRU list
     private final ReleasableLock lruLock = new ReleasableLock(new ReentrantLock());
 
+    static final int WRITE_BUFFER_SIZE = 1024;
+
+    // hits waiting to be promoted in the LRU list
+    private final ReadBuffer<Entry<K, V>> readBuffer = new ReadBuffer<>();
+
+    // insertions waiting to be linked into the LRU list
+    private final BlockingQueue<Runnable> writeBuffer = new ArrayBlockingQueue<>(WRITE_BUFFER_SIZE);
+
     /**
      * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
      *
@@ -343,7 +478,9 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            if (readBuffer.offer(entry)) {
+                tryDrainBuffers(now);
+            }
             return entry.value;
         }
     }
@@ -452,18 +589,69 @@ public class Cache<K, V> {
     private void put(K key, V value, long now) {
         CacheSegment<K, V> segment = getCacheSegment(key);
         Tuple<Entry<K, V>, Entry<K, V>> tuple = segment.put(key, value, now);
-        boolean replaced = false;
-        try (ReleasableLock ignored = lruLock.acquire()) {
-            if (tuple.v2() != null && tuple.v2().state == State.EXISTING) {
-                if (unlink(tuple.v2())) { //NOPMD
-                    replaced = true;
+        afterWrite(() -> {
+            Entry<K, V> existing = tuple.v2();
+            if (existing != null) {
+                // the existing entry may still wait in the write buffer, it must never be linked then
+                boolean replaced = existing.state == State.NEW || unlink(existing);
+                existing.state = State.DELETED;
+                if (replaced) {
+                    removalListener.onRemoval(new RemovalNotification<>(existing.key, existing.value,
+                            RemovalNotification.RemovalReason.REPLACED));
                 }
             }
-            promote(tuple.v1(), now);
+            if (tuple.v1().state == State.NEW) {
+                linkAtHead(tuple.v1());
+            }
+        }, now);
+    }
+
+    /**
+     * Queues an LRU list mutation, the write buffer is drained right away unless another thread drains it. A
+     * full write buffer makes the writer wait for the LRU lock and apply its mutation itself.
+     */
+    private void afterWrite(Runnable task, long now) {
+        if (writeBuffer.offer(task)) {
+            tryDrainBuffers(now);
+            return;
         }
-        if (replaced) {
-            removalListener.onRemoval(new RemovalNotification<>(tuple.v2().key, tuple.v2().value,
-                    RemovalNotification.RemovalReason.REPLACED));
+        try (ReleasableLock ignored = lruLock.acquire()) {
+            drainBuffers();
+            task.run();
+            evict(now);
+        }
+    }
+
+    /**
+     * Drains the read and write buffers unless another thread holds the LRU lock, the holder drains mutations
+     * queued meanwhile before it leaves.
+     */
+    private void tryDrainBuffers(long now) {
+        do {
+            if (!lruLock.tryAcquire()) {
+                return;
+            }
+            try {
+                drainBuffers();
+                evict(now);
+            } finally {
+                lruLock.close();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void drainBuffers() {
+        assert lruLock.isHeldByCurrentThread();
+
+        // reads recorded before queued writes were applied are older, promote them first
+        readBuffer.drainTo(entry -> {
+            if (entry.state == State.EXISTING) {
+                onAccess(entry);
+            }
+        });
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
         }
     }
 
@@ -509,7 +697,7 @@ public class Cache<K, V> {
      * {@link RemovalNotification.RemovalReason} INVALIDATED.
      */
     public void invalidateAll() {
-        Entry<K, V> h;
+        List<Entry<K, V>> heads = new ArrayList<>(accessOrders.size());
 
         boolean[] haveSegmentLock = new boolean[NUMBER_OF_SEGMENTS];
         try {
@@ -518,14 +706,17 @@ public class Cache<K, V> {
                 haveSegmentLock[i] = true;
             }
             try (ReleasableLock ignored = lruLock.acquire()) {
-                h = head;
-                Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
-                Entry<K, V> current = head;
-                while (current != null) {
-                    current.state = State.DELETED;
-                    current = current.after;
+                drainBuffers();
+                Arrays.stream(segments).forEach(segment -> segment.map = new ConcurrentHashMap<>());
+                for (AccessOrder<K, V> accessOrder : accessOrders) {
+                    heads.add(accessOrder.head);
+                    Entry<K, V> current = accessOrder.head;
+                    while (current != null) {
+                        current.state = State.DELETED;
+                        current = current.after;
+                    }
+                    accessOrder.clear();
                 }
-                head = tail = null;
                 count = 0;
                 weight = 0;
             }
@@ -536,9 +727,11 @@ public class Cache<K, V> {
                 }
             }
         }
-        while (h != null) {
-            removalListener.onRemoval(new RemovalNotification<>(h.key, h.value, RemovalNotification.RemovalReason.INVALIDATED));
-            h = h.after;
+        for (Entry<K, V> h : heads) {
+            while (h != null) {
+                removalListener.onRemoval(new RemovalNotification<>(h.key, h.value, RemovalNotification.RemovalReason.INVALIDATED));
+                h = h.after;
+            }
         }
     }
 
@@ -548,6 +741,7 @@ public class Cache<K, V> {
     public void refresh() {
         long now = now();
         try (ReleasableLock ignored = lruLock.acquire()) {
+            drainBuffers();
             evict(now);
         }
     }
@@ -575,11 +769,12 @@ public class Cache<K, V> {
      * to the cache (except for {@link Iterator#remove()}. The result of iteration under any other mutation is
      * undefined.
      *
-     * @return an LRU-ordered {@link Iterable} over the keys in the cache
+     * @return an LRU-ordered {@link Iterable} over the keys in the cache, with {@link EvictionPolicy#W_TINY_LFU} the
+     * window, protected and probation entries follow each other
      */
     public Iterable<K> keys() {
         return () -> new Iterator<K>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator(drainedHeads());
 
             @Override
             public boolean hasNext() {
@@ -603,11 +798,12 @@ public class Cache<K, V> {
      * to the cache (except for {@link Iterator#remove()}. The result of iteration under any other mutation is
      * undefined.
      *
-     * @return an LRU-ordered {@link Iterable} over the values in the cache
+     * @return an LRU-ordered {@link Iterable} over the values in the cache, with {@link EvictionPolicy#W_TINY_LFU} the
+     * window, protected and probation entries follow each other
      */
     public Iterable<V> values() {
         return () -> new Iterator<V>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator(drainedHeads());
 
             @Override
             public boolean hasNext() {
@@ -626,13 +822,28 @@ public class Cache<K, V> {
         };
     }
 
+    private Deque<Entry<K, V>> drainedHeads() {
+        try (ReleasableLock ignored = lruLock.acquire()) {
+            drainBuffers();
+            Deque<Entry<K, V>> heads = new ArrayDeque<>(accessOrders.size());
+            for (AccessOrder<K, V> accessOrder : accessOrders) {
+                if (accessOrder.head != null) {
+                    heads.add(accessOrder.head);
+                }
+            }
+            return heads;
+        }
+    }
+
     private class CacheIterator implements Iterator<Entry<K, V>> {
         private Entry<K, V> current;
         private Entry<K, V> next;
+        private final Deque<Entry<K, V>> heads;
 
-        CacheIterator(Entry<K, V> head) {
-            current = null;
-            next = head;
+        CacheIterator(Deque<Entry<K, V>> heads) {
+            this.current = null;
+            this.heads = heads;
+            this.next = heads.poll();
         }
 
         @Override
@@ -644,6 +855,9 @@ public class Cache<K, V> {
         public Entry<K, V> next() {
             current = next;
             next = next.after;
+            if (next == null) {
+                next = heads.poll();
+            }
             return current;
         }
 
@@ -652,7 +866,7 @@ public class Cache<K, V> {
             Entry<K, V> entry = current;
             if (entry != null) {
                 CacheSegment<K, V> segment = getCacheSegment(entry.key);
-                segment.remove(entry.key, entry.value, f -> {
+                segment.remove(entry, f -> {
                 });
                 try (ReleasableLock ignored = lruLock.acquire()) {
                     current = null;
@@ -712,7 +926,7 @@ public class Cache<K, V> {
                     promoted = false;
                     break;
                 case EXISTING:
-                    relinkAtHead(entry);
+                    onAccess(entry);
                     break;
                 case NEW:
                     linkAtHead(entry);
@@ -728,9 +942,72 @@ public class Cache<K, V> {
     private void evict(long now) {
         assert lruLock.isHeldByCurrentThread();
 
-        while (tail != null && shouldPrune(tail, now)) {
-            evictEntry(tail);
+        for (AccessOrder<K, V> accessOrder : accessOrders) {
+            while (accessOrder.tail != null && isExpired(accessOrder.tail, now)) {
+                evictEntry(accessOrder.tail);
+            }
+        }
+        if (sketch != null && maximumWeight != -1) {
+            evictFromWindow();
+        }
+        while (exceedsWeight()) {
+            Entry<K, V> victim = coldest();
+            if (victim == null) {
+                break;
+            }
+            evictEntry(victim);
+        }
+    }
+
+    /**
+     * Moves entries overflowing the window to probation, an entry is kept only if it is more frequent than the
+     * probation entry it would evict.
+     */
+    private void evictFromWindow() {
+        while (window.weight > windowMaximum()) {
+            Entry<K, V> candidate = window.tail;
+            window.unlink(candidate);
+            probation.linkAtHead(candidate);
+            if (!exceedsWeight()) {
+                continue;
+            }
+            Entry<K, V> victim = probation.tail != candidate ? probation.tail : protectedOrder.tail;
+            if (victim == null || !admit(candidate.key, victim.key)) {
+                victim = candidate;
+            }
+            evictEntry(victim);
+        }
+    }
+
+    private boolean admit(K candidate, K victim) {
+        int candidateFrequency = sketch.frequency(candidate);
+        int victimFrequency = sketch.frequency(victim);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency <= 5) {
+            return false;
         }
+        // a victim kept hot by colliding keys must not reject every warm candidate
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private Entry<K, V> coldest() {
+        if (probation.tail != null) {
+            return probation.tail;
+        }
+        if (protectedOrder.tail != null) {
+            return protectedOrder.tail;
+        }
+        return window.tail;
+    }
+
+    private long windowMaximum() {
+        return Math.max(1, maximumWeight / 100);
+    }
+
+    private long protectedMaximum() {
+        return (maximumWeight - windowMaximum()) * 4 / 5;
     }
 
     private void evictEntry(Entry<K, V> entry) {
@@ -738,7 +1015,7 @@ public class Cache<K, V> {
 
         CacheSegment<K, V> segment = getCacheSegment(entry.key);
         if (segment != null) {
-            segment.remove(entry.key, entry.value, f -> {
+            segment.remove(entry, f -> {
             });
         }
         delete(entry, RemovalNotification.RemovalReason.EVICTED);
@@ -747,15 +1024,14 @@ public class Cache<K, V> {
     private void delete(Entry<K, V> entry, RemovalNotification.RemovalReason removalReason) {
         assert lruLock.isHeldByCurrentThread();
 
-        if (unlink(entry)) {
+        // an entry still waiting in the write buffer is removed before it was linked
+        boolean removed = entry.state == State.NEW || unlink(entry);
+        entry.state = State.DELETED;
+        if (removed) {
             removalListener.onRemoval(new RemovalNotification<>(entry.key, entry.value, removalReason));
         }
     }
 
-    private boolean shouldPrune(Entry<K, V> entry, long now) {
-        return exceedsWeight() || isExpired(entry, now);
-    }
-
     private boolean exceedsWeight() {
         return maximumWeight != -1 && weight > maximumWeight;
     }
@@ -770,37 +1046,9 @@ public class Cache<K, V> {
         assert lruLock.isHeldByCurrentThread();
 
         if (entry.state == State.EXISTING) {
-            final Entry<K, V> before = entry.before;
-            final Entry<K, V> after = entry.after;
-
-            if (before == null) {
-                // removing the head
-                assert head == entry;
-                head = after;
-                if (head != null) {
-                    head.before = null;
-                }
-            } else {
-                // removing inner element
-                before.after = after;
-                entry.before = null;
-            }
-
-            if (after == null) {
-                // removing tail
-                assert tail == entry;
-                tail = before;
-                if (tail != null) {
-                    tail.after = null;
-                }
-            } else {
-                // removing inner element
-                after.before = before;
-                entry.after = null;
-            }
-
+            entry.accessOrder.unlink(entry);
             count--;
-            weight -= weigher.applyAsLong(entry.key, entry.value);
+            weight -= entry.weight;
             entry.state = State.DELETED;
             return true;
         } else {
@@ -811,27 +1059,48 @@ public class Cache<K, V> {
     private void linkAtHead(Entry<K, V> entry) {
         assert lruLock.isHeldByCurrentThread();
 
-        Entry<K, V> h = head;
-        entry.before = null;
-        entry.after = head;
-        head = entry;
-        if (h == null) {
-            tail = entry;
+        entry.weight = weigher.applyAsLong(entry.key, entry.value);
+        if (sketch != null) {
+            window.linkAtHead(entry);
+            if (count >= sketch.capacity() && sketch.capacity() < maximumWeight) {
+                sketch.ensureCapacity(Math.min(2L * sketch.capacity(), maximumWeight));
+            }
+            sketch.increment(entry.key);
         } else {
-            h.before = entry;
+            probation.linkAtHead(entry);
         }
 
         count++;
-        weight += weigher.applyAsLong(entry.key, entry.value);
+        weight += entry.weight;
         entry.state = State.EXISTING;
     }
 
-    private void relinkAtHead(Entry<K, V> entry) {
+    /**
+     * Moves an accessed entry to the head of its list, with {@link EvictionPolicy#W_TINY_LFU} a probation entry
+     * moves to protected and the protected entries overflowing fall back to probation.
+     */
+    private void onAccess(Entry<K, V> entry) {
         assert lruLock.isHeldByCurrentThread();
 
-        if (head != entry) {
-            unlink(entry);
-            linkAtHead(entry);
+        if (sketch == null) {
+            entry.accessOrder.moveToHead(entry);
+            return;
+        }
+        sketch.increment(entry.key);
+        if (entry.accessOrder != probation) {
+            entry.accessOrder.moveToHead(entry);
+            return;
+        }
+        probation.unlink(entry);
+        protectedOrder.linkAtHead(entry);
+        if (maximumWeight == -1) {
+            return;
+        }
+        long protectedMaximum = protectedMaximum();
+        while (protectedOrder.weight > protectedMaximum && protectedOrder.tail != entry) {
+            Entry<K, V> demoted = protectedOrder.tail;
+            protectedOrder.unlink(demoted);
+            probation.linkAtHead(demoted);
         }
     }
 
@@ -11,6 +11,7 @@ public class CacheBuilder<K, V> {
     private long expireAfterWriteNanos = -1;
     private ToLongBiFunction<K, V> weigher;
     private RemovalListener<K, V> removalListener;
+    private EvictionPolicy evictionPolicy;
 
     public static <K, V> CacheBuilder<K, V> builder() {
         return new CacheBuilder<>();
@@ -71,6 +72,18 @@ public class CacheBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Sets the policy choosing the entries evicted once the maximum weight is exceeded, {@link EvictionPolicy#LRU}
+     * by default.
+     *
+     * @param evictionPolicy The eviction policy. Must not be {@code null}.
+     */
+    public CacheBuilder<K, V> setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        Objects.requireNonNull(evictionPolicy);
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
     public Cache<K, V> build() {
         Cache<K, V> cache = new Cache<>();
         if (maximumWeight != -1) {
@@ -88,6 +101,9 @@ public class CacheBuilder<K, V> {
         if (removalListener != null) {
             cache.setRemovalListener(removalListener);
         }
+        if (evictionPolicy != null) {
+            cache.setEvictionPolicy(evictionPolicy);
+        }
         return cache;
     }
 }
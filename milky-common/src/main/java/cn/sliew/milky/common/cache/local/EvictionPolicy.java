@@ -0,0 +1,22 @@
+package cn.sliew.milky.common.cache.local;
+
+/**
+ * How {@link Cache} picks entries to evict once it exceeds its maximum weight.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry. A scan over cold keys flushes the whole
+     * working set.
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU. New entries enter a small LRU window, entries leaving the window
+     * are admitted to the main space only if they were used more often than the entry
+     * they would evict, judged by a frequency sketch with periodic aging. The main space
+     * is a segmented LRU, entries hit in its probation segment move to its protected
+     * segment.
+     */
+    W_TINY_LFU
+}
@@ -0,0 +1,107 @@
+package cn.sliew.milky.common.cache.local;
+
+/**
+ * A count-min sketch of the popularity of entries, with 4-bit counters and aging.
+ * <p>
+ * Every long of the table holds 16 counters. An element maps to one long group of 4 counters
+ * per hash function and its frequency is the minimum of them, capped at 15. Once 10 times
+ * the table length increments were counted all counters are halved, so the sketch follows
+ * changing popularity.
+ * <p>
+ * Not thread safe, callers synchronize. {@link Cache} uses it under its LRU lock.
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 22;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    public FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /**
+     * Resizes the table for {@code maximumSize} elements, which clears all counters.
+     */
+    public void ensureCapacity(long maximumSize) {
+        int capacity = (int) Math.min(Math.max(maximumSize, 1L), MAXIMUM_CAPACITY);
+        if (table != null && table.length >= capacity) {
+            return;
+        }
+        table = new long[Integer.highestOneBit(capacity * 2 - 1)];
+        tableMask = table.length - 1;
+        sampleSize = 10 * table.length;
+        size = 0;
+    }
+
+    public int capacity() {
+        return table.length;
+    }
+
+    public int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    public void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves all counters, odd counters lose their remainder.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
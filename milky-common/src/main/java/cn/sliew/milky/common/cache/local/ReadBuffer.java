@@ -0,0 +1,93 @@
+package cn.sliew.milky.common.cache.local;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A striped, lossy buffer of reads.
+ * <p>
+ * Threads are spread over stripes by thread id, each stripe is a ring buffer with a single
+ * consumer. Producers claim a slot by a CAS on the write counter and drop the element
+ * when the CAS fails or the stripe is full, so recording a read never blocks nor spins.
+ * Losing a read only loses a recency update, which is acceptable for an LRU policy.
+ *
+ * @param <E> the type of the buffered elements
+ */
+final class ReadBuffer<E> {
+
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private static final int MAX_STRIPES = 64;
+
+    private final Stripe<E>[] stripes;
+    private final int mask;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.min(MAX_STRIPES, 4 * Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * Adds {@code e} to the stripe of the calling thread.
+     *
+     * @return {@code true} if the stripe is full and should be drained
+     */
+    boolean offer(E e) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(hash >>> 16) & mask].offer(e);
+    }
+
+    /**
+     * Hands all buffered elements to {@code consumer}, must be called by one thread at a time.
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static final class Stripe<E> {
+
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter = 0L;
+
+        boolean offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= STRIPE_SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) tail & STRIPE_MASK, e);
+                return tail - head + 1 >= STRIPE_SIZE;
+            }
+            return false;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            while (head < tail) {
+                int index = (int) head & STRIPE_MASK;
+                E e = buffer.get(index);
+                if (e == null) {
+                    // slot claimed but not published yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounter = head;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package cn.sliew.milky.common.cache.lru;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Approximate LRU cache for concurrent access, a drop-in replacement of {@link LRUCache}.
+ * <p>
+ * Entries live in a {@link ConcurrentHashMap}, a read only sets the referenced bit of the entry, so reads never
+ * lock and writes only lock their hash bin. Eviction approximates LRU with the CLOCK algorithm: entries queue up
+ * in insertion order, the hand takes the oldest one, an entry referenced since the hand last passed loses its bit
+ * and gets a second chance at the tail, otherwise it is evicted. Only writers growing the cache beyond
+ * {@code maxCapacity} take the eviction lock.
+ * <p>
+ * Unlike {@link LRUCache} null keys and values are not permitted.
+ */
+public class ConcurrentLRUCache<K, V> extends AbstractMap<K, V> {
+
+    private static final int DEFAULT_MAX_CAPACITY = 1000;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    // the clock, the hand is at the head
+    private final Queue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // removed nodes still queued in the clock, guarded by evictionLock
+    private int removedInClock = 0;
+    private volatile int maxCapacity;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    public ConcurrentLRUCache() {
+        this(DEFAULT_MAX_CAPACITY);
+    }
+
+    public ConcurrentLRUCache(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Object[] previous = new Object[1];
+        Node<K, V> added = new Node<>(key, value);
+        Node<K, V> node = map.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return added;
+            }
+            previous[0] = existing.value;
+            existing.value = value;
+            existing.referenced = true;
+            return existing;
+        });
+        if (node == added) {
+            clock.offer(added);
+            if (map.size() > maxCapacity) {
+                evict();
+            }
+        }
+        @SuppressWarnings("unchecked")
+        V result = (V) previous[0];
+        return result;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        onRemoved(node);
+        return node.value;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node : map.values()) {
+                node.removed = true;
+            }
+            map.clear();
+            clock.clear();
+            removedInClock = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Shrinking the capacity takes effect on the next put of a new key.
+     */
+    public void setMaxCapacity(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    private void evict() {
+        evictionLock.lock();
+        try {
+            Node<K, V> node;
+            while (map.size() > maxCapacity && (node = clock.poll()) != null) {
+                if (node.removed) {
+                    removedInClock--;
+                } else if (node.referenced) {
+                    node.referenced = false;
+                    clock.offer(node);
+                } else if (map.remove(node.key, node)) {
+                    node.removed = true;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void onRemoved(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            node.removed = true;
+            // purge removed nodes once they outnumber the live ones, so remove without eviction does not leak
+            if (++removedInClock > map.size() && removedInClock > 16) {
+                clock.removeIf(n -> n.removed);
+                removedInClock = 0;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+        volatile V value;
+        volatile boolean referenced;
+        // set under evictionLock once the node left the map
+        volatile boolean removed;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            Iterator<Node<K, V>> nodes = map.values().iterator();
+            return new Iterator<Map.Entry<K, V>>() {
+                private Node<K, V> current;
+
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    current = nodes.next();
+                    return new SimpleImmutableEntry<>(current.key, current.value);
+                }
+
+                @Override
+                public void remove() {
+                    if (current == null) {
+                        throw new IllegalStateException();
+                    }
+                    if (map.remove(current.key, current)) {
+                        onRemoved(current);
+                    }
+                    current = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentLRUCache.this.clear();
+        }
+    }
+}
@@ -6,7 +6,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 最常见的缓存实现方式，缺点是缺少缓存过期功能
- * dubbo的实现添加了并发访问的功能
+ * dubbo的实现添加了并发访问的功能，但所有读写共用一把锁，并发读写使用{@link ConcurrentLRUCache}
  */
 public class LRUCache<K, V> extends LinkedHashMap<K, V> {
 
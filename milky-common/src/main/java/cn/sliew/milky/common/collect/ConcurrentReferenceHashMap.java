@@ -9,7 +9,7 @@ import java.lang.reflect.Array;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static cn.sliew.milky.common.check.Ensures.*;
@@ -32,6 +32,12 @@ import static cn.sliew.milky.common.check.Ensures.*;
  * <p>If not explicitly specified, this implementation will use
  * {@linkplain SoftReference soft entry references}.
  *
+ * <p>Reads never lock. Reference chains are immutable and a segment publishes them
+ * through an atomic table, so a reader walks a consistent chain while writers of the same
+ * segment unlink garbage collected references or resize the table into a new one. Writers
+ * purge at most {@value #PURGE_BATCH} garbage collected references per operation, under
+ * the lock they hold anyway, and purge them all before deciding to resize.
+ *
  * @param <K> the key type
  * @param <V> the value type
  */
@@ -49,6 +55,10 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     private static final int MAXIMUM_SEGMENT_SIZE = 1 << 30;
 
+    /**
+     * Garbage collected references purged by a write at most.
+     */
+    private static final int PURGE_BATCH = 32;
 
     /**
      * Array of segments indexed using the high order bits from the hash.
@@ -213,23 +223,22 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     @Override
     public V get(Object key) {
-        Reference<K, V> ref = getReference(key, Restructure.WHEN_NECESSARY);
+        Reference<K, V> ref = getReference(key, Restructure.NEVER);
         Entry<K, V> entry = (ref != null ? ref.get() : null);
         return (entry != null ? entry.getValue() : null);
     }
 
     @Override
     public V getOrDefault(Object key, V defaultValue) {
-        Reference<K, V> ref = getReference(key, Restructure.WHEN_NECESSARY);
+        Reference<K, V> ref = getReference(key, Restructure.NEVER);
         Entry<K, V> entry = (ref != null ? ref.get() : null);
         return (entry != null ? entry.getValue() : defaultValue);
     }
 
     @Override
     public boolean containsKey(Object key) {
-        Reference<K, V> ref = getReference(key, Restructure.WHEN_NECESSARY);
+        Reference<K, V> ref = getReference(key, Restructure.NEVER);
         Entry<K, V> entry = (ref != null ? ref.get() : null);
-        Objects.equals(entry.getKey(), key);
         return (entry != null && ObjectUtil.nullSafeEquals(entry.getKey(), key));
     }
 
@@ -257,7 +266,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
     }
 
     private V put(final K key, final V value, final boolean overwriteExisting) {
-        return doTask(key, new Task<V>(TaskOption.RESTRUCTURE_BEFORE, TaskOption.RESIZE) {
+        return doTask(key, new Task<V>(TaskOption.RESIZE) {
             @Override
             protected V execute(Reference<K, V> ref, Entry<K, V> entry, Entries<V> entries) {
                 if (entry != null) {
@@ -276,7 +285,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     @Override
     public V remove(Object key) {
-        return doTask(key, new Task<V>(TaskOption.RESTRUCTURE_AFTER, TaskOption.SKIP_IF_EMPTY) {
+        return doTask(key, new Task<V>(TaskOption.SKIP_IF_EMPTY) {
             @Override
             protected V execute(Reference<K, V> ref, Entry<K, V> entry) {
                 if (entry != null) {
@@ -292,7 +301,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     @Override
     public boolean remove(Object key, final Object value) {
-        Boolean result = doTask(key, new Task<Boolean>(TaskOption.RESTRUCTURE_AFTER, TaskOption.SKIP_IF_EMPTY) {
+        Boolean result = doTask(key, new Task<Boolean>(TaskOption.SKIP_IF_EMPTY) {
             @Override
             protected Boolean execute(Reference<K, V> ref, Entry<K, V> entry) {
                 if (entry != null && ObjectUtil.nullSafeEquals(entry.getValue(), value)) {
@@ -309,7 +318,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     @Override
     public boolean replace(K key, final V oldValue, final V newValue) {
-        Boolean result = doTask(key, new Task<Boolean>(TaskOption.RESTRUCTURE_BEFORE, TaskOption.SKIP_IF_EMPTY) {
+        Boolean result = doTask(key, new Task<Boolean>(TaskOption.SKIP_IF_EMPTY) {
             @Override
             protected Boolean execute(Reference<K, V> ref, Entry<K, V> entry) {
                 if (entry != null && ObjectUtil.nullSafeEquals(entry.getValue(), oldValue)) {
@@ -324,7 +333,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     @Override
     public V replace(K key, final V value) {
-        return doTask(key, new Task<V>(TaskOption.RESTRUCTURE_BEFORE, TaskOption.SKIP_IF_EMPTY) {
+        return doTask(key, new Task<V>(TaskOption.SKIP_IF_EMPTY) {
             @Override
             protected V execute(Reference<K, V> ref, Entry<K, V> entry) {
                 if (entry != null) {
@@ -347,8 +356,8 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
     /**
      * Remove any entries that have been garbage collected and are no longer referenced.
      * Under normal circumstances garbage collected entries are automatically purged as
-     * items are added or removed from the Map. This method can be used to force a purge,
-     * and is useful when the Map is read frequently but updated less often.
+     * items are added or removed from the Map, reads never purge. This method can be used
+     * to force a purge, and is useful when the Map is read frequently but updated less often.
      */
     public void purgeUnreferencedEntries() {
         for (Segment segment : this.segments) {
@@ -433,6 +442,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
     /**
      * A single segment used to divide the map to allow better concurrent performance.
+     * The lock is only taken by writers.
      */
     @SuppressWarnings("serial")
     protected final class Segment extends ReentrantLock {
@@ -442,16 +452,17 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
         private final int initialSize;
 
         /**
-         * Array of references indexed using the low order bits from the hash.
+         * Array of references indexed using the low order bits from the hash. Chains are
+         * never modified, writers replace the head of a chain or the whole table.
          * This property should only be set along with {@code resizeThreshold}.
          */
-        private volatile Reference<K, V>[] references;
+        private volatile AtomicReferenceArray<Reference<K, V>> references;
 
         /**
-         * The total number of references contained in this segment. This includes chained
-         * references and references that have been garbage collected but not purged.
+         * The total number of references linked in this segment. This includes references
+         * that have been garbage collected but not purged. Only written under the lock.
          */
-        private final AtomicInteger count = new AtomicInteger(0);
+        private volatile int count;
 
         /**
          * The threshold when resizing of the references should occur. When {@code count}
@@ -462,21 +473,21 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
         public Segment(int initialSize, int resizeThreshold) {
             this.referenceManager = createReferenceManager();
             this.initialSize = initialSize;
-            this.references = createReferenceArray(initialSize);
+            this.references = new AtomicReferenceArray<>(initialSize);
             this.resizeThreshold = resizeThreshold;
         }
 
+        /**
+         * Finds the reference of {@code key} without locking, {@code restructure} is
+         * ignored as reads never restructure.
+         */
         public Reference<K, V> getReference(Object key, int hash, Restructure restructure) {
-            if (restructure == Restructure.WHEN_NECESSARY) {
-                restructureIfNecessary(false);
-            }
-            if (this.count.get() == 0) {
+            if (this.count == 0) {
                 return null;
             }
             // Use a local copy to protect against other threads writing
-            Reference<K, V>[] references = this.references;
-            int index = getIndex(hash, references);
-            Reference<K, V> head = references[index];
+            AtomicReferenceArray<Reference<K, V>> references = this.references;
+            Reference<K, V> head = references.get(getIndex(hash, references));
             return findInChain(head, key, hash);
         }
 
@@ -490,32 +501,31 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
          * @return the result of the operation
          */
         public <T> T doTask(final int hash, final Object key, final Task<T> task) {
-            boolean resize = task.hasOption(TaskOption.RESIZE);
-            if (task.hasOption(TaskOption.RESTRUCTURE_BEFORE)) {
-                restructureIfNecessary(resize);
-            }
-            if (task.hasOption(TaskOption.SKIP_IF_EMPTY) && this.count.get() == 0) {
+            if (task.hasOption(TaskOption.SKIP_IF_EMPTY) && this.count == 0) {
                 return task.execute(null, null, null);
             }
             lock();
             try {
-                final int index = getIndex(hash, this.references);
-                final Reference<K, V> head = this.references[index];
+                final AtomicReferenceArray<Reference<K, V>> references = this.references;
+                final int index = getIndex(hash, references);
+                final Reference<K, V> head = references.get(index);
                 Reference<K, V> ref = findInChain(head, key, hash);
                 Entry<K, V> entry = (ref != null ? ref.get() : null);
                 Entries<V> entries = value -> {
                     @SuppressWarnings("unchecked")
                     Entry<K, V> newEntry = new Entry<>((K) key, value);
                     Reference<K, V> newReference = Segment.this.referenceManager.createReference(newEntry, hash, head);
-                    Segment.this.references[index] = newReference;
-                    Segment.this.count.incrementAndGet();
+                    references.set(index, newReference);
+                    Segment.this.count++;
                 };
                 return task.execute(ref, entry, entries);
             } finally {
-                unlock();
-                if (task.hasOption(TaskOption.RESTRUCTURE_AFTER)) {
-                    restructureIfNecessary(resize);
+                // released references are enqueued already, purged here with the collected ones
+                purge(PURGE_BATCH);
+                if (task.hasOption(TaskOption.RESIZE)) {
+                    resizeIfNecessary();
                 }
+                unlock();
             }
         }
 
@@ -523,92 +533,108 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
          * Clear all items from this segment.
          */
         public void clear() {
-            if (this.count.get() == 0) {
+            if (this.count == 0) {
                 return;
             }
             lock();
             try {
-                this.references = createReferenceArray(this.initialSize);
-                this.resizeThreshold = (int) (this.references.length * getLoadFactor());
-                this.count.set(0);
+                this.references = new AtomicReferenceArray<>(this.initialSize);
+                this.resizeThreshold = (int) (this.initialSize * getLoadFactor());
+                this.count = 0;
             } finally {
                 unlock();
             }
         }
 
         /**
-         * Restructure the underlying data structure when it becomes necessary. This
-         * method can increase the size of the references table as well as purge any
-         * references that have been garbage collected.
+         * Purge all references that have been garbage collected and increase the size of
+         * the references table when it becomes necessary.
          *
          * @param allowResize if resizing is permitted
          */
         protected final void restructureIfNecessary(boolean allowResize) {
-            int currCount = this.count.get();
-            boolean needsResize = allowResize && (currCount > 0 && currCount >= this.resizeThreshold);
-            Reference<K, V> ref = this.referenceManager.pollForPurge();
-            if (ref != null || (needsResize)) {
-                restructure(allowResize, ref);
-            }
-        }
-
-        private void restructure(boolean allowResize, Reference<K, V> ref) {
-            boolean needsResize;
             lock();
             try {
-                int countAfterRestructure = this.count.get();
-                Set<Reference<K, V>> toPurge = Collections.emptySet();
-                if (ref != null) {
-                    toPurge = new HashSet<>();
-                    while (ref != null) {
-                        toPurge.add(ref);
-                        ref = this.referenceManager.pollForPurge();
-                    }
-                }
-                countAfterRestructure -= toPurge.size();
-
-                // Recalculate taking into account count inside lock and items that
-                // will be purged
-                needsResize = (countAfterRestructure > 0 && countAfterRestructure >= this.resizeThreshold);
-                boolean resizing = false;
-                int restructureSize = this.references.length;
-                if (allowResize && needsResize && restructureSize < MAXIMUM_SEGMENT_SIZE) {
-                    restructureSize <<= 1;
-                    resizing = true;
+                purge(Integer.MAX_VALUE);
+                if (allowResize) {
+                    resizeIfNecessary();
                 }
+            } finally {
+                unlock();
+            }
+        }
 
-                // Either create a new table or reuse the existing one
-                Reference<K, V>[] restructured =
-                        (resizing ? createReferenceArray(restructureSize) : this.references);
+        /**
+         * Unlinks at most {@code max} references returned by {@link ReferenceManager#pollForPurge()},
+         * must hold the lock.
+         */
+        private void purge(int max) {
+            Reference<K, V> ref;
+            for (int i = 0; i < max && (ref = this.referenceManager.pollForPurge()) != null; i++) {
+                unlink(ref);
+            }
+        }
 
-                // Restructure
-                for (int i = 0; i < this.references.length; i++) {
-                    ref = this.references[i];
-                    if (!resizing) {
-                        restructured[i] = null;
-                    }
-                    while (ref != null) {
-                        if (!toPurge.contains(ref)) {
-                            Entry<K, V> entry = ref.get();
-                            if (entry != null) {
-                                int index = getIndex(ref.getHash(), restructured);
-                                restructured[index] = this.referenceManager.createReference(
-                                        entry, ref.getHash(), restructured[index]);
-                            }
-                        }
-                        ref = ref.getNext();
-                    }
+        /**
+         * Replaces the chain of {@code ref} by a copy without it. References of the chain in front
+         * of {@code ref} are copied, those garbage collected meanwhile are dropped as well.
+         */
+        private void unlink(Reference<K, V> ref) {
+            AtomicReferenceArray<Reference<K, V>> references = this.references;
+            int index = getIndex(ref.getHash(), references);
+            Reference<K, V> head = references.get(index);
+            Reference<K, V> currRef = head;
+            while (currRef != null && currRef != ref) {
+                currRef = currRef.getNext();
+            }
+            if (currRef == null) {
+                // not linked anymore, dropped by an earlier unlink or resize
+                return;
+            }
+            int removed = 1;
+            Reference<K, V> chain = ref.getNext();
+            for (currRef = head; currRef != ref; currRef = currRef.getNext()) {
+                Entry<K, V> entry = currRef.get();
+                if (entry != null) {
+                    chain = this.referenceManager.createReference(entry, currRef.getHash(), chain);
+                } else {
+                    removed++;
                 }
+            }
+            references.set(index, chain);
+            this.count -= removed;
+        }
 
-                // Replace volatile members
-                if (resizing) {
-                    this.references = restructured;
-                    this.resizeThreshold = (int) (this.references.length * getLoadFactor());
+        /**
+         * Copies live references into a table of twice the size once {@code count} reaches the
+         * threshold after purging. Readers keep walking the previous table until the new one is
+         * published, must hold the lock.
+         */
+        private void resizeIfNecessary() {
+            if (this.count < this.resizeThreshold) {
+                return;
+            }
+            purge(Integer.MAX_VALUE);
+            AtomicReferenceArray<Reference<K, V>> references = this.references;
+            if (this.count < this.resizeThreshold || references.length() >= MAXIMUM_SEGMENT_SIZE) {
+                return;
+            }
+            AtomicReferenceArray<Reference<K, V>> resized = new AtomicReferenceArray<>(references.length() << 1);
+            int live = 0;
+            for (int i = 0; i < references.length(); i++) {
+                for (Reference<K, V> ref = references.get(i); ref != null; ref = ref.getNext()) {
+                    Entry<K, V> entry = ref.get();
+                    if (entry != null) {
+                        int index = getIndex(ref.getHash(), resized);
+                        resized.lazySet(index, this.referenceManager.createReference(entry, ref.getHash(), resized.get(index)));
+                        live++;
+                    }
                 }
-                this.count.set(Math.max(countAfterRestructure, 0));
-            } finally {
-                unlock();
             }
+            // Replace volatile members
+            this.references = resized;
+            this.resizeThreshold = (int) (resized.length() * getLoadFactor());
+            this.count = live;
         }
 
         private Reference<K, V> findInChain(Reference<K, V> ref, Object key, int hash) {
@@ -628,27 +654,22 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
             return null;
         }
 
-        @SuppressWarnings({"rawtypes", "unchecked"})
-        private Reference<K, V>[] createReferenceArray(int size) {
-            return new Reference[size];
-        }
-
-        private int getIndex(int hash, Reference<K, V>[] references) {
-            return (hash & (references.length - 1));
+        private int getIndex(int hash, AtomicReferenceArray<Reference<K, V>> references) {
+            return (hash & (references.length() - 1));
         }
 
         /**
          * Return the size of the current references array.
          */
         public final int getSize() {
-            return this.references.length;
+            return this.references.length();
         }
 
         /**
          * Return the total number of references in this segment.
          */
         public final int getCount() {
-            return this.count.get();
+            return this.count;
         }
     }
 
@@ -792,7 +813,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
      */
     private enum TaskOption {
 
-        RESTRUCTURE_BEFORE, RESTRUCTURE_AFTER, SKIP_IF_EMPTY, RESIZE
+        SKIP_IF_EMPTY, RESIZE
     }
 
 
@@ -827,7 +848,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
                 Reference<K, V> ref = ConcurrentReferenceHashMap.this.getReference(entry.getKey(), Restructure.NEVER);
                 Entry<K, V> otherEntry = (ref != null ? ref.get() : null);
                 if (otherEntry != null) {
-                    return ObjectUtil.nullSafeEquals(otherEntry.getValue(), otherEntry.getValue());
+                    return ObjectUtil.nullSafeEquals(entry.getValue(), otherEntry.getValue());
                 }
             }
             return false;
@@ -863,7 +884,7 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
         private int referenceIndex;
 
-        private Reference<K, V>[] references;
+        private AtomicReferenceArray<Reference<K, V>> references;
 
         private Reference<K, V> reference;
 
@@ -907,11 +928,11 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
                 this.reference = this.reference.getNext();
             }
             while (this.reference == null && this.references != null) {
-                if (this.referenceIndex >= this.references.length) {
+                if (this.referenceIndex >= this.references.length()) {
                     moveToNextSegment();
                     this.referenceIndex = 0;
                 } else {
-                    this.reference = this.references[this.referenceIndex];
+                    this.reference = this.references.get(this.referenceIndex);
                     this.referenceIndex++;
                 }
             }
@@ -935,7 +956,8 @@ public class ConcurrentReferenceHashMap<K, V> extends AbstractMap<K, V> implemen
 
 
     /**
-     * The types of restructuring that can be performed.
+     * The types of restructuring that can be performed. Reads never restructure since
+     * garbage collected references are purged by writes.
      */
     protected enum Restructure {
 
@@ -0,0 +1,397 @@
+package cn.sliew.milky.common.collect;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * An immutable map backed by a hash array mapped trie (HAMT).
+ * <p>
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} return a new map sharing every node
+ * but the path to the changed entry with this map, an update copies at most {@code log32(n)}
+ * small arrays instead of the whole map. Instances are safe to share between threads.
+ * <p>
+ * Each node holds a 32 bit bitmap of the occupied hash slots at its level and a compact array of
+ * key/value pairs, a {@code null} key marks a sub node stored in the value slot. Keys with equal
+ * hashes are kept in collision nodes. Keys must not be {@code null}, values may be.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    private static final Object NOT_FOUND = new Object();
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map associating {@code key} with {@code value}, this map if it already does.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        checkNotNull(key);
+        Node node = root != null ? root : BitmapIndexedNode.EMPTY;
+        boolean[] added = new boolean[1];
+        Node newRoot = node.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without {@code key}, this map if it has no such key.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null) {
+            return this;
+        }
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object value = find(key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != NOT_FOUND;
+    }
+
+    private Object find(Object key) {
+        if (key == null || root == null) {
+            return NOT_FOUND;
+        }
+        return root.find(0, hash(key), key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private abstract static class Node {
+
+        /**
+         * Returns the value of {@code key} or {@link #NOT_FOUND}.
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * Returns a node with {@code key} associated to {@code value}, this node if unchanged.
+         * {@code added[0]} is set if the key was not present.
+         */
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Returns a node without {@code key}, this node if unchanged or {@code null} if empty.
+         */
+        abstract Node without(int shift, int hash, Object key);
+
+        /**
+         * Key/value pairs, a {@code null} key marks a sub node in the value slot.
+         */
+        abstract Object[] array();
+    }
+
+    private static final class BitmapIndexedNode extends Node {
+
+        static final BitmapIndexedNode EMPTY = new BitmapIndexedNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapIndexedNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).find(shift + BITS, hash, key);
+            }
+            return key.equals(keyOrNull) ? valueOrNode : NOT_FOUND;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitpos(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                int n = Integer.bitCount(bitmap);
+                Object[] newArray = new Object[2 * (n + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+                added[0] = true;
+                return new BitmapIndexedNode(bitmap | bit, newArray);
+            }
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node node = ((Node) valueOrNode).assoc(shift + BITS, hash, key, value, added);
+                if (node == valueOrNode) {
+                    return this;
+                }
+                return new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, node));
+            }
+            if (key.equals(keyOrNull)) {
+                if (value == valueOrNode) {
+                    return this;
+                }
+                return new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, value));
+            }
+            added[0] = true;
+            Object[] newArray = cloneAndSet(array, 2 * idx, null);
+            newArray[2 * idx + 1] = createNode(shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+            return new BitmapIndexedNode(bitmap, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node node = ((Node) valueOrNode).without(shift + BITS, hash, key);
+                if (node == valueOrNode) {
+                    return this;
+                }
+                if (node != null) {
+                    return new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, node));
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            return new BitmapIndexedNode(bitmap ^ bit, removePair(array, idx));
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    private static final class HashCollisionNode extends Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        HashCollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int findIndex(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return NOT_FOUND;
+            }
+            int idx = findIndex(key);
+            return idx < 0 ? NOT_FOUND : array[idx + 1];
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // nest this node one level down next to the new key
+                return new BitmapIndexedNode(bitpos(this.hash, shift), new Object[]{null, this})
+                        .assoc(shift, hash, key, value, added);
+            }
+            int idx = findIndex(key);
+            if (idx >= 0) {
+                if (array[idx + 1] == value) {
+                    return this;
+                }
+                return new HashCollisionNode(hash, cloneAndSet(array, idx + 1, value));
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new HashCollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int idx = hash == this.hash ? findIndex(key) : -1;
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            return new HashCollisionNode(hash, removePair(array, idx / 2));
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    private static Node createNode(int shift, Object key1, Object value1, int key2hash, Object key2, Object value2) {
+        int key1hash = hash(key1);
+        if (key1hash == key2hash) {
+            return new HashCollisionNode(key1hash, new Object[]{key1, value1, key2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapIndexedNode.EMPTY
+                .assoc(shift, key1hash, key1, value1, added)
+                .assoc(shift, key2hash, key2, value2, added);
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int i, Object a) {
+        Object[] clone = array.clone();
+        clone[i] = a;
+        return clone;
+    }
+
+    private static Object[] removePair(Object[] array, int i) {
+        Object[] newArray = new Object[array.length - 2];
+        System.arraycopy(array, 0, newArray, 0, 2 * i);
+        System.arraycopy(array, 2 * (i + 1), newArray, 2 * i, newArray.length - 2 * i);
+        return newArray;
+    }
+
+    /**
+     * Depth first walk of the trie, at most 7 bitmap levels and a collision node deep.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                push(root.array());
+            }
+            advance();
+        }
+
+        private void push(Object[] array) {
+            depth++;
+            arrays[depth] = array;
+            positions[depth] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+                if (position >= array.length) {
+                    arrays[depth--] = null;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                Object keyOrNull = array[position];
+                if (keyOrNull == null) {
+                    push(((Node) array[position + 1]).array());
+                } else {
+                    next = new SimpleImmutableEntry<>((K) keyOrNull, (V) array[position + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
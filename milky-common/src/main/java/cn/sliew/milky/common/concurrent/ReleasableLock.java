@@ -38,6 +38,18 @@ public class ReleasableLock implements Releasable {
         return this;
     }
 
+    /**
+     * Acquires the lock only if it is free, the caller closes this lock when
+     * {@code true} is returned.
+     */
+    public boolean tryAcquire() {
+        if (lock.tryLock()) {
+            assert addCurrentThread();
+            return true;
+        }
+        return false;
+    }
+
     private boolean addCurrentThread() {
         final Integer current = holdingThreads.get();
         holdingThreads.set(current == null ? 1 : current + 1);
@@ -13,7 +13,11 @@ public class OutputStreamStreamOutput extends StreamOutput {
 
     @Override
     public void close() throws IOException {
-        out.close();
+        try {
+            out.close();
+        } finally {
+            releaseScratch();
+        }
     }
 
     @Override
@@ -1,5 +1,7 @@
 package cn.sliew.milky.common.io.stream;
 
+import cn.sliew.milky.common.recycler.BytesRecycler;
+import cn.sliew.milky.common.recycler.Value;
 import cn.sliew.milky.common.util.BitUtil;
 
 import java.io.IOException;
@@ -21,7 +23,8 @@ import java.util.Map;
  */
 public abstract class StreamOutput extends OutputStream {
 
-    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[1024]);
+    // pooled scratch for encoding numbers, obtained on first use and released by close()
+    private Value<byte[]> scratch;
 
     private static byte ZERO = 0;
     private static byte ONE = 1;
@@ -63,11 +66,30 @@ public abstract class StreamOutput extends OutputStream {
     }
 
     /**
-     * Closes this stream to further operations.
+     * Closes this stream to further operations, implementations call {@link #releaseScratch()}.
      */
     @Override
     public abstract void close() throws IOException;
 
+    private byte[] scratch() {
+        Value<byte[]> scratch = this.scratch;
+        if (scratch == null) {
+            scratch = this.scratch = BytesRecycler.heap().bytes(BytesRecycler.SMALL_SIZE);
+        }
+        return scratch.value();
+    }
+
+    /**
+     * Returns the scratch buffer to its pool, a later write obtains a new one.
+     */
+    protected void releaseScratch() {
+        Value<byte[]> scratch = this.scratch;
+        if (scratch != null) {
+            this.scratch = null;
+            scratch.close();
+        }
+    }
+
     /**
      * Forces any buffered output to be written.
      */
@@ -110,7 +132,7 @@ public abstract class StreamOutput extends OutputStream {
     public abstract void writeBytes(byte[] b, int offset, int length) throws IOException;
 
     public final void writeShort(short v) throws IOException {
-        final byte[] buffer = scratch.get();
+        final byte[] buffer = scratch();
         buffer[0] = (byte) (v >> 8);
         buffer[1] = (byte) v;
         writeBytes(buffer, 0, 2);
@@ -120,7 +142,7 @@ public abstract class StreamOutput extends OutputStream {
      * Writes an int as four bytes.
      */
     public void writeInt(int i) throws IOException {
-        final byte[] buffer = scratch.get();
+        final byte[] buffer = scratch();
         buffer[0] = (byte) (i >> 24);
         buffer[1] = (byte) (i >> 16);
         buffer[2] = (byte) (i >> 8);
@@ -161,7 +183,7 @@ public abstract class StreamOutput extends OutputStream {
             writeByte((byte) i);
             return;
         }
-        byte[] buffer = scratch.get();
+        byte[] buffer = scratch();
         int index = 0;
         do {
             buffer[index++] = ((byte) ((i & 0x7f) | 0x80));
@@ -184,7 +206,7 @@ public abstract class StreamOutput extends OutputStream {
      * Writes a long as eight bytes.
      */
     public void writeLong(long i) throws IOException {
-        final byte[] buffer = scratch.get();
+        final byte[] buffer = scratch();
         buffer[0] = (byte) (i >> 56);
         buffer[1] = (byte) (i >> 48);
         buffer[2] = (byte) (i >> 40);
@@ -234,7 +256,7 @@ public abstract class StreamOutput extends OutputStream {
      * If the numbers are known to be non-negative, use {@link #writeVLong(long)}
      */
     public void writeZLong(long i) throws IOException {
-        final byte[] buffer = scratch.get();
+        final byte[] buffer = scratch();
         int index = 0;
         // zig-zag encoding cf. https://developers.google.com/protocol-buffers/docs/encoding?hl=en
         long value = BitUtil.zigZagEncode(i);
@@ -251,7 +273,7 @@ public abstract class StreamOutput extends OutputStream {
      * {@link #writeVLong(long)} instead.
      */
     void writeVLongNoCheck(long i) throws IOException {
-        final byte[] buffer = scratch.get();
+        final byte[] buffer = scratch();
         int index = 0;
         while ((i & ~0x7F) != 0) {
             buffer[index++] = ((byte) ((i & 0x7f) | 0x80));
@@ -0,0 +1,188 @@
+package cn.sliew.milky.common.recycler;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pools byte arrays and {@link ByteBuffer}s in size classes on top of {@link ThreadLocalRecycler}s.
+ * <p>
+ * A request is served by the smallest class holding it: {@link #SMALL_SIZE} scratch buffers,
+ * {@link #PAGE_SIZE} pages or {@link #CHUNK_SIZE} chunks. Larger requests are allocated and dropped
+ * unpooled. {@link ByteBuffer}s are heap or direct as chosen at construction, byte arrays are always
+ * on the heap. A released buffer is cleared but its content is not zeroed.
+ * <p>
+ * {@link #outstanding()} counts values obtained and not released yet, a steadily growing count means
+ * values leak.
+ */
+public class BytesRecycler {
+
+    public static final int SMALL_SIZE = 1024;
+    public static final int PAGE_SIZE = 16 * 1024;
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final BytesRecycler HEAP = new BytesRecycler(false);
+
+    private final boolean direct;
+    private final SizeClass<byte[]>[] bytes;
+    private final SizeClass<ByteBuffer>[] buffers;
+    private final LongAdder obtained = new LongAdder();
+    private final LongAdder released = new LongAdder();
+
+    /**
+     * Creates a recycler pooling per thread up to 256 small buffers, 64 pages and 4 chunks of each kind.
+     *
+     * @param direct whether {@link ByteBuffer}s are allocated direct
+     */
+    public BytesRecycler(boolean direct) {
+        this(direct, 256, 64, 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BytesRecycler(boolean direct, int maxSmall, int maxPages, int maxChunks) {
+        this.direct = direct;
+        int[] sizes = {SMALL_SIZE, PAGE_SIZE, CHUNK_SIZE};
+        int[] limits = {maxSmall, maxPages, maxChunks};
+        this.bytes = new SizeClass[sizes.length];
+        this.buffers = new SizeClass[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            int size = sizes[i];
+            bytes[i] = new SizeClass<>(size, limits[i], new BytesSource<byte[]>() {
+                @Override
+                public byte[] newInstance() {
+                    return new byte[size];
+                }
+            });
+            buffers[i] = new SizeClass<>(size, limits[i], new BytesSource<ByteBuffer>() {
+                @Override
+                public ByteBuffer newInstance() {
+                    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+                }
+
+                @Override
+                public void recycle(ByteBuffer value) {
+                    super.recycle(value);
+                    value.clear();
+                }
+            });
+        }
+    }
+
+    /**
+     * The shared recycler of heap buffers.
+     */
+    public static BytesRecycler heap() {
+        return HEAP;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Obtains a byte array of at least {@code size} bytes.
+     */
+    public Value<byte[]> bytes(int size) {
+        obtained.increment();
+        SizeClass<byte[]> sizeClass = sizeClass(bytes, size);
+        if (sizeClass == null) {
+            return new Unpooled<>(new byte[size]);
+        }
+        return sizeClass.recycler.obtain();
+    }
+
+    /**
+     * Obtains a cleared {@link ByteBuffer} of at least {@code size} bytes, its limit is its capacity.
+     */
+    public Value<ByteBuffer> buffer(int size) {
+        obtained.increment();
+        SizeClass<ByteBuffer> sizeClass = sizeClass(buffers, size);
+        if (sizeClass == null) {
+            return new Unpooled<>(direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+        }
+        return sizeClass.recycler.obtain();
+    }
+
+    /**
+     * The number of values obtained and not released yet.
+     */
+    public long outstanding() {
+        return obtained.sum() - released.sum();
+    }
+
+    /**
+     * The number of values obtained from a pool.
+     */
+    public long hits() {
+        long hits = 0L;
+        for (int i = 0; i < bytes.length; i++) {
+            hits += bytes[i].recycler.hits() + buffers[i].recycler.hits();
+        }
+        return hits;
+    }
+
+    /**
+     * The number of values allocated, because their pool was empty or they were larger than {@link #CHUNK_SIZE}.
+     */
+    public long misses() {
+        return obtained.sum() - hits();
+    }
+
+    private static <T> SizeClass<T> sizeClass(SizeClass<T>[] sizeClasses, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size < 0: " + size);
+        }
+        for (SizeClass<T> sizeClass : sizeClasses) {
+            if (size <= sizeClass.size) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    private static final class SizeClass<T> {
+
+        final int size;
+        final ThreadLocalRecycler<T> recycler;
+
+        SizeClass(int size, int maxSize, Source<T> source) {
+            this.size = size;
+            this.recycler = new ThreadLocalRecycler<>(source, maxSize);
+        }
+    }
+
+    private abstract class BytesSource<T> extends AbstractSource<T> {
+
+        @Override
+        public void recycle(T value) {
+            released.increment();
+        }
+    }
+
+    private final class Unpooled<T> implements Value<T> {
+
+        private T value;
+
+        Unpooled(T value) {
+            this.value = value;
+        }
+
+        @Override
+        public T value() {
+            return value;
+        }
+
+        @Override
+        public boolean isRecycled() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (value == null) {
+                throw new IllegalStateException("recycler entry already released...");
+            }
+            value = null;
+            released.increment();
+        }
+    }
+}
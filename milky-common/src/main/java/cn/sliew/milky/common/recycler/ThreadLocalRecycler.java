@@ -0,0 +1,255 @@
+package cn.sliew.milky.common.recycler;
+
+import cn.sliew.milky.common.reference.ResourceLeakDetector;
+import cn.sliew.milky.common.reference.ResourceLeakTracker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Recycler} implementation keeping a pool per thread. This implementation is thread-safe.
+ * <p>
+ * Every thread obtains from and releases to its own stack without synchronization. An object released
+ * by another thread goes back to the stack of the thread that obtained it through a bounded lock-free
+ * queue, which the owner drains once its stack is empty. The {@link Value} handle stays with its object
+ * and is handed out again with it, so obtaining and releasing pooled objects allocates nothing.
+ * <p>
+ * Each thread pools at most {@code maxSize} objects and accepts at most {@code maxSize} objects from
+ * other threads until it drains them, objects released beyond are destroyed. A {@link Value} must not be
+ * used after it was closed, it may already be handed out again.
+ * <p>
+ * A sampled fraction of obtained values is tracked by {@link #leakDetector()}, values garbage collected
+ * without being closed are reported as leaks.
+ */
+public class ThreadLocalRecycler<T> extends AbstractRecycler<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final ResourceLeakDetector<Value<?>> LEAK_DETECTOR = new ResourceLeakDetector<>("Recycler.Value");
+
+    final int maxSize;
+
+    private final ThreadLocal<Stack<T>> stacks = ThreadLocal.withInitial(() -> new Stack<>(this));
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    public ThreadLocalRecycler(Source<T> source, int maxSize) {
+        super(source);
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Value<T> obtain() {
+        Stack<T> stack = stacks.get();
+        Handle<T> handle = stack.pop();
+        if (handle == null) {
+            misses.increment();
+            handle = new Handle<>(this, stack, source.newInstance());
+        } else {
+            hits.increment();
+        }
+        handle.leak = LEAK_DETECTOR.track(handle);
+        return handle;
+    }
+
+    /**
+     * The leak detector shared by all thread local recyclers.
+     */
+    public static ResourceLeakDetector<Value<?>> leakDetector() {
+        return LEAK_DETECTOR;
+    }
+
+    /**
+     * The number of {@link #obtain()} served from a pool.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of {@link #obtain()} creating a new instance.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of released objects destroyed because their pool was full.
+     */
+    public long drops() {
+        return drops.sum();
+    }
+
+    private void drop(T value) {
+        drops.increment();
+        source.destroy(value);
+    }
+
+    private static final class Handle<T> implements Value<T> {
+
+        private static final int STATE_CLAIMED = 0;
+        private static final int STATE_AVAILABLE = 1;
+        private static final AtomicIntegerFieldUpdater<Handle> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Handle.class, "state");
+
+        private final ThreadLocalRecycler<T> recycler;
+        private final Stack<T> stack;
+        private final T value;
+        private boolean recycled;
+        private ResourceLeakTracker<Value<?>> leak;
+
+        @SuppressWarnings({"unused", "FieldMayBeFinal", "RedundantFieldInitialization"})
+        private volatile int state = STATE_CLAIMED;
+
+        Handle(ThreadLocalRecycler<T> recycler, Stack<T> stack, T value) {
+            this.recycler = recycler;
+            this.stack = stack;
+            this.value = value;
+        }
+
+        @Override
+        public T value() {
+            ResourceLeakTracker<Value<?>> leak = this.leak;
+            if (leak != null) {
+                leak.record();
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isRecycled() {
+            return recycled;
+        }
+
+        @Override
+        public void close() {
+            if (!STATE_UPDATER.compareAndSet(this, STATE_CLAIMED, STATE_AVAILABLE)) {
+                throw new IllegalStateException("recycler entry already released...");
+            }
+            ResourceLeakTracker<Value<?>> leak = this.leak;
+            if (leak != null) {
+                this.leak = null;
+                leak.close(this);
+            }
+            // recycled before it is visible to the owner, so a dropped object is recycled and destroyed
+            recycler.source.recycle(value);
+            if (!stack.push(this)) {
+                recycler.drop(value);
+            }
+        }
+
+        void claim() {
+            recycled = true;
+            state = STATE_CLAIMED;
+        }
+    }
+
+    /**
+     * The pool of one thread, objects released by other threads wait in {@link #returned}.
+     */
+    private static final class Stack<T> {
+
+        private final Thread owner = Thread.currentThread();
+        private final int maxSize;
+        private Handle<T>[] elements;
+        private int size;
+        private final ReturnQueue<T> returned;
+
+        @SuppressWarnings("unchecked")
+        Stack(ThreadLocalRecycler<T> recycler) {
+            this.maxSize = recycler.maxSize;
+            this.elements = new Handle[Math.min(INITIAL_CAPACITY, maxSize)];
+            this.returned = new ReturnQueue<>(maxSize);
+        }
+
+        Handle<T> pop() {
+            if (size == 0 && !drainReturned()) {
+                return null;
+            }
+            Handle<T> handle = elements[--size];
+            elements[size] = null;
+            handle.claim();
+            return handle;
+        }
+
+        boolean push(Handle<T> handle) {
+            if (Thread.currentThread() != owner) {
+                return returned.offer(handle);
+            }
+            return pushLocal(handle);
+        }
+
+        private boolean pushLocal(Handle<T> handle) {
+            if (size == elements.length) {
+                if (size >= maxSize) {
+                    return false;
+                }
+                elements = Arrays.copyOf(elements, Math.min(size << 1, maxSize));
+            }
+            elements[size++] = handle;
+            return true;
+        }
+
+        private boolean drainReturned() {
+            Handle<T> handle;
+            while ((handle = returned.poll()) != null) {
+                if (!pushLocal(handle)) {
+                    handle.recycler.drop(handle.value);
+                }
+            }
+            return size > 0;
+        }
+    }
+
+    /**
+     * Bounded lock-free ring of objects released by other threads, with the owner as single consumer.
+     * Producers claim a slot by a CAS on the write counter and give up when the ring is full.
+     */
+    private static final class ReturnQueue<T> {
+
+        private final AtomicReferenceArray<Handle<T>> buffer;
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter = 0L;
+
+        ReturnQueue(int capacity) {
+            this.buffer = new AtomicReferenceArray<>(Math.max(1, capacity));
+        }
+
+        boolean offer(Handle<T> handle) {
+            for (; ; ) {
+                long tail = writeCounter.get();
+                if (tail - readCounter >= buffer.length()) {
+                    return false;
+                }
+                if (writeCounter.compareAndSet(tail, tail + 1)) {
+                    buffer.lazySet((int) (tail % buffer.length()), handle);
+                    return true;
+                }
+            }
+        }
+
+        Handle<T> poll() {
+            long head = readCounter;
+            if (head == writeCounter.get()) {
+                return null;
+            }
+            int index = (int) (head % buffer.length());
+            Handle<T> handle = buffer.get(index);
+            if (handle == null) {
+                // slot claimed but not published yet
+                return null;
+            }
+            buffer.lazySet(index, null);
+            readCounter = head + 1;
+            return handle;
+        }
+    }
+}
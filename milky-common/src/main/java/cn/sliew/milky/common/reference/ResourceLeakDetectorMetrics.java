@@ -0,0 +1,34 @@
+package cn.sliew.milky.common.reference;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Leaks detected by a {@link ResourceLeakDetector}, tagged with its resource type.
+ * <p>
+ * Only sampled resources are tracked, the counter is a lower bound of the real leaks
+ * unless the level is {@link ResourceLeakDetector.Level#PARANOID}.
+ */
+public class ResourceLeakDetectorMetrics implements MeterBinder {
+
+    private final ResourceLeakDetector<?> detector;
+    private final Iterable<Tag> tags;
+
+    public ResourceLeakDetectorMetrics(ResourceLeakDetector<?> detector, Tag... tags) {
+        this.detector = checkNotNull(detector);
+        this.tags = Tags.of(tags).and("resource", detector.resourceType());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("leak.detected", detector, ResourceLeakDetector::leaks)
+                .tags(tags)
+                .description("Resources garbage collected without being released")
+                .register(registry);
+    }
+}
@@ -9,6 +9,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A {@link Timer} optimized for approximated I/O timeout scheduling.
@@ -41,6 +42,27 @@ import java.util.concurrent.atomic.AtomicLong;
  * share it across your application.  One of the common mistakes, that makes
  * your application unresponsive, is to create a new instance for every connection.
  *
+ * <h3>Hierarchical Wheels</h3>
+ * <p>
+ * A timeout due within one turn of the wheel is put in the bucket of its tick.
+ * Later timeouts go to an upper wheel whose buckets each span a whole turn of
+ * the wheel below, up to as many wheels as needed to cover any deadline. When
+ * the wheel below starts a new turn the matching upper bucket is cascaded, its
+ * timeouts move down to their bucket there, so a tick only visits the timeouts
+ * due in it instead of every long lived timeout hashed to the same bucket.
+ * Upper wheels are allocated once a timeout needs them.
+ * <p>
+ * New and cancelled timeouts are handed to the worker thread through lock-free
+ * multi-producer single-consumer queues, and cancelled timeouts are unlinked
+ * from their bucket in constant time on the next tick.
+ *
+ * <h3>Task Executor</h3>
+ * <p>
+ * By default expired {@link TimerTask}s run on the worker thread, so a slow
+ * task delays every timeout due after it. Pass a task {@link Executor} to
+ * only dispatch expired timeouts from the worker, {@link HashedWheelTimerMetrics}
+ * reports the tick lag and task execution time to tell whether it is needed.
+ *
  * <h3>Implementation Details</h3>
  * <p>
  * {@link HashedWheelTimer} is based on
@@ -75,13 +97,23 @@ public class HashedWheelTimer implements Timer {
     private volatile int workerState;
 
     private final long tickDuration;
-    private final HashedWheelBucket[] wheel;
+    // wheels[0] is the wheel of ticks, upper wheels are only accessed by the worker thread and allocated lazily
+    private final HashedWheelBucket[][] wheels;
     private final int mask;
+    private final int shift;
     private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
-    private final Queue<HashedWheelTimeout> timeouts = new LinkedBlockingQueue<>();
-    private final Queue<HashedWheelTimeout> cancelledTimeouts = new LinkedBlockingQueue<>();
+    private final MpscLinkedQueue<HashedWheelTimeout> timeouts = new MpscLinkedQueue<>();
+    private final MpscLinkedQueue<HashedWheelTimeout> cancelledTimeouts = new MpscLinkedQueue<>();
     private final AtomicLong pendingTimeouts = new AtomicLong(0);
     private final long maxPendingTimeouts;
+    private final Executor taskExecutor;
+
+    // statistics read by HashedWheelTimerMetrics, ticks are only written by the worker thread
+    volatile long ticks;
+    volatile long tickLagNanos;
+    volatile long lastTickLagNanos;
+    final LongAdder tasks = new LongAdder();
+    final LongAdder taskNanos = new LongAdder();
 
     private volatile long startTime;
 
@@ -190,10 +222,40 @@ public class HashedWheelTimer implements Timer {
             ThreadFactory threadFactory,
             long tickDuration, TimeUnit unit, int ticksPerWheel,
             long maxPendingTimeouts) {
+        this(threadFactory, tickDuration, unit, ticksPerWheel, maxPendingTimeouts, Runnable::run);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory      a {@link ThreadFactory} that creates a
+     *                           background {@link Thread} which is dedicated to
+     *                           {@link TimerTask} expiration.
+     * @param tickDuration       the duration between tick
+     * @param unit               the time unit of the {@code tickDuration}
+     * @param ticksPerWheel      the size of the wheel
+     * @param maxPendingTimeouts The maximum number of pending timeouts after which call to
+     *                           {@code newTimeout} will result in
+     *                           {@link RejectedExecutionException}
+     *                           being thrown. No maximum pending timeouts limit is assumed if
+     *                           this value is 0 or negative.
+     * @param taskExecutor       The {@link Executor} that is used to execute the submitted {@link TimerTask}s.
+     *                           The caller is responsible to shutdown the {@link Executor} once it is not needed
+     *                           anymore.
+     * @throws NullPointerException     if either of {@code threadFactory}, {@code unit} and {@code taskExecutor} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration} and {@code ticksPerWheel} is &lt;= 0
+     */
+    public HashedWheelTimer(
+            ThreadFactory threadFactory,
+            long tickDuration, TimeUnit unit, int ticksPerWheel,
+            long maxPendingTimeouts, Executor taskExecutor) {
 
         if (threadFactory == null) {
             throw new NullPointerException("threadFactory");
         }
+        if (taskExecutor == null) {
+            throw new NullPointerException("taskExecutor");
+        }
         if (unit == null) {
             throw new NullPointerException("unit");
         }
@@ -205,8 +267,9 @@ public class HashedWheelTimer implements Timer {
         }
 
         // Normalize ticksPerWheel to power of two and initialize the wheel.
-        wheel = createWheel(ticksPerWheel);
+        HashedWheelBucket[] wheel = createWheel(ticksPerWheel);
         mask = wheel.length - 1;
+        shift = Integer.numberOfTrailingZeros(wheel.length);
 
         // Convert tickDuration to nanos.
         this.tickDuration = unit.toNanos(tickDuration);
@@ -217,9 +280,19 @@ public class HashedWheelTimer implements Timer {
                     "tickDuration: %d (expected: 0 < tickDuration in nanos < %d",
                     tickDuration, Long.MAX_VALUE / wheel.length));
         }
+
+        // Enough wheels to hold the farthest deadline.
+        long maxTicks = Long.MAX_VALUE / this.tickDuration;
+        int levels = 1;
+        while (levels * shift < Long.SIZE && (maxTicks >>> (levels * shift)) != 0) {
+            levels++;
+        }
+        wheels = new HashedWheelBucket[levels][];
+        wheels[0] = wheel;
         workerThread = threadFactory.newThread(worker);
 
         this.maxPendingTimeouts = maxPendingTimeouts;
+        this.taskExecutor = taskExecutor;
 
         if (INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT &&
                 WARNED_TOO_MANY_INSTANCES.compareAndSet(false, true)) {
@@ -250,7 +323,8 @@ public class HashedWheelTimer implements Timer {
                     "ticksPerWheel may not be greater than 2^30: " + ticksPerWheel);
         }
 
-        ticksPerWheel = normalizeTicksPerWheel(ticksPerWheel);
+        // a single bucket can't make a hierarchy
+        ticksPerWheel = normalizeTicksPerWheel(Math.max(2, ticksPerWheel));
         HashedWheelBucket[] wheel = new HashedWheelBucket[ticksPerWheel];
         for (int i = 0; i < wheel.length; i++) {
             wheel[i] = new HashedWheelBucket();
@@ -372,7 +446,7 @@ public class HashedWheelTimer implements Timer {
             deadline = Long.MAX_VALUE;
         }
         HashedWheelTimeout timeout = new HashedWheelTimeout(this, task, deadline);
-        timeouts.add(timeout);
+        timeouts.offer(timeout);
         return timeout;
     }
 
@@ -410,19 +484,26 @@ public class HashedWheelTimer implements Timer {
             do {
                 final long deadline = waitForNextTick();
                 if (deadline > 0) {
+                    recordTickLag(deadline - tickDuration * (tick + 1));
                     int idx = (int) (tick & mask);
                     processCancelledTasks();
                     HashedWheelBucket bucket =
-                            wheel[idx];
+                            wheels[0][idx];
                     transferTimeoutsToBuckets();
+                    cascade();
                     bucket.expireTimeouts(deadline);
                     tick++;
                 }
             } while (WORKER_STATE_UPDATER.get(HashedWheelTimer.this) == WORKER_STATE_STARTED);
 
             // Fill the unprocessedTimeouts so we can return them from stop() method.
-            for (HashedWheelBucket bucket : wheel) {
-                bucket.clearTimeouts(unprocessedTimeouts);
+            for (HashedWheelBucket[] wheel : wheels) {
+                if (wheel == null) {
+                    continue;
+                }
+                for (HashedWheelBucket bucket : wheel) {
+                    bucket.clearTimeouts(unprocessedTimeouts);
+                }
             }
             for (; ; ) {
                 HashedWheelTimeout timeout = timeouts.poll();
@@ -436,6 +517,12 @@ public class HashedWheelTimer implements Timer {
             processCancelledTasks();
         }
 
+        private void recordTickLag(long lag) {
+            lastTickLagNanos = lag;
+            tickLagNanos += lag;
+            ticks++;
+        }
+
         private void transferTimeoutsToBuckets() {
             // transfer only max. 100000 timeouts per tick to prevent a thread to stale the workerThread when it just
             // adds new timeouts in a loop.
@@ -450,15 +537,49 @@ public class HashedWheelTimer implements Timer {
                     continue;
                 }
 
-                long calculated = timeout.deadline / tickDuration;
-                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                schedule(timeout);
+            }
+        }
 
-                // Ensure we don't schedule for past.
-                final long ticks = Math.max(calculated, tick);
-                int stopIndex = (int) (ticks & mask);
+        /**
+         * Adds the timeout to the lowest wheel whose turn ends after its deadline.
+         */
+        private void schedule(HashedWheelTimeout timeout) {
+            long calculated = timeout.deadline / tickDuration;
+
+            // Ensure we don't schedule for past.
+            final long ticks = Math.max(calculated, tick);
+            final long remaining = ticks - tick;
+            int level = 0;
+            while (level + 1 < wheels.length && (remaining >>> ((level + 1) * shift)) != 0) {
+                level++;
+            }
+            HashedWheelBucket[] wheel = wheels[level];
+            if (wheel == null) {
+                wheel = wheels[level] = createWheel(mask + 1);
+            }
+            int stopIndex = (int) ((ticks >>> (level * shift)) & mask);
+            wheel[stopIndex].addTimeout(timeout);
+        }
 
-                HashedWheelBucket bucket = wheel[stopIndex];
-                bucket.addTimeout(timeout);
+        /**
+         * Moves the timeouts of the upper buckets whose span starts at the current tick down, highest wheel first
+         * so they can fall through several wheels.
+         */
+        private void cascade() {
+            for (int level = wheels.length - 1; level > 0; level--) {
+                HashedWheelBucket[] wheel = wheels[level];
+                if (wheel == null || (tick & ((1L << (level * shift)) - 1)) != 0) {
+                    continue;
+                }
+                HashedWheelBucket bucket = wheel[(int) ((tick >>> (level * shift)) & mask)];
+                for (; ; ) {
+                    HashedWheelTimeout timeout = bucket.pollTimeout();
+                    if (timeout == null) {
+                        break;
+                    }
+                    schedule(timeout);
+                }
             }
         }
 
@@ -519,7 +640,7 @@ public class HashedWheelTimer implements Timer {
         }
     }
 
-    private static final class HashedWheelTimeout implements Timeout {
+    private static final class HashedWheelTimeout implements Timeout, Runnable {
 
         private static final int ST_INIT = 0;
         private static final int ST_CANCELLED = 1;
@@ -534,12 +655,6 @@ public class HashedWheelTimer implements Timer {
         @SuppressWarnings({"unused", "FieldMayBeFinal", "RedundantFieldInitialization"})
         private volatile int state = ST_INIT;
 
-        /**
-         * RemainingRounds will be calculated and set by Worker.transferTimeoutsToBuckets() before the
-         * HashedWheelTimeout will be added to the correct HashedWheelBucket.
-         */
-        long remainingRounds;
-
         /**
          * This will be used to chain timeouts in HashedWheelTimerBucket via a double-linked-list.
          * As only the workerThread will act on it there is no need for synchronization / volatile.
@@ -577,7 +692,7 @@ public class HashedWheelTimer implements Timer {
             // If a task should be canceled we put this to another queue which will be processed on each tick.
             // So this means that we will have a GC latency of max. 1 tick duration which is good enough. This way
             // we can make again use of our MpscLinkedQueue and so minimize the locking / overhead as much as possible.
-            timer.cancelledTimeouts.add(this);
+            timer.cancelledTimeouts.offer(this);
             return true;
         }
 
@@ -613,12 +728,28 @@ public class HashedWheelTimer implements Timer {
                 return;
             }
 
+            try {
+                timer.taskExecutor.execute(this);
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("An exception was thrown while submit " + TimerTask.class.getSimpleName()
+                            + " for execution.", t);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
             try {
                 task.run(this);
             } catch (Throwable t) {
                 if (logger.isWarnEnabled()) {
                     logger.warn("An exception was thrown by " + TimerTask.class.getSimpleName() + '.', t);
                 }
+            } finally {
+                timer.taskNanos.add(System.nanoTime() - start);
+                timer.tasks.increment();
             }
         }
 
@@ -682,27 +813,25 @@ public class HashedWheelTimer implements Timer {
         }
 
         /**
-         * Expire all {@link HashedWheelTimeout}s for the given {@code deadline}.
+         * Expire all {@link HashedWheelTimeout}s for the given {@code deadline}, a bucket of the lowest wheel only
+         * holds timeouts of its current tick.
          */
         void expireTimeouts(long deadline) {
             HashedWheelTimeout timeout = head;
 
             // process all timeouts
             while (timeout != null) {
-                HashedWheelTimeout next = timeout.next;
-                if (timeout.remainingRounds <= 0) {
-                    next = remove(timeout);
-                    if (timeout.deadline <= deadline) {
-                        timeout.expire();
-                    } else {
-                        // The timeout was placed into a wrong slot. This should never happen.
-                        throw new IllegalStateException(String.format(
-                                "timeout.deadline (%d) > deadline (%d)", timeout.deadline, deadline));
-                    }
-                } else if (timeout.isCancelled()) {
-                    next = remove(timeout);
+                HashedWheelTimeout next = remove(timeout);
+                if (timeout.isCancelled()) {
+                    timeout = next;
+                    continue;
+                }
+                if (timeout.deadline <= deadline) {
+                    timeout.expire();
                 } else {
-                    timeout.remainingRounds--;
+                    // The timeout was placed into a wrong slot. This should never happen.
+                    throw new IllegalStateException(String.format(
+                            "timeout.deadline (%d) > deadline (%d)", timeout.deadline, deadline));
                 }
                 timeout = next;
             }
@@ -754,7 +883,7 @@ public class HashedWheelTimer implements Timer {
             }
         }
 
-        private HashedWheelTimeout pollTimeout() {
+        HashedWheelTimeout pollTimeout() {
             HashedWheelTimeout head = this.head;
             if (head == null) {
                 return null;
@@ -0,0 +1,51 @@
+package cn.sliew.milky.common.timewheel;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Pending timeouts, tick lag and task execution time of a {@link HashedWheelTimer}.
+ * <p>
+ * Tick lag is how late the worker thread starts a tick after its scheduled time, it grows
+ * when tasks running on the worker thread or a busy machine hold the worker back.
+ */
+public class HashedWheelTimerMetrics implements MeterBinder {
+
+    private final HashedWheelTimer timer;
+    private final Iterable<Tag> tags;
+
+    public HashedWheelTimerMetrics(HashedWheelTimer timer, String name, Tag... tags) {
+        this.timer = checkNotNull(timer);
+        this.tags = Tags.of(tags).and("name", name);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("timer.pending", timer, HashedWheelTimer::pendingTimeouts)
+                .tags(tags)
+                .description("The number of timeouts neither expired nor cancelled yet")
+                .baseUnit("tasks")
+                .register(registry);
+        FunctionTimer.builder("timer.tick.lag", timer, t -> t.ticks, t -> t.tickLagNanos, TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Delay of ticks behind their scheduled time")
+                .register(registry);
+        TimeGauge.builder("timer.tick.lag.last", timer, TimeUnit.NANOSECONDS, t -> t.lastTickLagNanos)
+                .tags(tags)
+                .description("Delay of the last tick behind its scheduled time")
+                .register(registry);
+        FunctionTimer.builder("timer.task.execution", timer, t -> t.tasks.sum(), t -> t.taskNanos.sum(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("Execution of expired timer tasks")
+                .register(registry);
+    }
+}
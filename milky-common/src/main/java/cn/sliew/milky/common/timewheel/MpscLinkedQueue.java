@@ -0,0 +1,60 @@
+package cn.sliew.milky.common.timewheel;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * A producer swaps itself in as the tail with one atomic exchange and then links the previous
+ * tail to its node, so producers never retry nor block. The consumer walks the links, an element
+ * whose producer has not linked it yet is seen on a later {@link #poll()}.
+ *
+ * @param <E> the type of the queued elements
+ */
+final class MpscLinkedQueue<E> {
+
+    private final AtomicReference<Node<E>> tail;
+    // only accessed by the consumer, a stub node whose next is the first element
+    private Node<E> head;
+
+    MpscLinkedQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    void offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("e");
+        }
+        Node<E> node = new Node<>(e);
+        Node<E> previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return the first element or {@code null} if none is linked yet
+     */
+    E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E e = next.value;
+        next.value = null;
+        head = next;
+        return e;
+    }
+
+    private static final class Node<E> {
+
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+}
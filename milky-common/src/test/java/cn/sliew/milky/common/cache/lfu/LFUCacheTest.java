@@ -0,0 +1,145 @@
+package cn.sliew.milky.common.cache.lfu;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LFUCacheTest extends MilkyTestCase {
+
+    @Test
+    void testEvictLeastFrequentlyUsed() {
+        LFUCache<Integer, String> cache = new LFUCache<>(3, 0.0f);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);
+        cache.get(1);
+        cache.get(3);
+        cache.put(4, "four");
+
+        assertEquals(3, cache.getSize());
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    void testEvictOldestOfSameFrequency() {
+        LFUCache<Integer, String> cache = new LFUCache<>(2, 0.0f);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        assertNull(cache.get(1));
+        assertEquals("two", cache.get(2));
+    }
+
+    @Test
+    void testEvictionFactor() {
+        LFUCache<Integer, String> cache = new LFUCache<>(8, 0.5f);
+        for (int i = 0; i < 8; i++) {
+            cache.put(i, "value");
+            cache.get(i);
+        }
+        cache.get(7);
+        cache.put(8, "value");
+
+        // the new entry is the least frequent one, it goes first
+        assertEquals(4, cache.getSize());
+        assertNull(cache.get(8));
+        assertEquals("value", cache.get(7));
+    }
+
+    @Test
+    void testPutResetsFrequency() {
+        LFUCache<Integer, String> cache = new LFUCache<>(2, 0.0f);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.get(2);
+        cache.put(1, "uno");
+        cache.put(3, "three");
+
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get(1));
+        assertEquals("two", cache.get(2));
+    }
+
+    @Test
+    void testEvictSaturatedFrequency() {
+        LFUCache<Integer, String> cache = new LFUCache<>(2, 1.0f, 1);
+        cache.put(1, "one");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("one", cache.get(1));
+        }
+        cache.put(2, "two");
+        cache.get(2);
+        // evicts all entries, including the one which hit the frequency cap
+        cache.put(3, "three");
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(1));
+        cache.put(4, "four");
+        cache.put(5, "five");
+        assertEquals(2, cache.getSize());
+        assertEquals("four", cache.get(4));
+        assertEquals("five", cache.get(5));
+    }
+
+    @Test
+    void testRemove() {
+        LFUCache<Integer, String> cache = new LFUCache<>(2, 0.75f);
+        cache.put(1, "one");
+        cache.get(1);
+
+        assertEquals("one", cache.remove(1));
+        assertNull(cache.remove(1));
+        assertEquals(0, cache.getSize());
+        cache.put(2, "two");
+        cache.put(3, "three");
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void testConcurrentCache() throws Exception {
+        ConcurrentLFUCache<Integer, Integer> cache = new ConcurrentLFUCache<>(100, 0.25f, 8);
+        assertEquals(100, cache.getCapacity());
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 20000; j++) {
+                    int key = random.nextInt(1000);
+                    if (random.nextInt(10) == 0) {
+                        cache.put(key, key);
+                    } else {
+                        Integer value = cache.get(key);
+                        assertTrue(value == null || value == key);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertTrue(cache.getSize() > 0 && cache.getSize() <= 100);
+    }
+}
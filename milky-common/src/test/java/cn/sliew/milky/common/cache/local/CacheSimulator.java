@@ -0,0 +1,95 @@
+package cn.sliew.milky.common.cache.local;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays an access trace against {@link Cache} with every {@link EvictionPolicy} and reports the hit ratios.
+ * <p>
+ * A trace is a text file with one access per line, the first whitespace separated token of a line is the key.
+ * Every access is a get followed by a put on miss. Without a trace file a synthetic one is replayed, zipfian
+ * reads over a large key space interrupted by scans over keys never seen again.
+ * <pre>
+ * java cn.sliew.milky.common.cache.local.CacheSimulator [maximumSize] [trace file]
+ * </pre>
+ */
+public final class CacheSimulator {
+
+    private CacheSimulator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long maximumSize = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        List<String> trace;
+        if (args.length > 1) {
+            try (Stream<String> lines = Files.lines(Paths.get(args[1]))) {
+                trace = lines.map(String::trim)
+                        .filter(line -> !line.isEmpty())
+                        .map(line -> line.split("\\s+", 2)[0])
+                        .collect(Collectors.toList());
+            }
+        } else {
+            trace = zipfWithScans(new Random(42), 100_000, 0.9, 500_000, 10_000, 5_000);
+        }
+        System.out.printf("trace of %d accesses, maximum size %d%n", trace.size(), maximumSize);
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            System.out.printf("%-12s hit ratio %.4f%n", policy, simulate(policy, maximumSize, trace));
+        }
+    }
+
+    /**
+     * Replays {@code trace} on a cache of {@code maximumSize} entries.
+     *
+     * @return the fraction of accesses that hit the cache
+     */
+    public static double simulate(EvictionPolicy policy, long maximumSize, Iterable<String> trace) {
+        Cache<String, String> cache = CacheBuilder.<String, String>builder()
+                .setMaximumWeight(maximumSize)
+                .setEvictionPolicy(policy)
+                .build();
+        long hits = 0;
+        long accesses = 0;
+        for (String key : trace) {
+            accesses++;
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return accesses == 0 ? 0.0 : (double) hits / accesses;
+    }
+
+    /**
+     * Generates {@code accesses} zipfian distributed accesses over {@code keySpace} keys, every {@code scanPeriod}
+     * accesses a scan over {@code scanLength} fresh keys is inserted.
+     */
+    public static List<String> zipfWithScans(Random random, int keySpace, double skew, int accesses,
+                                             int scanPeriod, int scanLength) {
+        double[] cumulative = new double[keySpace];
+        double sum = 0.0;
+        for (int i = 0; i < keySpace; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        List<String> trace = new ArrayList<>(accesses + accesses / scanPeriod * scanLength);
+        int scanned = 0;
+        for (int i = 0; i < accesses; i++) {
+            if (i > 0 && i % scanPeriod == 0) {
+                for (int j = 0; j < scanLength; j++) {
+                    trace.add("scan-" + scanned++);
+                }
+            }
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            trace.add("key-" + (index < 0 ? -index - 1 : index));
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,22 @@
+package cn.sliew.milky.common.cache.local;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheSimulatorTest extends MilkyTestCase {
+
+    @Test
+    void testTinyLfuResistsScans() {
+        List<String> trace = CacheSimulator.zipfWithScans(new Random(42), 10_000, 0.9, 100_000, 5_000, 2_000);
+
+        double lru = CacheSimulator.simulate(EvictionPolicy.LRU, 500, trace);
+        double tinyLfu = CacheSimulator.simulate(EvictionPolicy.W_TINY_LFU, 500, trace);
+
+        assertTrue(tinyLfu > lru, () -> "W-TinyLFU " + tinyLfu + " not above LRU " + lru);
+    }
+}
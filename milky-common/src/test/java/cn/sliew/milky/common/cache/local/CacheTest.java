@@ -0,0 +1,144 @@
+package cn.sliew.milky.common.cache.local;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTest extends MilkyTestCase {
+
+    @Test
+    void testEvictLeastRecentlyUsed() {
+        List<Integer> evicted = new ArrayList<>();
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(3)
+                .removalListener(notification -> evicted.add(notification.getKey()))
+                .build();
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        // the hit is buffered and promoted by the next write
+        assertEquals("one", cache.get(1));
+        cache.put(4, "four");
+
+        assertEquals(Collections.singletonList(2), evicted);
+        assertEquals(3, cache.count());
+        List<Integer> keys = new ArrayList<>();
+        cache.keys().forEach(keys::add);
+        assertEquals(Arrays.asList(4, 1, 3), keys);
+    }
+
+    @Test
+    void testReplace() {
+        List<RemovalNotification<Integer, String>> notifications = new ArrayList<>();
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>builder()
+                .removalListener(notifications::add)
+                .build();
+        cache.put(1, "one");
+        cache.put(1, "uno");
+        assertEquals("uno", cache.get(1));
+        assertEquals(1, cache.count());
+        assertEquals(1, notifications.size());
+        assertEquals("one", notifications.get(0).getValue());
+        assertEquals(RemovalNotification.RemovalReason.REPLACED, notifications.get(0).getRemovalReason());
+    }
+
+    @Test
+    void testTinyLfuRejectsOneHitWonders() {
+        AtomicInteger evictedHot = new AtomicInteger();
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(100)
+                .setEvictionPolicy(EvictionPolicy.W_TINY_LFU)
+                .removalListener(notification -> {
+                    if (notification.getKey() < 100) {
+                        evictedHot.incrementAndGet();
+                    }
+                })
+                .build();
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "hot");
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals("hot", cache.get(i));
+            }
+        }
+        // a scan over cold keys, which would flush the whole cache with LRU
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(i, "cold");
+        }
+        cache.refresh();
+
+        assertEquals(100, cache.count());
+        assertTrue(evictedHot.get() < 10, () -> evictedHot.get() + " hot keys evicted");
+    }
+
+    @Test
+    void testConcurrentReadsAndWrites() throws Exception {
+        testConcurrentReadsAndWrites(EvictionPolicy.LRU);
+    }
+
+    @Test
+    void testTinyLfuConcurrentReadsAndWrites() throws Exception {
+        testConcurrentReadsAndWrites(EvictionPolicy.W_TINY_LFU);
+    }
+
+    private void testConcurrentReadsAndWrites(EvictionPolicy evictionPolicy) throws Exception {
+        AtomicInteger removals = new AtomicInteger();
+        Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>builder()
+                .setMaximumWeight(100)
+                .setEvictionPolicy(evictionPolicy)
+                .removalListener(notification -> removals.incrementAndGet())
+                .build();
+        int threads = 8;
+        int operations = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        AtomicInteger puts = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < operations; j++) {
+                    int key = random.nextInt(1000);
+                    if (random.nextInt(10) == 0) {
+                        cache.put(key, key);
+                        puts.incrementAndGet();
+                    } else {
+                        Integer value = cache.get(key);
+                        assertTrue(value == null || value == key);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        cache.refresh();
+
+        // every put is either resident or was evicted or replaced exactly once
+        assertEquals(100, cache.count());
+        assertEquals(puts.get(), cache.count() + removals.get());
+        int linked = 0;
+        for (Integer key : cache.keys()) {
+            assertEquals(key, cache.get(key));
+            linked++;
+        }
+        assertEquals(cache.count(), linked);
+    }
+}
@@ -0,0 +1,98 @@
+package cn.sliew.milky.common.cache.lru;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLRUCacheTest extends MilkyTestCase {
+
+    @Test
+    void testEvictUnreferenced() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(3);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        assertEquals("one", cache.get(1));
+        cache.put(4, "four");
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(1));
+        assertTrue(cache.containsKey(3));
+        assertTrue(cache.containsKey(4));
+    }
+
+    @Test
+    void testPutReplaces() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(2);
+        assertNull(cache.put(1, "one"));
+        assertEquals("one", cache.put(1, "uno"));
+        assertEquals("uno", cache.get(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testRemoveAndIterate() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(10);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i % 5, "value");
+            assertEquals("value", cache.remove(i % 5));
+        }
+        assertTrue(cache.isEmpty());
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        Iterator<Map.Entry<Integer, String>> iterator = cache.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    void testConcurrentReadsAndWrites() throws Exception {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(100);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int j = 0; j < 20000; j++) {
+                    int key = random.nextInt(1000);
+                    int operation = random.nextInt(20);
+                    if (operation == 0) {
+                        cache.remove(key);
+                    } else if (operation < 3) {
+                        cache.put(key, key);
+                    } else {
+                        Integer value = cache.get(key);
+                        assertTrue(value == null || value == key);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertTrue(cache.size() <= 100, () -> "size " + cache.size());
+    }
+}
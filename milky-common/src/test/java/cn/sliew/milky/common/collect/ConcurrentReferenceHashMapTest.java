@@ -0,0 +1,117 @@
+package cn.sliew.milky.common.collect;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentReferenceHashMapTest extends MilkyTestCase {
+
+    @Test
+    void testPutGetRemove() {
+        ConcurrentReferenceHashMap<String, String> map = new ConcurrentReferenceHashMap<>();
+        assertNull(map.put("a", "1"));
+        assertEquals("1", map.put("a", "2"));
+        assertEquals("2", map.putIfAbsent("a", "3"));
+        assertNull(map.put(null, "null"));
+        assertEquals("null", map.get(null));
+        assertTrue(map.containsKey("a"));
+        assertFalse(map.containsKey("b"));
+        assertEquals("x", map.getOrDefault("b", "x"));
+        assertEquals(2, map.size());
+
+        assertFalse(map.remove("a", "1"));
+        assertTrue(map.remove("a", "2"));
+        assertEquals("null", map.remove(null));
+        assertNull(map.get("a"));
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testEntrySetContains() {
+        ConcurrentReferenceHashMap<String, String> map = new ConcurrentReferenceHashMap<>();
+        map.put("a", "1");
+        assertTrue(map.entrySet().contains(new AbstractMap.SimpleEntry<>("a", "1")));
+        assertFalse(map.entrySet().contains(new AbstractMap.SimpleEntry<>("a", "2")));
+    }
+
+    @Test
+    void testResize() {
+        ConcurrentReferenceHashMap<Integer, Integer> map = new ConcurrentReferenceHashMap<>(16, 0.75f, 1);
+        int initialSize = map.getSegment(0).getSize();
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i, i);
+        }
+        assertTrue(map.getSegment(0).getSize() > initialSize);
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, map.get(i));
+        }
+        int iterated = 0;
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue());
+            iterated++;
+        }
+        assertEquals(10_000, iterated);
+    }
+
+    @Test
+    void testPurgeCollectedEntries() throws InterruptedException {
+        ConcurrentReferenceHashMap<Object, Object> map = new ConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+        for (int i = 0; i < 1000; i++) {
+            map.put(new Object(), new Object());
+        }
+        for (int i = 0; i < 50 && map.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+            map.purgeUnreferencedEntries();
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testReadsDuringWrites() throws Exception {
+        ConcurrentReferenceHashMap<Integer, Integer> map = new ConcurrentReferenceHashMap<>(16, 0.75f, 2);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> reader = executor.submit(() -> {
+                started.countDown();
+                while (!done.get()) {
+                    for (int i = 0; i < 1000; i++) {
+                        assertEquals(i, map.get(i));
+                    }
+                }
+            });
+            Future<?> writer = executor.submit(() -> {
+                started.countDown();
+                for (int i = 1000; i < 100_000; i++) {
+                    map.put(i, i);
+                    if (i >= 1500) {
+                        map.remove(i - 500);
+                    }
+                }
+            });
+            started.await();
+            writer.get();
+            done.set(true);
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1500, map.size());
+    }
+}
@@ -0,0 +1,115 @@
+package cn.sliew.milky.common.collect;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashMapTest extends MilkyTestCase {
+
+    @Test
+    void testPlusMinus() {
+        PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, String> one = empty.plus("a", "1");
+        PersistentHashMap<String, String> two = one.plus("b", null);
+
+        assertTrue(empty.isEmpty());
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertEquals("1", two.get("a"));
+        assertNull(two.get("b"));
+        assertTrue(two.containsKey("b"));
+        assertFalse(one.containsKey("b"));
+
+        assertSame(two, two.plus("a", "1"));
+        assertSame(two, two.minus("c"));
+        assertEquals("2", two.plus("a", "2").get("a"));
+        assertEquals("1", two.get("a"));
+        assertSame(PersistentHashMap.empty(), one.minus("a"));
+        assertThrows(UnsupportedOperationException.class, () -> two.put("c", "3"));
+    }
+
+    @Test
+    void testHashCollisions() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new CollidingKey(i % 2, i), i);
+        }
+        assertEquals(10, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, map.get(new CollidingKey(i % 2, i)));
+        }
+        for (int i = 0; i < 10; i += 2) {
+            map = map.minus(new CollidingKey(0, i));
+        }
+        assertEquals(5, map.size());
+        assertFalse(map.containsKey(new CollidingKey(0, 0)));
+        assertEquals(1, map.get(new CollidingKey(1, 1)));
+    }
+
+    @Test
+    void testAgainstHashMap() {
+        Random random = new Random(42L);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100_000; i++) {
+            // keys spread over the full int range to build deep tries
+            Integer key = random.nextInt(2_000) * 0x9E3779B1;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void testStructuralSharing() {
+        PersistentHashMap<String, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20; i++) {
+            map = map.plus("key" + i, "value" + i);
+        }
+        PersistentHashMap<String, String> snapshot = map;
+        PersistentHashMap<String, String> updated = map.plus("key0", "changed").minus("key1");
+        assertEquals("value0", snapshot.get("key0"));
+        assertEquals("value1", snapshot.get("key1"));
+        assertEquals("changed", updated.get("key0"));
+        assertFalse(updated.containsKey("key1"));
+        assertEquals(20, snapshot.size());
+        assertEquals(19, updated.size());
+    }
+
+    private static final class CollidingKey {
+
+        private final int hash;
+        private final int id;
+
+        CollidingKey(int hash, int id) {
+            this.hash = hash;
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).hash == hash && ((CollidingKey) o).id == id;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package cn.sliew.milky.common.recycler;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytesRecyclerTest extends MilkyTestCase {
+
+    @Test
+    void testSizeClasses() {
+        BytesRecycler recycler = new BytesRecycler(false);
+        Value<byte[]> small = recycler.bytes(10);
+        Value<byte[]> page = recycler.bytes(BytesRecycler.SMALL_SIZE + 1);
+        Value<byte[]> chunk = recycler.bytes(BytesRecycler.CHUNK_SIZE);
+        Value<byte[]> oversize = recycler.bytes(BytesRecycler.CHUNK_SIZE + 1);
+        assertEquals(BytesRecycler.SMALL_SIZE, small.value().length);
+        assertEquals(BytesRecycler.PAGE_SIZE, page.value().length);
+        assertEquals(BytesRecycler.CHUNK_SIZE, chunk.value().length);
+        assertEquals(BytesRecycler.CHUNK_SIZE + 1, oversize.value().length);
+        assertEquals(4, recycler.outstanding());
+
+        small.close();
+        page.close();
+        chunk.close();
+        oversize.close();
+        assertEquals(0, recycler.outstanding());
+        assertThrows(IllegalArgumentException.class, () -> recycler.bytes(-1));
+    }
+
+    @Test
+    void testReuse() {
+        BytesRecycler recycler = new BytesRecycler(false);
+        Value<byte[]> first = recycler.bytes(100);
+        byte[] bytes = first.value();
+        first.close();
+
+        Value<byte[]> second = recycler.bytes(200);
+        assertSame(bytes, second.value());
+        second.close();
+        assertEquals(1, recycler.hits());
+        assertEquals(1, recycler.misses());
+    }
+
+    @Test
+    void testOversizeNotPooled() {
+        BytesRecycler recycler = new BytesRecycler(false);
+        Value<byte[]> first = recycler.bytes(BytesRecycler.CHUNK_SIZE + 1);
+        byte[] bytes = first.value();
+        first.close();
+
+        Value<byte[]> second = recycler.bytes(BytesRecycler.CHUNK_SIZE + 1);
+        assertNotSame(bytes, second.value());
+        second.close();
+        assertEquals(0, recycler.hits());
+        assertEquals(0, recycler.outstanding());
+    }
+
+    @Test
+    void testBuffers() {
+        BytesRecycler recycler = new BytesRecycler(true);
+        Value<ByteBuffer> first = recycler.buffer(BytesRecycler.PAGE_SIZE);
+        ByteBuffer buffer = first.value();
+        assertTrue(buffer.isDirect());
+        assertEquals(BytesRecycler.PAGE_SIZE, buffer.capacity());
+        buffer.putLong(1L);
+        first.close();
+
+        Value<ByteBuffer> second = recycler.buffer(BytesRecycler.SMALL_SIZE + 1);
+        assertSame(buffer, second.value());
+        assertEquals(0, buffer.position());
+        assertEquals(BytesRecycler.PAGE_SIZE, buffer.limit());
+        second.close();
+    }
+}
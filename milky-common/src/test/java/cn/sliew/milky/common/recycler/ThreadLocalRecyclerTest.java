@@ -0,0 +1,99 @@
+package cn.sliew.milky.common.recycler;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadLocalRecyclerTest extends MilkyTestCase {
+
+    private final AtomicInteger destroyed = new AtomicInteger();
+
+    private final Source<StringBuilder> source = new AbstractSource<StringBuilder>() {
+        @Override
+        public StringBuilder newInstance() {
+            return new StringBuilder();
+        }
+
+        @Override
+        public void recycle(StringBuilder value) {
+            value.setLength(0);
+        }
+
+        @Override
+        public void destroy(StringBuilder value) {
+            destroyed.incrementAndGet();
+        }
+    };
+
+    @Test
+    void testReuseOnSameThread() {
+        ThreadLocalRecycler<StringBuilder> recycler = new ThreadLocalRecycler<>(source, 4);
+        Value<StringBuilder> first = recycler.obtain();
+        assertFalse(first.isRecycled());
+        StringBuilder builder = first.value();
+        builder.append("dirty");
+        first.close();
+
+        Value<StringBuilder> second = recycler.obtain();
+        assertSame(first, second);
+        assertSame(builder, second.value());
+        assertTrue(second.isRecycled());
+        assertEquals(0, second.value().length());
+        assertEquals(1, recycler.hits());
+        assertEquals(1, recycler.misses());
+    }
+
+    @Test
+    void testReleaseTwice() {
+        ThreadLocalRecycler<StringBuilder> recycler = new ThreadLocalRecycler<>(source, 4);
+        Value<StringBuilder> value = recycler.obtain();
+        value.close();
+        assertThrows(IllegalStateException.class, value::close);
+    }
+
+    @Test
+    void testDropBeyondMaxSize() {
+        ThreadLocalRecycler<StringBuilder> recycler = new ThreadLocalRecycler<>(source, 2);
+        List<Value<StringBuilder>> values = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            values.add(recycler.obtain());
+        }
+        values.forEach(Value::close);
+
+        assertEquals(3, recycler.drops());
+        assertEquals(3, destroyed.get());
+        assertTrue(recycler.obtain().isRecycled());
+        assertTrue(recycler.obtain().isRecycled());
+        assertFalse(recycler.obtain().isRecycled());
+    }
+
+    @Test
+    void testReleaseFromOtherThread() throws Exception {
+        ThreadLocalRecycler<StringBuilder> recycler = new ThreadLocalRecycler<>(source, 4);
+        List<Value<StringBuilder>> values = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            values.add(recycler.obtain());
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> values.forEach(Value::close)).get();
+            // released objects go back to the obtaining thread, not to the pool of the releasing one
+            assertFalse(executor.submit(() -> recycler.obtain().isRecycled()).get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, recycler.drops());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(recycler.obtain().isRecycled());
+        }
+        assertFalse(recycler.obtain().isRecycled());
+    }
+}
@@ -0,0 +1,136 @@
+package cn.sliew.milky.common.reference;
+
+import cn.sliew.milky.common.recycler.AbstractSource;
+import cn.sliew.milky.common.recycler.ThreadLocalRecycler;
+import cn.sliew.milky.common.recycler.Value;
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceLeakDetectorTest extends MilkyTestCase {
+
+    private final ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+
+    @AfterEach
+    void restoreLevel() {
+        ResourceLeakDetector.setLevel(level);
+    }
+
+    @Test
+    void testDisabled() {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        ResourceLeakDetector<Object> detector = new ResourceLeakDetector<>("Object", 1);
+        assertNull(detector.track(new Object()));
+        assertFalse(ResourceLeakDetector.isEnabled());
+    }
+
+    @Test
+    void testSampling() {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.SIMPLE);
+        ResourceLeakDetector<Object> detector = new ResourceLeakDetector<>("Object", 1 << 20);
+        int tracked = 0;
+        for (int i = 0; i < 1000; i++) {
+            Object resource = new Object();
+            ResourceLeakTracker<Object> leak = detector.track(resource);
+            if (leak != null) {
+                tracked++;
+                leak.close(resource);
+            }
+        }
+        assertTrue(tracked < 10);
+
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        Object resource = new Object();
+        ResourceLeakTracker<Object> leak = detector.track(resource);
+        assertNotNull(leak);
+        assertTrue(leak.close(resource));
+        assertFalse(leak.close(resource));
+    }
+
+    @Test
+    void testReportsLeak() throws InterruptedException {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.ADVANCED);
+        List<String> reports = new CopyOnWriteArrayList<>();
+        ResourceLeakDetector<Object> detector = new ResourceLeakDetector<Object>("Object", 1) {
+            @Override
+            protected void reportTracedLeak(String resourceType, String records) {
+                reports.add(records);
+            }
+        };
+        leak(detector);
+
+        awaitLeak(detector, detector::leaks);
+        assertEquals(1, detector.leaks());
+        assertEquals(1, reports.size());
+        assertTrue(reports.get(0).contains("Created at:"));
+        assertTrue(reports.get(0).contains("Hint: accessed"));
+    }
+
+    @Test
+    void testClosedNotReported() throws InterruptedException {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        ResourceLeakDetector<Object> detector = new ResourceLeakDetector<>("Object", 1);
+        for (int i = 0; i < 100; i++) {
+            Object resource = new Object();
+            detector.track(resource).close(resource);
+        }
+        leak(detector);
+
+        awaitLeak(detector, detector::leaks);
+        assertEquals(1, detector.leaks());
+    }
+
+    @Test
+    void testRecyclerValueLeak() throws InterruptedException {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        ThreadLocalRecycler<StringBuilder> recycler = new ThreadLocalRecycler<>(new AbstractSource<StringBuilder>() {
+            @Override
+            public StringBuilder newInstance() {
+                return new StringBuilder();
+            }
+
+            @Override
+            public void recycle(StringBuilder value) {
+                value.setLength(0);
+            }
+        }, 4);
+        ResourceLeakDetector<Value<?>> detector = ThreadLocalRecycler.leakDetector();
+        long leaks = detector.leaks();
+
+        recycler.obtain().close();
+        recycler.obtain();
+
+        awaitLeak(detector, () -> detector.leaks() - leaks);
+        assertEquals(1, detector.leaks() - leaks);
+    }
+
+    private static void leak(ResourceLeakDetector<Object> detector) {
+        detector.track(new Object()).record("accessed");
+    }
+
+    /**
+     * Collects garbage until {@code leaks} are reported, reports are checked on tracking.
+     */
+    private static <T> void awaitLeak(ResourceLeakDetector<T> detector, LongSupplier leaks) throws InterruptedException {
+        for (int i = 0; i < 50 && leaks.getAsLong() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+            track(detector);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void track(ResourceLeakDetector<T> detector) {
+        Object resource = new Object();
+        ResourceLeakTracker<T> leak = detector.track((T) resource);
+        if (leak != null) {
+            leak.close((T) resource);
+        }
+    }
+}
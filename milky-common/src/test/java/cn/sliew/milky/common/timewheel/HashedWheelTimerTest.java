@@ -0,0 +1,116 @@
+package cn.sliew.milky.common.timewheel;
+
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest extends MilkyTestCase {
+
+    @Test
+    void testExpireAcrossWheels() throws Exception {
+        // 4 ticks per wheel, timeouts up to 200 ticks away cascade down from the fourth wheel
+        HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS, 4);
+        int count = 200;
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 1; i <= count; i++) {
+            long delay = i;
+            long scheduled = System.nanoTime();
+            timer.newTimeout(timeout -> {
+                if (System.nanoTime() - scheduled < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.incrementAndGet();
+                }
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(0, early.get());
+            assertEquals(0, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS, 4);
+        AtomicInteger expired = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                Timeout timeout = timer.newTimeout(t -> expired.incrementAndGet(), 20 + i, TimeUnit.MILLISECONDS);
+                assertTrue(timeout.cancel());
+                assertFalse(timeout.cancel());
+                assertTrue(timeout.isCancelled());
+            }
+            timer.newTimeout(t -> latch.countDown(), 150, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(0, expired.get());
+            assertEquals(0, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void testStopReturnsUnprocessed() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS, 4);
+        timer.newTimeout(t -> {
+        }, 1, TimeUnit.HOURS);
+        timer.newTimeout(t -> {
+        }, 1, TimeUnit.DAYS);
+        timer.newTimeout(t -> {
+        }, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        Thread.sleep(20);
+
+        Set<Timeout> unprocessed = timer.stop();
+        assertEquals(3, unprocessed.size());
+        assertTrue(timer.isStop());
+    }
+
+    @Test
+    void testTaskExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS,
+                512, -1, executor);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new HashedWheelTimerMetrics(timer, "test").bindTo(registry);
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fast = new CountDownLatch(1);
+        try {
+            timer.newTimeout(t -> {
+                slowStarted.countDown();
+                release.await();
+            }, 1, TimeUnit.MILLISECONDS);
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+            long ticks = timer.ticks;
+            // the worker keeps ticking while the slow task holds the executor
+            Thread.sleep(50);
+            assertTrue(timer.ticks > ticks);
+
+            timer.newTimeout(t -> fast.countDown(), 1, TimeUnit.MILLISECONDS);
+            release.countDown();
+            assertTrue(fast.await(10, TimeUnit.SECONDS));
+
+            assertEquals(0.0, registry.get("timer.pending").gauge().value());
+            assertTrue(registry.get("timer.tick.lag").functionTimer().count() > 0);
+            FunctionTimer execution = registry.get("timer.task.execution").functionTimer();
+            assertTrue(execution.totalTime(TimeUnit.MILLISECONDS) >= 40, () -> "slow task " + execution.totalTime(TimeUnit.MILLISECONDS));
+        } finally {
+            timer.stop();
+            executor.shutdownNow();
+        }
+    }
+}
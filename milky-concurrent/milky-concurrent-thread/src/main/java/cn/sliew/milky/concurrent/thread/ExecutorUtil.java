@@ -79,4 +79,22 @@ class ExecutorUtil {
     static BlockingQueue<Runnable> resizableQueue(BlockingQueue<Runnable> queue, int initialCapacity) {
         return new ResizableBlockingQueue<>(queue, initialCapacity);
     }
+
+    /**
+     * Create a factory of virtual threads named {@code prefix} followed by a counter, looked up
+     * reflectively as virtual threads are not part of the targeted Java versions.
+     *
+     * @return the factory or {@code null} if the running JVM does not support virtual threads
+     */
+    static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // before java 21 or preview features disabled
+            return null;
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package cn.sliew.milky.concurrent.thread;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * Implements exponentially weighted moving averages (commonly abbreviated EWMA) for a single value.
+ * This class is safe to share between threads, values are added without locking.
+ */
+public final class ExponentiallyWeightedMovingAverage {
+
+    private final double alpha;
+    private final AtomicLong averageBits;
+
+    /**
+     * Create a new EWMA with a given {@code alpha} and {@code initialAverage}. A smaller alpha means
+     * that new data points will have less weight, where a high alpha means older data points will
+     * have a lower influence.
+     */
+    public ExponentiallyWeightedMovingAverage(double alpha, double initialAverage) {
+        checkArgument(alpha >= 0 && alpha <= 1, () -> "alpha must be greater or equal to 0 and less than or equal to 1");
+        this.alpha = alpha;
+        this.averageBits = new AtomicLong(Double.doubleToLongBits(initialAverage));
+    }
+
+    public double getAverage() {
+        return Double.longBitsToDouble(this.averageBits.get());
+    }
+
+    public void addValue(double newValue) {
+        while (true) {
+            final long currentBits = this.averageBits.get();
+            final double currentAverage = Double.longBitsToDouble(currentBits);
+            final double newAverage = (alpha * newValue) + ((1 - alpha) * currentAverage);
+            if (this.averageBits.compareAndSet(currentBits, Double.doubleToLongBits(newAverage))) {
+                return;
+            }
+        }
+    }
+}
@@ -4,10 +4,12 @@ import cn.sliew.milky.common.collect.ConcurrentReferenceHashMap;
 import cn.sliew.milky.common.concurrent.DaemonThreadFactory;
 import cn.sliew.milky.common.concurrent.RunnableWrapper;
 import cn.sliew.milky.common.exception.Rethrower;
+import cn.sliew.milky.common.unit.TimeValue;
 import cn.sliew.milky.concurrent.thread.policy.AbortPolicyWithReport;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -20,7 +22,8 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
      */
     private final String name;
     private final ThreadContext threadContext;
-    private volatile ShutdownListener listener;
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private boolean terminated = false;
 
     private final Object monitor = new Object();
 
@@ -37,6 +40,11 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
     private final Map<Runnable, Object> decoratedTaskMap =
             new ConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
 
+    private final ThreadLocal<long[]> executionStartNanos = ThreadLocal.withInitial(() -> new long[1]);
+    private final List<TaskExecutionListener> taskExecutionListeners = new CopyOnWriteArrayList<>();
+    private final SlowTaskSamples slowTasks = new SlowTaskSamples(16);
+    private volatile long slowTaskThresholdNanos = -1L;
+
     public final String getName() {
         return name;
     }
@@ -62,6 +70,28 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
         this.awaitTerminationMillis = awaitTerminationMillis;
     }
 
+    /**
+     * Set the execution time beyond which tasks are sampled as slow, see {@link #getSlowTasks()}.
+     */
+    public void setSlowTaskThreshold(TimeValue slowTaskThreshold) {
+        this.slowTaskThresholdNanos = slowTaskThreshold.nanos();
+    }
+
+    public SlowTaskSamples getSlowTasks() {
+        return slowTasks;
+    }
+
+    public void addTaskExecutionListener(TaskExecutionListener listener) {
+        this.taskExecutionListeners.add(listener);
+    }
+
+    /**
+     * Set a decorator applied to every task on submission, e.g. to carry over the context of the submitting thread.
+     */
+    public void setTaskDecorator(TaskDecorator taskDecorator) {
+        this.taskDecorator = taskDecorator;
+    }
+
     public MilkyThreadPoolExecutor(String name, ThreadContext threadContext, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
         this(name, threadContext, corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new DaemonThreadFactory(name + "-pool"), new AbortPolicyWithReport(name));
     }
@@ -80,26 +110,29 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
         this.threadContext = threadContext;
     }
 
-    /**
-     * todo thread context
-     */
     @Override
     protected void beforeExecute(Thread t, Runnable r) {
         super.beforeExecute(t, r);
+        executionStartNanos.get()[0] = System.nanoTime();
+    }
+
+    /**
+     * Tasks of {@code submit} are stamped with their submission time without allocating a wrapper.
+     */
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TimedFutureTask<>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TimedFutureTask<>(callable);
     }
 
     @Override
     public void execute(Runnable command) {
         try {
-            if (taskDecorator != null) {
-                Runnable decorated = taskDecorator.decorate(command);
-                if (decorated != command) {
-                    decoratedTaskMap.put(decorated, command);
-                }
-                super.execute(decorated);
-            } else {
-                super.execute(command);
-            }
+            doExecute(command);
         } catch (RejectedExecutionException ex) {
             if (command instanceof RunnableWrapper) {
                 // If we are an custom runnable wrapper we can handle the rejection
@@ -119,23 +152,90 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
         }
     }
 
+    /**
+     * Decorate and hand over the task to the pool, rejections are handled by {@link #execute(Runnable)}.
+     */
+    protected void doExecute(Runnable command) {
+        if (taskDecorator != null) {
+            Runnable decorated = taskDecorator.decorate(command);
+            if (decorated != command) {
+                decoratedTaskMap.put(decorated, command);
+            }
+            super.execute(decorated);
+        } else {
+            super.execute(command);
+        }
+    }
+
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
         super.afterExecute(r, t);
+        final long startNanos = executionStartNanos.get()[0];
+        final long executionNanos = System.nanoTime() - startNanos;
+        Runnable task = unwrap(r);
+        long queueNanos = task instanceof TimedFutureTask ? startNanos - ((TimedFutureTask<?>) task).submitNanos : -1L;
+        onTaskCompleted(task, t, queueNanos, executionNanos);
+    }
+
+    /**
+     * Called on the worker thread once a task completed, with the time it was queued ({@code -1}
+     * if unknown) and executed.
+     */
+    protected void onTaskCompleted(Runnable task, Throwable t, long queueNanos, long executionNanos) {
+        long threshold = this.slowTaskThresholdNanos;
+        if (threshold >= 0 && executionNanos > threshold) {
+            String description = String.valueOf(task instanceof TimedFutureTask ? ((TimedFutureTask<?>) task).task : task);
+            slowTasks.record(new SlowTaskSamples.Sample(description, Thread.currentThread().getName(),
+                    queueNanos, executionNanos, System.currentTimeMillis()));
+        }
+        for (TaskExecutionListener listener : taskExecutionListeners) {
+            listener.onTaskCompleted(task, queueNanos, executionNanos, t);
+        }
+    }
+
+    /**
+     * Returns the submitted task of a decorated one.
+     */
+    private Runnable unwrap(Runnable r) {
+        if (taskDecorator != null && !(r instanceof TimedFutureTask)) {
+            Object original = decoratedTaskMap.get(r);
+            if (original instanceof Runnable) {
+                return (Runnable) original;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Add a listener notified once this executor has terminated. Listeners added after
+     * termination are notified right away.
+     */
+    public void addShutdownListener(ShutdownListener listener) {
+        synchronized (monitor) {
+            if (!terminated) {
+                shutdownListeners.add(listener);
+                return;
+            }
+        }
+        listener.onTerminated();
     }
 
     @Override
     protected synchronized void terminated() {
         super.terminated();
         synchronized (monitor) {
-            if (listener != null) {
-                try {
-                    listener.onTerminated();
-                } finally {
-                    listener = null;
+            terminated = true;
+        }
+        for (ShutdownListener listener : shutdownListeners) {
+            try {
+                listener.onTerminated();
+            } catch (RuntimeException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn(String.format("shutdown listener of executor %s failed", this.name), e);
                 }
             }
         }
+        shutdownListeners.clear();
     }
 
     @Override
@@ -223,4 +323,20 @@ public class MilkyThreadPoolExecutor extends ThreadPoolExecutor {
     public interface ShutdownListener {
         void onTerminated();
     }
+
+    private static final class TimedFutureTask<V> extends FutureTask<V> {
+
+        private final long submitNanos = System.nanoTime();
+        private final Object task;
+
+        TimedFutureTask(Runnable runnable, V result) {
+            super(runnable, result);
+            this.task = runnable;
+        }
+
+        TimedFutureTask(Callable<V> callable) {
+            super(callable);
+            this.task = callable;
+        }
+    }
 }
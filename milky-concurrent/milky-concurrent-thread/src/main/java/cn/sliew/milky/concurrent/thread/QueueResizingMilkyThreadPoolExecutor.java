@@ -0,0 +1,155 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.concurrent.DaemonThreadFactory;
+import cn.sliew.milky.common.unit.TimeValue;
+import cn.sliew.milky.common.unit.TimeValues;
+import cn.sliew.milky.concurrent.thread.policy.AbortPolicyWithReport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * A fixed size thread pool executor which adjusts the capacity of its {@link ResizableBlockingQueue}
+ * by Little's Law: the optimal queue length {@code L} is the arrival rate {@code λ} multiplied by the
+ * targeted response time {@code W}, queued tasks beyond {@code L} would wait longer than {@code W}.
+ * <p>
+ * Every {@code tasksPerFrame} completed tasks {@code λ} is measured as the tasks completed during the
+ * frame divided by its wall time, the queue capacity is then moved by {@link #QUEUE_ADJUSTMENT_AMOUNT}
+ * towards {@code L} within {@code [minQueueSize, maxQueueSize]}. The measurement is done by the worker
+ * completing the frame, no background thread is required.
+ */
+public final class QueueResizingMilkyThreadPoolExecutor extends MilkyThreadPoolExecutor {
+
+    private static final Logger log = LogManager.getLogger(QueueResizingMilkyThreadPoolExecutor.class);
+
+    /**
+     * The amount the queue capacity is moved by per frame.
+     */
+    public static final int QUEUE_ADJUSTMENT_AMOUNT = 50;
+
+    /**
+     * Weight of the latest task execution time in {@link #getTaskExecutionEWMA()}.
+     */
+    public static final double EWMA_ALPHA = 0.3;
+
+    private final ResizableBlockingQueue<Runnable> workQueue;
+    private final int tasksPerFrame;
+    private final int minQueueSize;
+    private final int maxQueueSize;
+    private final long targetedResponseTimeNanos;
+
+    private final ExponentiallyWeightedMovingAverage executionEWMA = new ExponentiallyWeightedMovingAverage(EWMA_ALPHA, 0);
+    private final AtomicInteger taskCount = new AtomicInteger();
+
+    private volatile long frameStartNanos;
+
+    QueueResizingMilkyThreadPoolExecutor(String name, ThreadContext threadContext, int size,
+                                         ResizableBlockingQueue<Runnable> workQueue, int minQueueSize, int maxQueueSize,
+                                         int tasksPerFrame, TimeValue targetedResponseTime) {
+        this(name, threadContext, size, workQueue, minQueueSize, maxQueueSize, tasksPerFrame, targetedResponseTime,
+                new DaemonThreadFactory(name + "-pool"), new AbortPolicyWithReport(name));
+    }
+
+    QueueResizingMilkyThreadPoolExecutor(String name, ThreadContext threadContext, int size,
+                                         ResizableBlockingQueue<Runnable> workQueue, int minQueueSize, int maxQueueSize,
+                                         int tasksPerFrame, TimeValue targetedResponseTime,
+                                         ThreadFactory threadFactory, XRejectedExecutionHandler handler) {
+        super(name, threadContext, size, size, 0L, TimeUnit.MILLISECONDS, workQueue, threadFactory, handler);
+        checkArgument(tasksPerFrame > 0, () -> "tasksPerFrame must be greater than 0");
+        checkArgument(minQueueSize >= 0, () -> "minQueueSize cannot be smaller than 0");
+        checkArgument(maxQueueSize >= minQueueSize, () -> "maxQueueSize cannot be smaller than minQueueSize");
+        checkArgument(targetedResponseTime.nanos() > 0, () -> "targetedResponseTime must be greater than 0");
+        this.workQueue = workQueue;
+        this.tasksPerFrame = tasksPerFrame;
+        this.minQueueSize = minQueueSize;
+        this.maxQueueSize = maxQueueSize;
+        this.targetedResponseTimeNanos = targetedResponseTime.nanos();
+        this.frameStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Calculate the task rate (λ) of a frame, in tasks per nanosecond.
+     */
+    static double calculateLambda(int tasks, long frameNanos) {
+        return (double) tasks / Math.max(1L, frameNanos);
+    }
+
+    /**
+     * Calculate Little's Law (L), the optimal queue length for a task rate (λ) and a targeted response time (W).
+     */
+    static int calculateL(double lambda, long targetedResponseTimeNanos) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) (lambda * targetedResponseTimeNanos));
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the task execution time, in nanoseconds.
+     */
+    public double getTaskExecutionEWMA() {
+        return executionEWMA.getAverage();
+    }
+
+    /**
+     * Returns the current capacity of the work queue.
+     */
+    public int getCurrentQueueCapacity() {
+        return workQueue.capacity();
+    }
+
+    public int getMinQueueSize() {
+        return minQueueSize;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    @Override
+    protected void onTaskCompleted(Runnable task, Throwable t, long queueNanos, long executionNanos) {
+        super.onTaskCompleted(task, t, queueNanos, executionNanos);
+        final long endNanos = System.nanoTime();
+        executionEWMA.addValue(executionNanos);
+
+        if (taskCount.incrementAndGet() == this.tasksPerFrame) {
+            // the frame start is only written by the worker completing the frame, other workers
+            // see a count other than tasksPerFrame until the count is reset below
+            final long frameNanos = endNanos - this.frameStartNanos;
+            this.frameStartNanos = endNanos;
+            try {
+                final double lambda = calculateLambda(tasksPerFrame, frameNanos);
+                final int desiredQueueSize = calculateL(lambda, targetedResponseTimeNanos);
+                final int oldCapacity = workQueue.capacity();
+                final int newCapacity = workQueue.adjustCapacity(desiredQueueSize, QUEUE_ADJUSTMENT_AMOUNT, minQueueSize, maxQueueSize);
+                if (oldCapacity != newCapacity && log.isDebugEnabled()) {
+                    log.debug(String.format("adjusted [%s] queue size by [%d] to [%d], frame of [%d] tasks took [%s], " +
+                                    "EWMA task execution [%s], optimal queue is [%d]",
+                            getName(), newCapacity - oldCapacity, newCapacity, tasksPerFrame,
+                            TimeValues.timeValueNanos(frameNanos), TimeValues.timeValueNanos((long) getTaskExecutionEWMA()),
+                            desiredQueueSize));
+                }
+            } finally {
+                // decrement rather than reset so tasks completed during the adjustment are counted
+                // in the next frame. if they already make up a frame the count would never hit
+                // tasksPerFrame again, so start over
+                if (taskCount.addAndGet(-this.tasksPerFrame) >= this.tasksPerFrame) {
+                    taskCount.set(0);
+                    this.frameStartNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void appendThreadPoolExecutorDetails(StringBuilder sb) {
+        sb.append("frame size = ").append(tasksPerFrame).append(", ");
+        sb.append("targeted response time = ").append(TimeValues.timeValueNanos(targetedResponseTimeNanos)).append(", ");
+        sb.append("task execution EWMA = ").append(TimeValues.timeValueNanos((long) getTaskExecutionEWMA())).append(", ");
+        sb.append("current queue capacity = ").append(getCurrentQueueCapacity()).append(", ");
+        sb.append("min queue capacity = ").append(minQueueSize).append(", ");
+        sb.append("max queue capacity = ").append(maxQueueSize).append(", ");
+    }
+}
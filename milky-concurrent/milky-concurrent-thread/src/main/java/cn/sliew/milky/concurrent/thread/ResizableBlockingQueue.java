@@ -24,7 +24,16 @@ final class ResizableBlockingQueue<E> extends SizeBlockingQueue<E> {
 
     @Override
     public int remainingCapacity() {
-        return Math.max(0, this.capacity());
+        return Math.max(0, this.capacity() - size());
+    }
+
+    /**
+     * Set the limit for the queue. Elements beyond a lowered limit stay queued,
+     * new elements are rejected until the queue drained below it.
+     */
+    public synchronized void setCapacity(int capacity) {
+        checkArgument(capacity >= 0, () -> "capacity cannot be negative");
+        this.capacity = capacity;
     }
 
     /**
@@ -32,7 +41,7 @@ final class ResizableBlockingQueue<E> extends SizeBlockingQueue<E> {
      */
     public synchronized int adjustCapacity(int optimalCapacity, int adjustmentAmount, int minCapacity, int maxCapacity) {
         checkArgument(adjustmentAmount > 0, () -> "adjustment amount should be a positive value");
-        checkArgument(optimalCapacity > 0, () -> "desired capacity cannot be negative");
+        checkArgument(optimalCapacity >= 0, () -> "desired capacity cannot be negative");
         checkArgument(minCapacity >= 0, () -> "cannot have min capacity smaller than 0");
         checkArgument(maxCapacity >= minCapacity, () -> "cannot have max capacity smaller than min capacity");
 
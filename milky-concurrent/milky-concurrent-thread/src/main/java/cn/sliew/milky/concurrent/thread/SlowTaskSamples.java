@@ -0,0 +1,100 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.unit.TimeValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * The most recent tasks of a pool which ran longer than its slow task threshold,
+ * kept in a fixed size ring overwritten by newer samples.
+ */
+public final class SlowTaskSamples {
+
+    private final AtomicReferenceArray<Sample> samples;
+    private final AtomicLong count = new AtomicLong();
+
+    SlowTaskSamples(int size) {
+        checkArgument(size > 0, () -> "size must be greater than 0");
+        this.samples = new AtomicReferenceArray<>(size);
+    }
+
+    void record(Sample sample) {
+        long index = count.getAndIncrement();
+        samples.set((int) (index % samples.length()), sample);
+    }
+
+    /**
+     * Returns the number of slow tasks recorded since the pool started.
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the retained samples, most recent first.
+     */
+    public List<Sample> snapshot() {
+        long last = count.get();
+        int size = (int) Math.min(last, samples.length());
+        List<Sample> snapshot = new ArrayList<>(size);
+        for (long i = last - 1; i >= last - size; i--) {
+            Sample sample = samples.get((int) (i % samples.length()));
+            if (sample != null) {
+                snapshot.add(sample);
+            }
+        }
+        return snapshot;
+    }
+
+    public static final class Sample {
+
+        private final String task;
+        private final String thread;
+        private final long queueNanos;
+        private final long executionNanos;
+        private final long timestampMillis;
+
+        Sample(String task, String thread, long queueNanos, long executionNanos, long timestampMillis) {
+            this.task = task;
+            this.thread = thread;
+            this.queueNanos = queueNanos;
+            this.executionNanos = executionNanos;
+            this.timestampMillis = timestampMillis;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * Returns the time the task was queued, {@code -1} if unknown.
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+
+        public long getExecutionNanos() {
+            return executionNanos;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] on [%s] took [%s], queued [%s]", task, thread,
+                    TimeValues.timeValueNanos(executionNanos),
+                    queueNanos < 0 ? "unknown" : TimeValues.timeValueNanos(queueNanos));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cn.sliew.milky.concurrent.thread;
+
+/**
+ * Notified by {@link MilkyThreadPoolExecutor} on the worker thread once a task completed.
+ * Implementations run on the hot path and should be cheap.
+ */
+@FunctionalInterface
+public interface TaskExecutionListener {
+
+    /**
+     * @param task           the submitted task
+     * @param queueNanos     time between submission and start of the task, {@code -1} if unknown
+     *                       as the task was not created by {@code submit}
+     * @param executionNanos time spent running the task
+     * @param t              the exception that caused termination, or null if execution completed normally
+     */
+    void onTaskCompleted(Runnable task, long queueNanos, long executionNanos, Throwable t);
+}
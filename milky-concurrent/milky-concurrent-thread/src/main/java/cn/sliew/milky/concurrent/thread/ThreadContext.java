@@ -3,23 +3,66 @@ package cn.sliew.milky.concurrent.thread;
 
 import cn.sliew.milky.concurrent.thread.context.DefaultThreadContextMap;
 import cn.sliew.milky.concurrent.thread.context.DefaultThreadContextStack;
+import cn.sliew.milky.concurrent.thread.context.GarbageFreeThreadContextMap;
+import cn.sliew.milky.concurrent.thread.context.PersistentThreadContextMap;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
 import java.util.function.Supplier;
 
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * The map implementation is chosen by {@value #PROP_MAP}: {@code persistent} (default) shares
+ * immutable maps between updates, stored contexts and child threads, {@code copy_on_write} copies
+ * the map on every update and {@code garbage_free} updates values in place for the fixed keys
+ * listed in {@value #PROP_KEYS}.
+ */
 public final class ThreadContext {
 
+    public static final String PROP_MAP = "milky.threadContext.map";
+    public static final String PROP_KEYS = "milky.threadContext.keys";
+
     public static final ThreadContextStack EMPTY_STACK = new ThreadContextStack.EmptyThreadContextStack();
 
-    private static ThreadContextMap contextMap = new DefaultThreadContextMap();
+    private static ThreadContextMap contextMap = createContextMap(System.getProperty(PROP_MAP, "persistent"), System.getProperty(PROP_KEYS, ""));
     private static ThreadContextStack contextStack = new DefaultThreadContextStack();
 
+    private static final ThreadContext INSTANCE = new ThreadContext();
+
     private ThreadContext() {
         // empty
     }
 
+    static ThreadContextMap createContextMap(String type, String keys) {
+        switch (type.trim().toLowerCase(Locale.ROOT)) {
+            case "persistent":
+                return new PersistentThreadContextMap();
+            case "copy_on_write":
+                return new DefaultThreadContextMap();
+            case "garbage_free":
+                String[] fixedKeys = Arrays.stream(keys.split(","))
+                        .map(String::trim)
+                        .filter(key -> !key.isEmpty())
+                        .toArray(String[]::new);
+                // without keys every put would be rejected at runtime
+                checkArgument(fixedKeys.length > 0, () -> String.format("%s requires %s to list its keys", type, PROP_KEYS));
+                return new GarbageFreeThreadContextMap(fixedKeys);
+            default:
+                throw new IllegalArgumentException(String.format("unknown %s %s", PROP_MAP, type));
+        }
+    }
+
+    /**
+     * Returns the handle storing and restoring the context of the current thread.
+     */
+    public static ThreadContext getInstance() {
+        return INSTANCE;
+    }
+
     /**
      * <pre>
      *     // current context is stored and replaced with a default context
@@ -64,6 +107,19 @@ public final class ThreadContext {
         return wrapRestorable(storeContext());
     }
 
+    /**
+     * Wraps a Runnable to run with the context of the calling thread, the context of
+     * the executing thread is restored once it returns.
+     */
+    public Runnable preserveContext(Runnable command) {
+        Supplier<StoredContext> restorable = newRestorableContext();
+        return () -> {
+            try (StoredContext ignored = restorable.get()) {
+                command.run();
+            }
+        };
+    }
+
     public Supplier<StoredContext> wrapRestorable(StoredContext storedContext) {
         return () -> {
             StoredContext context = storeContext();
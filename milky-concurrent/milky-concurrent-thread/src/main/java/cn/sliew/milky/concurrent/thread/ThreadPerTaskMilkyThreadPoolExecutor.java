@@ -0,0 +1,123 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.concurrent.CapacityExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * An executor starting a new thread for every task, meant for virtual threads which are cheap to
+ * create and must not be pooled. Nothing is queued: tasks are handed over through a
+ * {@link SynchronousQueue} and threads exit as soon as their task completes.
+ * <p>
+ * The number of tasks in flight is limited by a semaphore of {@code maxConcurrency} permits, taken on
+ * submission and released once the task completed. Submissions beyond the limit are rejected, so
+ * {@link #hasCapacity()} and {@link #availableCapacity()} are exact and cheap to query.
+ * <p>
+ * {@link #setMaximumPoolSize(int)} resizes the limit, tasks in flight beyond a shrunk limit run to
+ * completion. The core pool size stays 0 as threads are never pooled.
+ */
+public final class ThreadPerTaskMilkyThreadPoolExecutor extends MilkyThreadPoolExecutor implements CapacityExecutor {
+
+    private volatile int maxConcurrency;
+    private final ResizableSemaphore permits;
+
+    ThreadPerTaskMilkyThreadPoolExecutor(String name, ThreadContext threadContext, int maxConcurrency,
+                                         ThreadFactory threadFactory, XRejectedExecutionHandler handler) {
+        // the semaphore is the limit, a worker still exiting must not make the pool reject
+        super(name, threadContext, 0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), threadFactory, handler);
+        checkArgument(maxConcurrency > 0, () -> "maxConcurrency must be greater than 0");
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new ResizableSemaphore(maxConcurrency);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the concurrency limit, the underlying pool itself is unbounded.
+     */
+    @Override
+    public int getMaximumPoolSize() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Resize the concurrency limit.
+     */
+    @Override
+    public synchronized void setMaximumPoolSize(int maximumPoolSize) {
+        checkArgument(maximumPoolSize > 0, () -> "maxConcurrency must be greater than 0");
+        int delta = maximumPoolSize - maxConcurrency;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrency = maximumPoolSize;
+    }
+
+    /**
+     * Threads are never pooled, the core pool size can only be set to 0.
+     */
+    @Override
+    public void setCorePoolSize(int corePoolSize) {
+        checkArgument(corePoolSize == 0,
+                () -> String.format("coreSize of thread pool %s must be 0, threads are never pooled", getName()));
+    }
+
+    @Override
+    public boolean hasCapacity() {
+        return permits.availablePermits() > 0;
+    }
+
+    @Override
+    public Integer availableCapacity() {
+        // negative while more tasks than a shrunk limit are in flight
+        return Math.max(0, permits.availablePermits());
+    }
+
+    @Override
+    protected void doExecute(Runnable command) {
+        if (!permits.tryAcquire()) {
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+            return;
+        }
+        try {
+            super.doExecute(command);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        permits.release();
+    }
+
+    @Override
+    protected void appendThreadPoolExecutorDetails(StringBuilder sb) {
+        sb.append("max concurrency = ").append(maxConcurrency).append(", ");
+        sb.append("available capacity = ").append(availableCapacity()).append(", ");
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
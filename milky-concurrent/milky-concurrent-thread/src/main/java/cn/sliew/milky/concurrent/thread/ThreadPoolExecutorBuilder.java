@@ -6,6 +6,8 @@ import cn.sliew.milky.common.unit.TimeValues;
 import cn.sliew.milky.concurrent.thread.metrics.ThreadPoolExecutorMetrics;
 import cn.sliew.milky.concurrent.thread.policy.AbortPolicyWithReport;
 import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -13,12 +15,15 @@ import java.util.concurrent.TimeUnit;
 
 class ThreadPoolExecutorBuilder {
 
+    private static final Logger log = LogManager.getLogger(ThreadPoolExecutorBuilder.class);
+
     public static ThreadPoolExecutorBuilder builder() {
         return new ThreadPoolExecutorBuilder();
     }
 
     private String name;
     private ThreadContext threadContext;
+    private ThreadPoolType type;
 
     private int coreSize = 1;
     private int maxSize = ExecutorUtil.availableProcessors();
@@ -26,6 +31,12 @@ class ThreadPoolExecutorBuilder {
     private BlockingQueue<Runnable> queue;
     private XRejectedExecutionHandler rejectedPolicy = new AbortPolicyWithReport("pool");
 
+    private int queueSize = 1000;
+    private int minQueueSize = 1000;
+    private int maxQueueSize = 1000;
+    private int tasksPerFrame = 2000;
+    private TimeValue targetedResponseTime = TimeValues.timeValueSeconds(1L);
+
     private String threadNamePrefix;
     private int threadPriority = Thread.NORM_PRIORITY;
     private boolean daemon = false;
@@ -34,9 +45,12 @@ class ThreadPoolExecutorBuilder {
     private TimeValue awaitTermination = TimeValues.timeValueMillis(0L);
 
     private TaskDecorator taskDecorator;
+    private TimeValue slowTaskThreshold;
 
     private MeterRegistry meterRegistry;
 
+    private ThreadPoolManager manager;
+
     private ThreadPoolExecutorBuilder() {
 
     }
@@ -51,6 +65,11 @@ class ThreadPoolExecutorBuilder {
         return this;
     }
 
+    ThreadPoolExecutorBuilder type(ThreadPoolType type) {
+        this.type = type;
+        return this;
+    }
+
     ThreadPoolExecutorBuilder coreSize(int core) {
         this.coreSize = core;
         return this;
@@ -71,6 +90,37 @@ class ThreadPoolExecutorBuilder {
         return this;
     }
 
+    /**
+     * Initial capacity of the queue of {@link ThreadPoolType#FIXED_AUTO_QUEUE_SIZE} executors.
+     */
+    ThreadPoolExecutorBuilder queueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    ThreadPoolExecutorBuilder minQueueSize(int minQueueSize) {
+        this.minQueueSize = minQueueSize;
+        return this;
+    }
+
+    ThreadPoolExecutorBuilder maxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+        return this;
+    }
+
+    /**
+     * Number of completed tasks after which the queue capacity is adjusted.
+     */
+    ThreadPoolExecutorBuilder tasksPerFrame(int tasksPerFrame) {
+        this.tasksPerFrame = tasksPerFrame;
+        return this;
+    }
+
+    ThreadPoolExecutorBuilder targetedResponseTime(TimeValue targetedResponseTime) {
+        this.targetedResponseTime = targetedResponseTime;
+        return this;
+    }
+
     ThreadPoolExecutorBuilder threadNamePrefix(String prefix) {
         this.threadNamePrefix = String.format("milky[%s]", prefix);
         return this;
@@ -102,7 +152,15 @@ class ThreadPoolExecutorBuilder {
     }
 
     ThreadPoolExecutorBuilder taskDecorator(TaskDecorator decorator) {
-        this.taskDecorator = taskDecorator;
+        this.taskDecorator = decorator;
+        return this;
+    }
+
+    /**
+     * Tasks running longer are sampled as slow, see {@link MilkyThreadPoolExecutor#getSlowTasks()}.
+     */
+    ThreadPoolExecutorBuilder slowTaskThreshold(TimeValue slowTaskThreshold) {
+        this.slowTaskThreshold = slowTaskThreshold;
         return this;
     }
 
@@ -111,19 +169,70 @@ class ThreadPoolExecutorBuilder {
         return this;
     }
 
+    /**
+     * The manager the executor is registered to, e.g. {@link ThreadPoolManager#global()}. Executors
+     * are not registered by default, a registered executor needs a name unique among the live
+     * executors of the manager.
+     */
+    ThreadPoolExecutorBuilder manager(ThreadPoolManager manager) {
+        this.manager = manager;
+        return this;
+    }
+
     MilkyThreadPoolExecutor build() {
         ThreadFactory threadFactory = buildThreadFacotry();
-        MilkyThreadPoolExecutor executor = new MilkyThreadPoolExecutor(
-                name, threadContext, coreSize, maxSize, keepAlive.millis(), TimeUnit.MILLISECONDS, queue,
-                threadFactory, rejectedPolicy);
+        MilkyThreadPoolExecutor executor;
+        if (type == ThreadPoolType.FIXED_AUTO_QUEUE_SIZE) {
+            ResizableBlockingQueue<Runnable> resizableQueue =
+                    new ResizableBlockingQueue<>(queue != null ? queue : ExecutorUtil.unboundedQueue(), queueSize);
+            executor = new QueueResizingMilkyThreadPoolExecutor(
+                    name, threadContext, coreSize, resizableQueue, minQueueSize, maxQueueSize, tasksPerFrame,
+                    targetedResponseTime, threadFactory, rejectedPolicy);
+        } else if (type == ThreadPoolType.VIRTUAL) {
+            String prefix = threadNamePrefix != null ? threadNamePrefix : name;
+            ThreadFactory virtualThreadFactory = ExecutorUtil.virtualThreadFactory(prefix + "-");
+            if (virtualThreadFactory != null) {
+                threadFactory = virtualThreadFactory;
+            } else if (log.isWarnEnabled()) {
+                log.warn(String.format("virtual threads are not supported by the JVM, thread pool %s starts platform threads", name));
+            }
+            executor = new ThreadPerTaskMilkyThreadPoolExecutor(name, threadContext, maxSize, threadFactory, rejectedPolicy);
+        } else {
+            executor = new MilkyThreadPoolExecutor(
+                    name, threadContext, coreSize, maxSize, keepAlive.millis(), TimeUnit.MILLISECONDS, queue,
+                    threadFactory, rejectedPolicy);
+        }
         executor.setWaitForTasksToCompleteOnShutdown(waitForTasksToCompleteOnShutdown);
         executor.setAwaitTerminationMillis(awaitTermination.millis());
+        executor.setTaskDecorator(buildTaskDecorator());
+        if (slowTaskThreshold != null) {
+            executor.setSlowTaskThreshold(slowTaskThreshold);
+        }
+        if (this.manager != null) {
+            this.manager.register(executor);
+        }
         if (this.meterRegistry != null) {
             new ThreadPoolExecutorMetrics(executor).bindTo(meterRegistry);
         }
         return executor;
     }
 
+    /**
+     * Tasks of {@link ThreadPoolType#VIRTUAL} pools run on a new thread each, which would start
+     * with an empty context, so the context of the submitting thread is carried over.
+     */
+    private TaskDecorator buildTaskDecorator() {
+        if (type != ThreadPoolType.VIRTUAL) {
+            return taskDecorator;
+        }
+        ThreadContext context = threadContext != null ? threadContext : ThreadContext.getInstance();
+        TaskDecorator decorator = this.taskDecorator;
+        if (decorator == null) {
+            return context::preserveContext;
+        }
+        return runnable -> context.preserveContext(decorator.decorate(runnable));
+    }
+
     private ThreadFactory buildThreadFacotry() {
         return new DaemonThreadFactory(threadNamePrefix, threadPriority, daemon);
     }
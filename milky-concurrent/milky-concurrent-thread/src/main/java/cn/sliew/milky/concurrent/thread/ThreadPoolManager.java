@@ -1,23 +1,133 @@
 package cn.sliew.milky.concurrent.thread;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
 
 /**
  * 动态调整线程池大小的功能。
+ * <p>
+ * Executors built by a {@link ThreadPoolExecutorBuilder} given a manager are registered by name and
+ * unregistered once terminated. Resizes are serialized by the manager, a pool never observes a core
+ * size greater than its maximum pool size. The setters are shaped as consumers of dynamic settings, e.g.
+ * {@code coreSizeSetting.newUpdater(size -> manager.setCoreSize("search", size), validator, logger)}.
  */
 public class ThreadPoolManager {
 
-    public void setCoreSize(String name, int coreSize) {
+    private static final ThreadPoolManager GLOBAL = new ThreadPoolManager();
+
+    /**
+     * A manager shared by the executors which opt in, see {@link ThreadPoolExecutorBuilder#manager(ThreadPoolManager)}.
+     */
+    public static ThreadPoolManager global() {
+        return GLOBAL;
+    }
+
+    private final ConcurrentMap<String, MilkyThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+    private final List<Consumer<MilkyThreadPoolExecutor>> registrationListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Register an executor by its name until it terminates.
+     *
+     * @throws IllegalArgumentException if a live executor is registered with the same name
+     * @throws NullPointerException     if the executor has no name
+     */
+    public void register(MilkyThreadPoolExecutor executor) {
+        checkNotNull(executor);
+        String name = checkNotNull(executor.getName(), () -> "thread pool without a name cannot be registered");
+        checkArgument(executors.putIfAbsent(name, executor) == null, () -> String.format("thread pool %s already registered", name));
+        executor.addShutdownListener(() -> executors.remove(name, executor));
+        if (executor.isTerminated()) {
+            return;
+        }
+        for (Consumer<MilkyThreadPoolExecutor> listener : registrationListeners) {
+            listener.accept(executor);
+        }
+    }
+
+    /**
+     * Add a listener called with every executor registered afterwards.
+     */
+    public void addRegistrationListener(Consumer<MilkyThreadPoolExecutor> listener) {
+        registrationListeners.add(checkNotNull(listener));
+    }
 
+    public MilkyThreadPoolExecutor getExecutor(String name) {
+        MilkyThreadPoolExecutor executor = executors.get(name);
+        if (executor == null) {
+            throw new IllegalArgumentException(String.format("no thread pool for %s", name));
+        }
+        return executor;
     }
 
-    public void setMaxPoolSize(String name, int maxPoolSize) {
+    public Collection<MilkyThreadPoolExecutor> getExecutors() {
+        return Collections.unmodifiableCollection(executors.values());
+    }
 
+    public synchronized void setCoreSize(String name, int coreSize) {
+        MilkyThreadPoolExecutor executor = getExecutor(name);
+        checkCoreSize(name, executor, coreSize);
+        checkArgument(coreSize <= executor.getMaximumPoolSize(),
+                () -> String.format("coreSize %d of thread pool %s cannot be greater than maxPoolSize %d",
+                        coreSize, name, executor.getMaximumPoolSize()));
+        executor.setCorePoolSize(coreSize);
     }
 
-    public void setKeepAliveTime(long keepAliveTime, TimeUnit unit) {
+    public synchronized void setMaxPoolSize(String name, int maxPoolSize) {
+        MilkyThreadPoolExecutor executor = getExecutor(name);
+        checkArgument(maxPoolSize > 0, () -> "maxPoolSize must be greater than 0");
+        checkArgument(maxPoolSize >= executor.getCorePoolSize(),
+                () -> String.format("maxPoolSize %d of thread pool %s cannot be smaller than coreSize %d",
+                        maxPoolSize, name, executor.getCorePoolSize()));
+        executor.setMaximumPoolSize(maxPoolSize);
+    }
 
+    /**
+     * Resize both core and maximum pool size, ordered so that the pool never has a core
+     * size greater than its maximum pool size.
+     */
+    public synchronized void setPoolSize(String name, int coreSize, int maxPoolSize) {
+        MilkyThreadPoolExecutor executor = getExecutor(name);
+        checkCoreSize(name, executor, coreSize);
+        checkArgument(maxPoolSize > 0, () -> "maxPoolSize must be greater than 0");
+        checkArgument(maxPoolSize >= coreSize,
+                () -> String.format("maxPoolSize %d of thread pool %s cannot be smaller than coreSize %d", maxPoolSize, name, coreSize));
+        if (coreSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxPoolSize);
+            executor.setCorePoolSize(coreSize);
+        } else {
+            executor.setCorePoolSize(coreSize);
+            executor.setMaximumPoolSize(maxPoolSize);
+        }
     }
 
+    private static void checkCoreSize(String name, MilkyThreadPoolExecutor executor, int coreSize) {
+        checkArgument(coreSize >= 0, () -> "coreSize cannot be negative");
+        // checked upfront so that setPoolSize does not resize the limit before failing
+        checkArgument(coreSize == 0 || !(executor instanceof ThreadPerTaskMilkyThreadPoolExecutor),
+                () -> String.format("coreSize of thread pool %s must be 0, threads are never pooled", name));
+    }
 
+    public synchronized void setKeepAliveTime(String name, long keepAliveTime, TimeUnit unit) {
+        getExecutor(name).setKeepAliveTime(keepAliveTime, unit);
+    }
+
+    /**
+     * Set the capacity of a pool queued by a {@link ResizableBlockingQueue}. The capacity of
+     * {@link ThreadPoolType#FIXED_AUTO_QUEUE_SIZE} pools keeps being adjusted from the new capacity.
+     */
+    public synchronized void setQueueCapacity(String name, int capacity) {
+        BlockingQueue<Runnable> queue = getExecutor(name).getQueue();
+        checkArgument(queue instanceof ResizableBlockingQueue, () -> String.format("queue of thread pool %s is not resizable", name));
+        ((ResizableBlockingQueue<Runnable>) queue).setCapacity(capacity);
+    }
 }
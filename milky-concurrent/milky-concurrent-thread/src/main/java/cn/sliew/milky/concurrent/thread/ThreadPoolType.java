@@ -9,6 +9,8 @@ public enum ThreadPoolType {
     DIRECT("direct"),
     FIXED("fixed"),
     SCALING("scaling"),
+    FIXED_AUTO_QUEUE_SIZE("fixed_auto_queue_size"),
+    VIRTUAL("virtual"),
 
     ;
 
@@ -8,4 +8,25 @@ public interface XRejectedExecutionHandler extends RejectedExecutionHandler {
      * The number of rejected executions.
      */
     long rejected();
-}
\ No newline at end of file
+
+    /**
+     * The number of rejected executions for a reason. Handlers not telling the
+     * reasons apart report every rejection as {@link Reason#SATURATED}.
+     */
+    default long rejected(Reason reason) {
+        return reason == Reason.SATURATED ? rejected() : 0L;
+    }
+
+    enum Reason {
+
+        /**
+         * Neither a thread nor a queue slot was available.
+         */
+        SATURATED,
+
+        /**
+         * The executor has been shut down.
+         */
+        SHUTDOWN
+    }
+}
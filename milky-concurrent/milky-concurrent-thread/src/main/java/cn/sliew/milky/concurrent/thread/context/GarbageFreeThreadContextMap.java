@@ -0,0 +1,150 @@
+package cn.sliew.milky.concurrent.thread.context;
+
+import cn.sliew.milky.concurrent.thread.ThreadContext;
+import cn.sliew.milky.concurrent.thread.ThreadContextMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static cn.sliew.milky.common.check.Ensures.checkArgument;
+
+/**
+ * A ThreadContext Map for a fixed set of keys declared upfront. Every thread holds an array of
+ * values indexed by key which {@link #put(String, String)}, {@link #get(String)} and
+ * {@link #remove(String)} update in place without allocating.
+ * <p>
+ * Putting an undeclared key is rejected and a {@code null} value removes the key. Stored contexts
+ * copy the values and map views are built on demand, both allocate.
+ */
+public class GarbageFreeThreadContextMap implements ThreadContextMap {
+
+    private final String[] keys;
+    private final Map<String, Integer> slots;
+    private final ThreadLocal<String[]> localValues;
+
+    public GarbageFreeThreadContextMap(String... keys) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            checkArgument(slots.put(key, i) == null, () -> String.format("duplicate key %s", key));
+        }
+        this.keys = keys.clone();
+        this.slots = slots;
+        this.localValues = new InheritableThreadLocal<String[]>() {
+            @Override
+            protected String[] initialValue() {
+                return new String[GarbageFreeThreadContextMap.this.keys.length];
+            }
+
+            @Override
+            protected String[] childValue(final String[] parentValue) {
+                return parentValue.clone();
+            }
+        };
+    }
+
+    @Override
+    public ThreadContext.StoredContext preserveContext() {
+        String[] values = localValues.get();
+        String[] stored = values.clone();
+        Arrays.fill(values, null);
+        return () -> restore(stored);
+    }
+
+    @Override
+    public ThreadContext.StoredContext storeContext() {
+        String[] stored = localValues.get().clone();
+        return () -> restore(stored);
+    }
+
+    /**
+     * Copies the stored values into the values of the restoring thread, which may not be the storing one.
+     */
+    private void restore(String[] stored) {
+        System.arraycopy(stored, 0, localValues.get(), 0, stored.length);
+    }
+
+    @Override
+    public void put(final String key, final String value) {
+        Integer slot = slots.get(key);
+        checkArgument(slot != null, () -> String.format("undeclared key %s, declared keys %s", key, Arrays.toString(keys)));
+        localValues.get()[slot] = value;
+    }
+
+    @Override
+    public String get(final String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? null : localValues.get()[slot];
+    }
+
+    @Override
+    public void remove(final String key) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            localValues.get()[slot] = null;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(localValues.get(), null);
+    }
+
+    @Override
+    public boolean containsKey(final String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Map<String, String> getCopy() {
+        String[] values = localValues.get();
+        Map<String, String> copy = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                copy.put(keys[i], values[i]);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public Map<String, String> getImmutableMapOrNull() {
+        Map<String, String> copy = getCopy();
+        return copy.isEmpty() ? null : Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (String value : localValues.get()) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return getCopy().toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 + getCopy().hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ThreadContextMap)) {
+            return false;
+        }
+        final Map<String, String> map = getImmutableMapOrNull();
+        final Map<String, String> otherMap = ((ThreadContextMap) obj).getImmutableMapOrNull();
+        return map == null ? otherMap == null : map.equals(otherMap);
+    }
+}
@@ -0,0 +1,107 @@
+package cn.sliew.milky.concurrent.thread.context;
+
+import cn.sliew.milky.common.collect.PersistentHashMap;
+import cn.sliew.milky.concurrent.thread.ThreadContext;
+import cn.sliew.milky.concurrent.thread.ThreadContextMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A ThreadContext Map backed by a {@link PersistentHashMap}. Updates share the untouched part of the
+ * previous map instead of copying it, stored contexts and child threads share the map as is since it
+ * can never change.
+ */
+public class PersistentThreadContextMap implements ThreadContextMap {
+
+    private final ThreadLocal<PersistentHashMap<String, String>> localMap = new InheritableThreadLocal<>();
+
+    @Override
+    public ThreadContext.StoredContext preserveContext() {
+        PersistentHashMap<String, String> map = localMap.get();
+        localMap.remove();
+        return () -> localMap.set(map);
+    }
+
+    @Override
+    public ThreadContext.StoredContext storeContext() {
+        PersistentHashMap<String, String> map = localMap.get();
+        return () -> localMap.set(map);
+    }
+
+    @Override
+    public void put(final String key, final String value) {
+        PersistentHashMap<String, String> map = localMap.get();
+        if (map == null) {
+            map = PersistentHashMap.empty();
+        }
+        localMap.set(map.plus(key, value));
+    }
+
+    @Override
+    public String get(final String key) {
+        final PersistentHashMap<String, String> map = localMap.get();
+        return map == null ? null : map.get(key);
+    }
+
+    @Override
+    public void remove(final String key) {
+        final PersistentHashMap<String, String> map = localMap.get();
+        if (map != null) {
+            localMap.set(map.minus(key));
+        }
+    }
+
+    @Override
+    public void clear() {
+        localMap.remove();
+    }
+
+    @Override
+    public boolean containsKey(final String key) {
+        final PersistentHashMap<String, String> map = localMap.get();
+        return map != null && map.containsKey(key);
+    }
+
+    @Override
+    public Map<String, String> getCopy() {
+        final PersistentHashMap<String, String> map = localMap.get();
+        return map == null ? new HashMap<>() : new HashMap<>(map);
+    }
+
+    @Override
+    public Map<String, String> getImmutableMapOrNull() {
+        return localMap.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        final PersistentHashMap<String, String> map = localMap.get();
+        return map == null || map.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        final Map<String, String> map = localMap.get();
+        return map == null ? "{}" : map.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        final Map<String, String> map = localMap.get();
+        return 31 + ((map == null) ? 0 : map.hashCode());
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ThreadContextMap)) {
+            return false;
+        }
+        final Map<String, String> map = localMap.get();
+        final Map<String, String> otherMap = ((ThreadContextMap) obj).getImmutableMapOrNull();
+        return map == null ? otherMap == null : map.equals(otherMap);
+    }
+}
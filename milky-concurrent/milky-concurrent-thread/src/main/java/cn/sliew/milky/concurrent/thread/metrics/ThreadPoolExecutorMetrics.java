@@ -1,14 +1,23 @@
 package cn.sliew.milky.concurrent.thread.metrics;
 
+import cn.sliew.milky.common.concurrent.CapacityExecutor;
 import cn.sliew.milky.concurrent.thread.MilkyThreadPoolExecutor;
+import cn.sliew.milky.concurrent.thread.QueueResizingMilkyThreadPoolExecutor;
+import cn.sliew.milky.concurrent.thread.SizeBlockingQueue;
+import cn.sliew.milky.concurrent.thread.XRejectedExecutionHandler;
 import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.binder.MeterBinder;
 
 import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static cn.sliew.milky.common.check.Ensures.checkNotNull;
 
@@ -60,5 +69,70 @@ public class ThreadPoolExecutorMetrics implements MeterBinder {
                 .description("The maximum allowed number of threads in the pool")
                 .baseUnit("threads")
                 .register(registry);
+        for (XRejectedExecutionHandler.Reason reason : XRejectedExecutionHandler.Reason.values()) {
+            FunctionCounter.builder("executor.rejected", this.executor, (tpRef) -> rejected(tpRef, reason))
+                    .tags(this.tags).tag("name", name).tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .description("The total number of tasks rejected by the executor")
+                    .baseUnit("tasks")
+                    .register(registry);
+        }
+        FunctionCounter.builder("executor.slow", this.executor, (tpRef) -> tpRef.getSlowTasks().count())
+                .tags(this.tags).tag("name", name)
+                .description("The total number of tasks which ran longer than the slow task threshold")
+                .baseUnit("tasks")
+                .register(registry);
+        bindTimers(registry, name);
+        if (this.executor.getQueue() instanceof SizeBlockingQueue) {
+            Gauge.builder("executor.queue.capacity", this.executor, (tpRef) -> (double) ((SizeBlockingQueue<?>) tpRef.getQueue()).capacity())
+                    .tags(this.tags).tag("name", name)
+                    .description("The current capacity of the queue")
+                    .baseUnit("tasks")
+                    .register(registry);
+        }
+        if (this.executor instanceof CapacityExecutor) {
+            Gauge.builder("executor.capacity.available", (CapacityExecutor) this.executor, CapacityExecutor::availableCapacity)
+                    .tags(this.tags).tag("name", name)
+                    .description("The number of additional tasks the executor can accept without rejecting")
+                    .baseUnit("tasks")
+                    .register(registry);
+        }
+        if (this.executor instanceof QueueResizingMilkyThreadPoolExecutor) {
+            TimeGauge.builder("executor.task.ewma", (QueueResizingMilkyThreadPoolExecutor) this.executor, TimeUnit.NANOSECONDS,
+                    QueueResizingMilkyThreadPoolExecutor::getTaskExecutionEWMA)
+                    .tags(this.tags).tag("name", name)
+                    .description("The exponentially weighted moving average of the task execution time")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Timers are fed by the executor, an executor bound twice to a registry must not record twice.
+     */
+    private void bindTimers(MeterRegistry registry, String name) {
+        if (registry.find("executor.execution").tags(this.tags).tag("name", name).timer() != null) {
+            return;
+        }
+        Timer queueWait = Timer.builder("executor.queue.wait")
+                .tags(this.tags).tag("name", name)
+                .description("The time tasks spent queued before they started, only tasks created by submit are timed")
+                .register(registry);
+        Timer execution = Timer.builder("executor.execution")
+                .tags(this.tags).tag("name", name)
+                .description("The time tasks spent running")
+                .register(registry);
+        this.executor.addTaskExecutionListener((task, queueNanos, executionNanos, t) -> {
+            if (queueNanos >= 0) {
+                queueWait.record(queueNanos, TimeUnit.NANOSECONDS);
+            }
+            execution.record(executionNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    private static double rejected(ThreadPoolExecutor executor, XRejectedExecutionHandler.Reason reason) {
+        RejectedExecutionHandler handler = executor.getRejectedExecutionHandler();
+        if (handler instanceof XRejectedExecutionHandler) {
+            return ((XRejectedExecutionHandler) handler).rejected(reason);
+        }
+        return 0;
     }
 }
@@ -0,0 +1,45 @@
+package cn.sliew.milky.concurrent.thread.metrics;
+
+import cn.sliew.milky.concurrent.thread.MilkyThreadPoolExecutor;
+import cn.sliew.milky.concurrent.thread.ThreadPoolManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Arrays;
+
+import static cn.sliew.milky.common.check.Ensures.checkNotNull;
+
+/**
+ * Binds {@link ThreadPoolExecutorMetrics} of every executor of a {@link ThreadPoolManager},
+ * including executors registered after binding.
+ */
+public class ThreadPoolManagerMetrics implements MeterBinder {
+
+    private final ThreadPoolManager manager;
+    private final Tag[] tags;
+
+    public ThreadPoolManagerMetrics(ThreadPoolManager manager, Tag... tags) {
+        this.manager = checkNotNull(manager);
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("executor.pools", this.manager, (managerRef) -> (double) managerRef.getExecutors().size())
+                .tags(Arrays.asList(this.tags))
+                .description("The number of live thread pools registered")
+                .baseUnit("pools")
+                .register(registry);
+        // listen first to not miss executors registered meanwhile, meters are registered once per id
+        this.manager.addRegistrationListener(executor -> bind(executor, registry));
+        for (MilkyThreadPoolExecutor executor : this.manager.getExecutors()) {
+            bind(executor, registry);
+        }
+    }
+
+    private void bind(MilkyThreadPoolExecutor executor, MeterRegistry registry) {
+        new ThreadPoolExecutorMetrics(executor, this.tags).bindTo(registry);
+    }
+}
@@ -24,6 +24,7 @@ public class AbortPolicyWithReport extends ThreadPoolExecutor.AbortPolicy implem
     private static final Logger log = LogManager.getLogger(AbortPolicyWithReport.class);
 
     private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger rejectedOnShutdown = new AtomicInteger();
 
     private final String name;
 
@@ -50,6 +51,11 @@ public class AbortPolicyWithReport extends ThreadPoolExecutor.AbortPolicy implem
 
     @Override
     public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+        if (e.isShutdown()) {
+            // nothing to dump, the pool is not exhausted
+            rejectedOnShutdown.incrementAndGet();
+            throw new RejectedExecutionException(String.format("Thread pool is SHUTDOWN! Thread Pool Name: %s", name));
+        }
         String msg = String.format("Thread pool is EXHAUSTED for %dth times!" +
                         " Thread Pool Name: %s, Pool Size: %d (active: %d, core: %d, max: %d, largest: %d), Task: %d (completed: "
                         + "%d)," +
@@ -126,6 +132,11 @@ public class AbortPolicyWithReport extends ThreadPoolExecutor.AbortPolicy implem
 
     @Override
     public long rejected() {
-        return rejected.get();
+        return rejected.get() + rejectedOnShutdown.get();
+    }
+
+    @Override
+    public long rejected(Reason reason) {
+        return reason == Reason.SHUTDOWN ? rejectedOnShutdown.get() : rejected.get();
     }
 }
@@ -0,0 +1,149 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.unit.TimeValues;
+import cn.sliew.milky.concurrent.thread.metrics.ThreadPoolExecutorMetrics;
+import cn.sliew.milky.concurrent.thread.policy.AbortPolicyWithReport;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilkyThreadPoolExecutorTest extends MilkyTestCase {
+
+    @Test
+    void testQueueWaitAndExecutionTimers() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MilkyThreadPoolExecutor executor = builder("timed").meterRegistry(registry).build();
+        // bound twice to the same registry, tasks must still be recorded once
+        new ThreadPoolExecutorMetrics(executor).bindTo(registry);
+        try {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> blocking = executor.submit(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            });
+            running.await();
+            Future<?> queued = executor.submit(() -> {
+            });
+            Thread.sleep(50L);
+            release.countDown();
+            blocking.get(10, TimeUnit.SECONDS);
+            queued.get(10, TimeUnit.SECONDS);
+
+            CountDownLatch executed = new CountDownLatch(1);
+            executor.execute(executed::countDown);
+            executed.await();
+        } finally {
+            shutdown(executor);
+        }
+
+        Timer queueWait = registry.get("executor.queue.wait").tag("name", "timed").timer();
+        Timer execution = registry.get("executor.execution").tag("name", "timed").timer();
+        assertEquals(2, queueWait.count());
+        assertTrue(queueWait.max(TimeUnit.MILLISECONDS) >= 50);
+        assertEquals(3, execution.count());
+        assertTrue(execution.max(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    void testSlowTaskSamples() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MilkyThreadPoolExecutor executor = builder("slow")
+                .slowTaskThreshold(TimeValues.timeValueMillis(20L))
+                .meterRegistry(registry)
+                .build();
+        try {
+            executor.submit(() -> {
+            }).get(10, TimeUnit.SECONDS);
+            executor.submit(new SlowTask()).get(10, TimeUnit.SECONDS);
+        } finally {
+            shutdown(executor);
+        }
+
+        List<SlowTaskSamples.Sample> samples = executor.getSlowTasks().snapshot();
+        assertEquals(1, samples.size());
+        assertEquals("slow task", samples.get(0).getTask());
+        assertTrue(samples.get(0).getExecutionNanos() >= TimeUnit.MILLISECONDS.toNanos(20L));
+        assertTrue(samples.get(0).getQueueNanos() >= 0);
+        assertEquals(1, registry.get("executor.slow").functionCounter().count());
+    }
+
+    @Test
+    void testSlowTaskSamplesRing() {
+        SlowTaskSamples samples = new SlowTaskSamples(2);
+        for (int i = 0; i < 5; i++) {
+            samples.record(new SlowTaskSamples.Sample("task-" + i, "thread", -1L, i, 0L));
+        }
+        assertEquals(5, samples.count());
+        List<SlowTaskSamples.Sample> snapshot = samples.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals("task-4", snapshot.get(0).getTask());
+        assertEquals("task-3", snapshot.get(1).getTask());
+    }
+
+    @Test
+    void testRejectionReasons() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MilkyThreadPoolExecutor executor = builder("rejected")
+                .rejectedPolicy(new AbortPolicyWithReport("rejected"))
+                .meterRegistry(registry)
+                .build();
+        shutdown(executor);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        assertEquals(1, registry.get("executor.rejected").tag("reason", "shutdown").functionCounter().count());
+        assertEquals(0, registry.get("executor.rejected").tag("reason", "saturated").functionCounter().count());
+    }
+
+    private static ThreadPoolExecutorBuilder builder(String name) {
+        return ThreadPoolExecutorBuilder.builder()
+                .name(name)
+                .threadNamePrefix(name)
+                .coreSize(1)
+                .maxSize(1)
+                .blockingQueue(ExecutorUtil.unboundedQueue())
+                .waitForTasksToCompleteOnShutdown(true)
+                .awaitTerminationTime(TimeValues.timeValueSeconds(10L));
+    }
+
+    private static void shutdown(MilkyThreadPoolExecutor executor) {
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class SlowTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(30L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "slow task";
+        }
+    }
+}
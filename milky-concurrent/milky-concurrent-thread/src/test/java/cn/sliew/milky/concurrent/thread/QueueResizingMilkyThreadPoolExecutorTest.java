@@ -0,0 +1,132 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.unit.TimeValue;
+import cn.sliew.milky.common.unit.TimeValues;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueueResizingMilkyThreadPoolExecutorTest extends MilkyTestCase {
+
+    @Test
+    void testQueueGrowsUnderHighTaskRate() throws Exception {
+        QueueResizingMilkyThreadPoolExecutor executor = executor(100, 10, 300, TimeValues.timeValueSeconds(1L));
+        for (int i = 0; i < 200; i++) {
+            executor.submit(() -> {
+            }).get();
+        }
+        shutdown(executor);
+        assertEquals(300, executor.getCurrentQueueCapacity());
+    }
+
+    @Test
+    void testQueueShrinksUnderLowTaskRate() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        QueueResizingMilkyThreadPoolExecutor executor = (QueueResizingMilkyThreadPoolExecutor) builder(1000, 10, 2000, TimeValues.timeValueMillis(1L))
+                .meterRegistry(registry)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            executor.submit(() -> {
+                Thread.sleep(2L);
+                return null;
+            }).get();
+        }
+        shutdown(executor);
+
+        // every frame of 10 tasks takes at least 20ms, 0.5 tasks/ms can not fill a queue within 1ms
+        assertEquals(1000 - 10 * QueueResizingMilkyThreadPoolExecutor.QUEUE_ADJUSTMENT_AMOUNT, executor.getCurrentQueueCapacity());
+        assertEquals(executor.getCurrentQueueCapacity(), registry.get("executor.queue.capacity").gauge().value());
+        assertTrue(registry.get("executor.task.ewma").timeGauge().value(TimeUnit.MILLISECONDS) >= 1.0);
+    }
+
+    @Test
+    void testRejectionsCounted() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AtomicLong rejected = new AtomicLong();
+        QueueResizingMilkyThreadPoolExecutor executor = (QueueResizingMilkyThreadPoolExecutor) builder(1, 1, 1, TimeValues.timeValueSeconds(1L))
+                .rejectedPolicy(new XRejectedExecutionHandler() {
+                    @Override
+                    public long rejected() {
+                        return rejected.get();
+                    }
+
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejected.incrementAndGet();
+                        throw new RejectedExecutionException();
+                    }
+                })
+                .meterRegistry(registry)
+                .build();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        running.await();
+        executor.execute(() -> {
+        });
+        assertEquals(0, executor.getQueue().remainingCapacity());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        release.countDown();
+        shutdown(executor);
+
+        assertEquals(1, registry.get("executor.rejected").tag("reason", "saturated").functionCounter().count());
+    }
+
+    @Test
+    void testExponentiallyWeightedMovingAverage() {
+        ExponentiallyWeightedMovingAverage ewma = new ExponentiallyWeightedMovingAverage(0.5, 0);
+        ewma.addValue(10);
+        assertEquals(5.0, ewma.getAverage());
+        ewma.addValue(10);
+        assertEquals(7.5, ewma.getAverage());
+        assertThrows(IllegalArgumentException.class, () -> new ExponentiallyWeightedMovingAverage(1.5, 0));
+    }
+
+    private static QueueResizingMilkyThreadPoolExecutor executor(int queueSize, int minQueueSize, int maxQueueSize, TimeValue targetedResponseTime) {
+        return (QueueResizingMilkyThreadPoolExecutor) builder(queueSize, minQueueSize, maxQueueSize, targetedResponseTime).build();
+    }
+
+    private static ThreadPoolExecutorBuilder builder(int queueSize, int minQueueSize, int maxQueueSize, TimeValue targetedResponseTime) {
+        return ThreadPoolExecutorBuilder.builder()
+                .name("auto-queue")
+                .type(ThreadPoolType.FIXED_AUTO_QUEUE_SIZE)
+                .threadNamePrefix("auto-queue")
+                .coreSize(1)
+                .queueSize(queueSize)
+                .minQueueSize(minQueueSize)
+                .maxQueueSize(maxQueueSize)
+                .tasksPerFrame(10)
+                .targetedResponseTime(targetedResponseTime)
+                .waitForTasksToCompleteOnShutdown(true)
+                .awaitTerminationTime(TimeValues.timeValueSeconds(10L));
+    }
+
+    /**
+     * Queue adjustments run after a task completes, wait for them before asserting.
+     */
+    private static void shutdown(MilkyThreadPoolExecutor executor) {
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
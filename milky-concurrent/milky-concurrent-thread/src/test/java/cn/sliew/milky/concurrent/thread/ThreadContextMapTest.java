@@ -0,0 +1,97 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.concurrent.thread.context.DefaultThreadContextMap;
+import cn.sliew.milky.concurrent.thread.context.GarbageFreeThreadContextMap;
+import cn.sliew.milky.concurrent.thread.context.PersistentThreadContextMap;
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadContextMapTest extends MilkyTestCase {
+
+    @Test
+    void testCreateContextMap() {
+        assertTrue(ThreadContext.createContextMap("persistent", "") instanceof PersistentThreadContextMap);
+        assertTrue(ThreadContext.createContextMap("COPY_ON_WRITE", "") instanceof DefaultThreadContextMap);
+        ThreadContextMap garbageFree = ThreadContext.createContextMap("garbage_free", "trace, span,");
+        assertTrue(garbageFree instanceof GarbageFreeThreadContextMap);
+        garbageFree.put("span", "1");
+        assertEquals("1", garbageFree.get("span"));
+        assertThrows(IllegalArgumentException.class, () -> ThreadContext.createContextMap("unknown", ""));
+        assertThrows(IllegalArgumentException.class, () -> ThreadContext.createContextMap("garbage_free", ""));
+        assertThrows(IllegalArgumentException.class, () -> ThreadContext.createContextMap("garbage_free", " , "));
+    }
+
+    @Test
+    void testPersistentThreadContextMap() throws Exception {
+        verifyContextMap(new PersistentThreadContextMap());
+    }
+
+    @Test
+    void testPersistentThreadContextMapSharesSnapshots() {
+        PersistentThreadContextMap map = new PersistentThreadContextMap();
+        map.put("trace", "1");
+        assertSame(map.getImmutableMapOrNull(), map.getImmutableMapOrNull());
+        assertThrows(UnsupportedOperationException.class, () -> map.getImmutableMapOrNull().put("span", "2"));
+        map.clear();
+    }
+
+    @Test
+    void testGarbageFreeThreadContextMap() throws Exception {
+        GarbageFreeThreadContextMap map = new GarbageFreeThreadContextMap("trace", "span");
+        verifyContextMap(map);
+
+        assertThrows(IllegalArgumentException.class, () -> map.put("unknown", "1"));
+        assertNull(map.get("unknown"));
+        assertFalse(map.containsKey("unknown"));
+        map.remove("unknown");
+        map.put("trace", null);
+        assertFalse(map.containsKey("trace"));
+        assertThrows(IllegalArgumentException.class, () -> new GarbageFreeThreadContextMap("trace", "trace"));
+    }
+
+    private static void verifyContextMap(ThreadContextMap map) throws Exception {
+        assertTrue(map.isEmpty());
+        assertNull(map.getImmutableMapOrNull());
+
+        map.put("trace", "1");
+        map.put("span", "2");
+        assertEquals("1", map.get("trace"));
+        assertTrue(map.containsKey("span"));
+        assertEquals(2, map.getCopy().size());
+
+        ThreadContext.StoredContext stored = map.storeContext();
+        map.put("trace", "3");
+        map.remove("span");
+        assertEquals(Collections.singletonMap("trace", "3"), map.getImmutableMapOrNull());
+
+        AtomicReference<String> inherited = new AtomicReference<>();
+        Thread child = new Thread(() -> {
+            inherited.set(map.get("trace"));
+            map.put("trace", "child");
+        });
+        child.start();
+        child.join();
+        assertEquals("3", inherited.get());
+        assertEquals("3", map.get("trace"));
+
+        stored.restore();
+        assertEquals("1", map.get("trace"));
+        assertEquals("2", map.get("span"));
+
+        ThreadContext.StoredContext preserved = map.preserveContext();
+        assertTrue(map.isEmpty());
+        map.put("trace", "4");
+        preserved.restore();
+        assertEquals("1", map.get("trace"));
+        assertEquals("2", map.get("span"));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals("{}", map.toString());
+    }
+}
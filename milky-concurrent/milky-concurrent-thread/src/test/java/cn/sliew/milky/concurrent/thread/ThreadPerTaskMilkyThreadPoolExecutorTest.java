@@ -0,0 +1,155 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.unit.TimeValues;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadPerTaskMilkyThreadPoolExecutorTest extends MilkyTestCase {
+
+    @Test
+    void testConcurrencyLimit() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AtomicLong rejected = new AtomicLong();
+        ThreadPerTaskMilkyThreadPoolExecutor executor = (ThreadPerTaskMilkyThreadPoolExecutor) builder("limited")
+                .maxSize(2)
+                .rejectedPolicy(new XRejectedExecutionHandler() {
+                    @Override
+                    public long rejected() {
+                        return rejected.get();
+                    }
+
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejected.incrementAndGet();
+                        throw new RejectedExecutionException();
+                    }
+                })
+                .meterRegistry(registry)
+                .build();
+        try {
+            assertEquals(ThreadPoolType.VIRTUAL, ThreadPoolType.ofType("virtual"));
+            assertEquals(2, executor.availableCapacity());
+
+            CountDownLatch running = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    running.countDown();
+                    awaitQuietly(release);
+                });
+            }
+            running.await();
+            assertFalse(executor.hasCapacity());
+            assertEquals(0, registry.get("executor.capacity.available").gauge().value());
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+            }));
+            assertEquals(1, rejected.get());
+
+            release.countDown();
+            for (int i = 0; i < 100 && executor.availableCapacity() < 2; i++) {
+                Thread.sleep(10L);
+            }
+            assertEquals(2, executor.availableCapacity());
+            executor.submit(() -> {
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    void testResizeConcurrency() throws Exception {
+        ThreadPoolManager manager = new ThreadPoolManager();
+        ThreadPerTaskMilkyThreadPoolExecutor executor = (ThreadPerTaskMilkyThreadPoolExecutor) builder("resized")
+                .maxSize(2)
+                .manager(manager)
+                .build();
+        try {
+            CountDownLatch running = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    running.countDown();
+                    awaitQuietly(release);
+                });
+            }
+            running.await();
+            manager.setMaxPoolSize("resized", 1);
+            assertEquals(1, executor.getMaximumPoolSize());
+            assertEquals(0, executor.availableCapacity());
+
+            release.countDown();
+            for (int i = 0; i < 100 && executor.availableCapacity() < 1; i++) {
+                Thread.sleep(10L);
+            }
+            assertEquals(1, executor.availableCapacity());
+            manager.setPoolSize("resized", 0, 3);
+            assertEquals(3, executor.availableCapacity());
+
+            assertThrows(IllegalArgumentException.class, () -> manager.setCoreSize("resized", 1));
+            assertThrows(IllegalArgumentException.class, () -> manager.setPoolSize("resized", 4, 8));
+            assertThrows(IllegalArgumentException.class, () -> executor.setCorePoolSize(1));
+            assertEquals(0, executor.getCorePoolSize());
+            assertEquals(3, executor.getMaximumPoolSize());
+            assertEquals(3, executor.availableCapacity());
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    void testContextCarriedOver() throws Exception {
+        AtomicReference<String> decorated = new AtomicReference<>();
+        ThreadPerTaskMilkyThreadPoolExecutor executor = (ThreadPerTaskMilkyThreadPoolExecutor) builder("context")
+                .maxSize(4)
+                .taskDecorator(runnable -> () -> {
+                    decorated.set(ThreadContext.get("trace"));
+                    runnable.run();
+                })
+                .build();
+        try {
+            ThreadContext.put("trace", "1");
+            ThreadContext.push("submitter");
+            Future<String> future = executor.submit(() -> ThreadContext.get("trace") + ":" + ThreadContext.peek());
+            assertEquals("1:submitter", future.get(10, TimeUnit.SECONDS));
+            assertEquals("1", decorated.get());
+        } finally {
+            ThreadContext.clearAll();
+            shutdown(executor);
+        }
+    }
+
+    private static ThreadPoolExecutorBuilder builder(String name) {
+        return ThreadPoolExecutorBuilder.builder()
+                .name(name)
+                .type(ThreadPoolType.VIRTUAL)
+                .threadNamePrefix(name)
+                .waitForTasksToCompleteOnShutdown(true)
+                .awaitTerminationTime(TimeValues.timeValueSeconds(10L));
+    }
+
+    private static void shutdown(MilkyThreadPoolExecutor executor) {
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cn.sliew.milky.concurrent.thread;
+
+import cn.sliew.milky.common.unit.TimeValues;
+import cn.sliew.milky.concurrent.thread.metrics.ThreadPoolManagerMetrics;
+import cn.sliew.milky.test.MilkyTestCase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadPoolManagerTest extends MilkyTestCase {
+
+    private final ThreadPoolManager manager = new ThreadPoolManager();
+
+    @Test
+    void testResizePool() {
+        MilkyThreadPoolExecutor executor = builder("resize").build();
+        try {
+            assertSame(executor, manager.getExecutor("resize"));
+
+            manager.setPoolSize("resize", 8, 16);
+            assertEquals(8, executor.getCorePoolSize());
+            assertEquals(16, executor.getMaximumPoolSize());
+
+            manager.setPoolSize("resize", 1, 2);
+            assertEquals(1, executor.getCorePoolSize());
+            assertEquals(2, executor.getMaximumPoolSize());
+
+            manager.setMaxPoolSize("resize", 4);
+            manager.setCoreSize("resize", 3);
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(4, executor.getMaximumPoolSize());
+            assertThrows(IllegalArgumentException.class, () -> manager.setCoreSize("resize", 5));
+            assertThrows(IllegalArgumentException.class, () -> manager.setMaxPoolSize("resize", 2));
+            assertThrows(IllegalArgumentException.class, () -> manager.setPoolSize("resize", 2, 1));
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(4, executor.getMaximumPoolSize());
+
+            manager.setKeepAliveTime("resize", 5, TimeUnit.SECONDS);
+            assertEquals(5, executor.getKeepAliveTime(TimeUnit.SECONDS));
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    @Test
+    void testQueueCapacity() {
+        MilkyThreadPoolExecutor resizable = builder("resizable")
+                .blockingQueue(ExecutorUtil.resizableQueue(ExecutorUtil.unboundedQueue(), 10))
+                .build();
+        MilkyThreadPoolExecutor bounded = builder("bounded")
+                .blockingQueue(ExecutorUtil.boundedQueue(10))
+                .build();
+        try {
+            manager.setQueueCapacity("resizable", 100);
+            assertEquals(100, resizable.getQueue().remainingCapacity());
+            assertThrows(IllegalArgumentException.class, () -> manager.setQueueCapacity("bounded", 100));
+        } finally {
+            shutdown(resizable);
+            shutdown(bounded);
+        }
+    }
+
+    @Test
+    void testRegistration() {
+        MilkyThreadPoolExecutor executor = builder("registered").build();
+        assertThrows(IllegalArgumentException.class, () -> builder("registered").build());
+        assertThrows(IllegalArgumentException.class, () -> manager.setCoreSize("unknown", 1));
+
+        shutdown(executor);
+        assertThrows(IllegalArgumentException.class, () -> manager.getExecutor("registered"));
+        assertTrue(manager.getExecutors().isEmpty());
+
+        MilkyThreadPoolExecutor replacement = builder("registered").build();
+        assertSame(replacement, manager.getExecutor("registered"));
+        shutdown(replacement);
+    }
+
+    @Test
+    void testRegistrationOptIn() {
+        MilkyThreadPoolExecutor first = builder("unmanaged").manager(null).build();
+        MilkyThreadPoolExecutor second = builder("unmanaged").manager(null).build();
+        MilkyThreadPoolExecutor unnamed = builder(null).threadNamePrefix("unnamed").manager(null).build();
+        try {
+            assertTrue(manager.getExecutors().isEmpty());
+            assertFalse(ThreadPoolManager.global().getExecutors().contains(first));
+            NullPointerException e = assertThrows(NullPointerException.class, () -> manager.register(unnamed));
+            assertEquals("thread pool without a name cannot be registered", e.getMessage());
+            assertTrue(manager.getExecutors().isEmpty());
+        } finally {
+            shutdown(first);
+            shutdown(second);
+            shutdown(unnamed);
+        }
+    }
+
+    @Test
+    void testShutdownListeners() {
+        AtomicInteger terminated = new AtomicInteger();
+        MilkyThreadPoolExecutor executor = builder("listened").build();
+        executor.addShutdownListener(terminated::incrementAndGet);
+        shutdown(executor);
+
+        assertEquals(1, terminated.get());
+        assertTrue(manager.getExecutors().isEmpty());
+        executor.addShutdownListener(terminated::incrementAndGet);
+        assertEquals(2, terminated.get());
+    }
+
+    @Test
+    void testMetrics() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MilkyThreadPoolExecutor before = builder("before").build();
+        new ThreadPoolManagerMetrics(manager).bindTo(registry);
+        MilkyThreadPoolExecutor after = builder("after").build();
+        try {
+            assertEquals(2, registry.get("executor.pools").gauge().value());
+            manager.setPoolSize("after", 3, 6);
+            assertEquals(3, registry.get("executor.pool.core").tag("name", "after").gauge().value());
+            assertEquals(1, registry.get("executor.pool.core").tag("name", "before").gauge().value());
+        } finally {
+            shutdown(before);
+            shutdown(after);
+        }
+        assertEquals(0, registry.get("executor.pools").gauge().value());
+    }
+
+    private ThreadPoolExecutorBuilder builder(String name) {
+        return ThreadPoolExecutorBuilder.builder()
+                .name(name)
+                .threadNamePrefix(name)
+                .coreSize(1)
+                .maxSize(2)
+                .blockingQueue(ExecutorUtil.unboundedQueue())
+                .awaitTerminationTime(TimeValues.timeValueSeconds(10L))
+                .manager(manager);
+    }
+
+    private static void shutdown(MilkyThreadPoolExecutor executor) {
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+    }
+}
@@ -1,5 +1,8 @@
 package cn.sliew.milky.io;
 
+import cn.sliew.milky.common.recycler.BytesRecycler;
+import cn.sliew.milky.common.recycler.Value;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -7,6 +10,9 @@ public class OutputStreamDataOutputView implements DataOutputView {
 
     private final OutputStream out;
 
+    // pooled scratch for encoding numbers, obtained on first use and released by close()
+    private transient Value<byte[]> scratch;
+
     public OutputStreamDataOutputView(OutputStream out) {
         if (out == null) {
             throw new IllegalArgumentException("'out' null");
@@ -24,14 +30,13 @@ public class OutputStreamDataOutputView implements DataOutputView {
         out.write(b, off, len);
     }
 
-    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[1024]);
-
-    /**
-     * fixme buffer recycler
-     */
     @Override
     public byte[] getBuffer() {
-        return scratch.get();
+        Value<byte[]> scratch = this.scratch;
+        if (scratch == null) {
+            scratch = this.scratch = BytesRecycler.heap().bytes(BytesRecycler.SMALL_SIZE);
+        }
+        return scratch.value();
     }
 
     @Override
@@ -66,6 +71,14 @@ public class OutputStreamDataOutputView implements DataOutputView {
 
     @Override
     public void close() throws IOException {
-        out.close();
+        try {
+            out.close();
+        } finally {
+            Value<byte[]> scratch = this.scratch;
+            if (scratch != null) {
+                this.scratch = null;
+                scratch.close();
+            }
+        }
     }
 }
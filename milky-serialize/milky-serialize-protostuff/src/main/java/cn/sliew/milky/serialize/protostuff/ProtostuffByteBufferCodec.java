@@ -0,0 +1,251 @@
+package cn.sliew.milky.serialize.protostuff;
+
+import cn.sliew.milky.serialize.protostuff.utils.WrapperUtils;
+import io.protostuff.GraphIOUtil;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes objects into and decodes objects from {@link ByteBuffer} using the
+ * {@link ProtostuffDataOutputView#writeObject(Object)} layout:
+ * {@code classNameLength, bytesLength, className, bytes}.
+ * <p>
+ * Objects are encoded once into the {@link LinkedBuffer} chain of an {@link Encoded},
+ * which knows its size before writing and then copies the chain straight into the target
+ * buffer. Decoding reads from the buffer directly, heap buffers are parsed in place
+ * and direct buffers are streamed through a reusable read buffer.
+ */
+public final class ProtostuffByteBufferCodec {
+
+    /**
+     * {@code classNameLength} and {@code bytesLength}.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    private static final ClassValue<byte[]> CLASS_NAMES = new ClassValue<byte[]>() {
+        @Override
+        protected byte[] computeValue(Class<?> type) {
+            return type.getName().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<DecodeBuffer> DECODE_BUFFER = ThreadLocal.withInitial(DecodeBuffer::new);
+
+    private ProtostuffByteBufferCodec() {
+        throw new IllegalStateException("can't do this!");
+    }
+
+    /**
+     * Encodes {@code obj} into {@code encoded}, discarding any previous content of it.
+     */
+    @SuppressWarnings("unchecked")
+    public static void encode(Object obj, Encoded encoded) {
+        encoded.reset();
+        if (obj == null || WrapperUtils.needWrapper(obj)) {
+            Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
+            encoded.bytesLength = GraphIOUtil.writeTo(encoded.buffer, new Wrapper(obj), schema);
+            encoded.className = CLASS_NAMES.get(Wrapper.class);
+        } else {
+            Schema schema = RuntimeSchema.getSchema(obj.getClass());
+            encoded.bytesLength = GraphIOUtil.writeTo(encoded.buffer, obj, schema);
+            encoded.className = CLASS_NAMES.get(obj.getClass());
+        }
+        encoded.source = obj;
+        encoded.encoded = true;
+    }
+
+    /**
+     * Decodes an object starting at the position of {@code source} and advances
+     * the position past it.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object decode(ByteBuffer source) throws IOException, ClassNotFoundException {
+        int classNameLength = source.getInt();
+        int bytesLength = source.getInt();
+        if (classNameLength < 0 || bytesLength < 0 || classNameLength + bytesLength > source.remaining()) {
+            throw new IOException("invalid protostuff object header: [" + classNameLength + ", " + bytesLength + "]");
+        }
+
+        DecodeBuffer decodeBuffer = DECODE_BUFFER.get();
+        Class<?> clazz = decodeBuffer.readClass(source, classNameLength);
+
+        Object result;
+        Schema schema;
+        if (WrapperUtils.isWrapper(clazz)) {
+            schema = RuntimeSchema.getSchema(Wrapper.class);
+        } else {
+            schema = RuntimeSchema.getSchema(clazz);
+        }
+        result = schema.newMessage();
+        if (source.hasArray()) {
+            GraphIOUtil.mergeFrom(source.array(), source.arrayOffset() + source.position(), bytesLength, result, schema);
+            source.position(source.position() + bytesLength);
+        } else {
+            decodeBuffer.input.reset(source, bytesLength);
+            try {
+                GraphIOUtil.mergeFrom(decodeBuffer.input, result, schema, decodeBuffer.buffer);
+            } finally {
+                decodeBuffer.input.reset(null, 0);
+            }
+        }
+        return result instanceof Wrapper ? ((Wrapper) result).getData() : result;
+    }
+
+    /**
+     * Reusable encoded form of an object, not thread safe.
+     */
+    public static final class Encoded {
+
+        private final LinkedBuffer buffer;
+        private final ByteBufferOutputStream output = new ByteBufferOutputStream();
+
+        private boolean encoded;
+        private Object source;
+        private byte[] className;
+        private int bytesLength;
+
+        public Encoded() {
+            this(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        }
+
+        public Encoded(int bufferSize) {
+            this.buffer = LinkedBuffer.allocate(bufferSize);
+        }
+
+        /**
+         * Returns true if this holds the encoded form of {@code obj} (identity comparison).
+         */
+        public boolean isEncoded(Object obj) {
+            return encoded && source == obj;
+        }
+
+        public boolean isEmpty() {
+            return !encoded;
+        }
+
+        /**
+         * Size of the encoded object including {@link #HEADER_SIZE}.
+         */
+        public int size() {
+            return HEADER_SIZE + className.length + bytesLength;
+        }
+
+        /**
+         * Copies the encoded object into {@code target} and advances its position.
+         */
+        public void writeTo(ByteBuffer target) throws IOException {
+            target.putInt(className.length);
+            target.putInt(bytesLength);
+            target.put(className);
+            output.target = target;
+            try {
+                LinkedBuffer.writeTo(output, buffer);
+            } finally {
+                output.target = null;
+            }
+        }
+
+        /**
+         * Copies the encoded object into a new array of {@link #size()} bytes.
+         */
+        public byte[] toByteArray() throws IOException {
+            byte[] bytes = new byte[size()];
+            writeTo(ByteBuffer.wrap(bytes));
+            return bytes;
+        }
+
+        /**
+         * Releases the encoded content, the head buffer is kept for reuse.
+         */
+        public void reset() {
+            buffer.clear();
+            encoded = false;
+            source = null;
+            className = null;
+            bytesLength = 0;
+        }
+    }
+
+    private static final class ByteBufferOutputStream extends OutputStream {
+
+        private ByteBuffer target;
+
+        @Override
+        public void write(int b) {
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.put(b, off, len);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer source;
+        private int remaining;
+
+        void reset(ByteBuffer source, int length) {
+            this.source = source;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return source.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int length = Math.min(len, remaining);
+            source.get(b, off, length);
+            remaining -= length;
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return remaining;
+        }
+    }
+
+    private static final class DecodeBuffer {
+
+        private final LinkedBuffer buffer = LinkedBuffer.allocate();
+        private final ByteBufferInputStream input = new ByteBufferInputStream();
+        private byte[] className = new byte[128];
+
+        Class<?> readClass(ByteBuffer source, int length) throws ClassNotFoundException {
+            if (className.length < length) {
+                className = new byte[Math.max(length, className.length << 1)];
+            }
+            source.get(className, 0, length);
+            String name = new String(className, 0, length, StandardCharsets.UTF_8);
+            Class<?> clazz = CLASSES.get(name);
+            if (clazz == null) {
+                clazz = Class.forName(name);
+                CLASSES.putIfAbsent(name, clazz);
+            }
+            return clazz;
+        }
+    }
+}
@@ -116,7 +116,7 @@ public class ProtostuffDataInputView implements DataInputView {
         Class clazz = Class.forName(className);
 
         Object result;
-        if (WrapperUtils.needWrapper(clazz)) {
+        if (WrapperUtils.isWrapper(clazz)) {
             Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
             Wrapper wrapper = schema.newMessage();
             GraphIOUtil.mergeFrom(bytes, wrapper, schema);
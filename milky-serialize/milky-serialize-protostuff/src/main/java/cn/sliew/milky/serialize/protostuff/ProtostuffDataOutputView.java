@@ -1,6 +1,8 @@
 
 package cn.sliew.milky.serialize.protostuff;
 
+import cn.sliew.milky.common.recycler.BytesRecycler;
+import cn.sliew.milky.common.recycler.Value;
 import cn.sliew.milky.serialize.DataOutputView;
 import cn.sliew.milky.serialize.protostuff.utils.WrapperUtils;
 import io.protostuff.GraphIOUtil;
@@ -17,7 +19,6 @@ import java.io.OutputStream;
  */
 public class ProtostuffDataOutputView implements DataOutputView {
 
-    private LinkedBuffer buffer = LinkedBuffer.allocate();
     private DataOutputStream dos;
 
     public ProtostuffDataOutputView(OutputStream outputStream) {
@@ -97,28 +98,30 @@ public class ProtostuffDataOutputView implements DataOutputView {
     @Override
     @SuppressWarnings("unchecked")
     public void writeObject(Object obj) throws IOException {
-        byte[] bytes;
-        byte[] classNameBytes;
-
+        // encoded into a pooled page, protostuff links more buffers if the object does not fit
+        Value<byte[]> page = BytesRecycler.heap().bytes(BytesRecycler.PAGE_SIZE);
         try {
+            LinkedBuffer buffer = LinkedBuffer.use(page.value());
+            int length;
+            byte[] classNameBytes;
             if (obj == null || WrapperUtils.needWrapper(obj)) {
                 Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
                 Wrapper wrapper = new Wrapper(obj);
-                bytes = GraphIOUtil.toByteArray(wrapper, schema, buffer);
+                length = GraphIOUtil.writeTo(buffer, wrapper, schema);
                 classNameBytes = Wrapper.class.getName().getBytes();
             } else {
                 Schema schema = RuntimeSchema.getSchema(obj.getClass());
-                bytes = GraphIOUtil.toByteArray(obj, schema, buffer);
+                length = GraphIOUtil.writeTo(buffer, obj, schema);
                 classNameBytes = obj.getClass().getName().getBytes();
             }
+
+            dos.writeInt(classNameBytes.length);
+            dos.writeInt(length);
+            dos.write(classNameBytes);
+            LinkedBuffer.writeTo((OutputStream) dos, buffer);
         } finally {
-            buffer.clear();
+            page.close();
         }
-
-        dos.writeInt(classNameBytes.length);
-        dos.writeInt(bytes.length);
-        dos.write(classNameBytes);
-        dos.write(bytes);
     }
 
     @Override
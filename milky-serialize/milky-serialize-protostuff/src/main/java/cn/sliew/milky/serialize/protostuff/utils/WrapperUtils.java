@@ -45,6 +45,9 @@ public class WrapperUtils {
         WRAPPER_SET.add(TreeSet.class);
         WRAPPER_SET.add(BitSet.class);
 
+        // String caches its hash in a field, serialized as is the same string
+        // encodes differently before and after hashCode() was called
+        WRAPPER_SET.add(String.class);
         WRAPPER_SET.add(StringBuffer.class);
         WRAPPER_SET.add(StringBuilder.class);
 
@@ -69,6 +72,17 @@ public class WrapperUtils {
         return WrapperUtils.WRAPPER_SET.contains(clazz) || clazz.isArray() || clazz.isEnum();
     }
 
+    /**
+     * Determine if the decoded type is {@link Wrapper}. Types that need wrap are always
+     * encoded as {@link Wrapper}, so a decoded type other than it is read by its own schema
+     *
+     * @param clazz decoded type
+     * @return is wrapper
+     */
+    public static boolean isWrapper(Class<?> clazz) {
+        return clazz == Wrapper.class;
+    }
+
     /**
      * Determine if the object needs wrap
      *
@@ -0,0 +1,85 @@
+package cn.sliew.milky.serialize.protostuff;
+
+import cn.sliew.milky.serialize.protostuff.ProtostuffByteBufferCodec.Encoded;
+import cn.sliew.milky.serialize.protostuff.ProtostuffDataTest.Person;
+import cn.sliew.milky.test.MilkyTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProtostuffByteBufferCodecTest extends MilkyTestCase {
+
+    private final Person person = new Person("123", "12aljeiaoe", 23, "aeioanleinblaukefhalreuafe", "12390u4qry2@qq.com");
+
+    @Test
+    public void testHeapBuffer() throws IOException, ClassNotFoundException {
+        assertRoundTrip(ByteBuffer.allocate(256));
+    }
+
+    @Test
+    public void testDirectBuffer() throws IOException, ClassNotFoundException {
+        assertRoundTrip(ByteBuffer.allocateDirect(256));
+    }
+
+    @Test
+    public void testWrapper() throws IOException, ClassNotFoundException {
+        List<String> list = Arrays.asList("1", "2", "3");
+        Encoded encoded = new Encoded();
+        ProtostuffByteBufferCodec.encode(list, encoded);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.size());
+        encoded.writeTo(buffer);
+        buffer.flip();
+        assertEquals(list, ProtostuffByteBufferCodec.decode(buffer));
+    }
+
+    @Test
+    public void testStringEncodingIgnoresHashCode() throws IOException {
+        String str = new String("key".toCharArray());
+        Encoded encoded = new Encoded();
+        ProtostuffByteBufferCodec.encode(str, encoded);
+        byte[] before = encoded.toByteArray();
+        str.hashCode();
+        ProtostuffByteBufferCodec.encode(str, encoded);
+        assertArrayEquals(before, encoded.toByteArray());
+    }
+
+    @Test
+    public void testCompatibleWithDataOutputView() throws IOException, ClassNotFoundException {
+        Encoded encoded = new Encoded();
+        ProtostuffByteBufferCodec.encode(person, encoded);
+        byte[] bytes = new byte[encoded.size()];
+        encoded.writeTo(ByteBuffer.wrap(bytes));
+        ProtostuffDataInputView inputView = new ProtostuffDataInputView(new ByteArrayInputStream(bytes));
+        assertEquals(person.toString(), inputView.readObject().toString());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ProtostuffDataOutputView outputView = new ProtostuffDataOutputView(outputStream);
+        outputView.writeObject(person);
+        outputView.flushBuffer();
+        assertArrayEquals(outputStream.toByteArray(), bytes);
+    }
+
+    private void assertRoundTrip(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+        Encoded encoded = new Encoded();
+        ProtostuffByteBufferCodec.encode(person, encoded);
+        assertTrue(encoded.isEncoded(person));
+        int size = encoded.size();
+        encoded.writeTo(buffer);
+        assertEquals(size, buffer.position());
+
+        buffer.flip();
+        Object result = ProtostuffByteBufferCodec.decode(buffer);
+        assertEquals(person.toString(), result.toString());
+        assertFalse(buffer.hasRemaining());
+
+        encoded.reset();
+        assertTrue(encoded.isEmpty());
+    }
+}